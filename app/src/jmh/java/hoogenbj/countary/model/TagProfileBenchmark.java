@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tag profile of a synthetic budget of 10,000 items with 500 tags: with the union-find of
+ * {@link BudgetModel#profile(List)}, and by collapsing overlapping tag sets until they stop shrinking, the way
+ * BudgetModel used to. The tags come in clusters, as they tend to in a real budget, so that there is more than one
+ * group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagProfileBenchmark {
+
+    @Param({"10000"})
+    private int items;
+
+    @Param({"500"})
+    private int tags;
+
+    @Param({"50"})
+    private int clusters;
+
+    private List<BudgetItemTag> itemTags;
+
+    @Setup(Level.Trial)
+    public void makeBudget() {
+        Random random = new Random(11);
+        List<Tag> allTags = new ArrayList<>();
+        for (long id = 0; id < tags; id++)
+            allTags.add(new Tag(id, "Tag " + id));
+        int[] frequencies = new int[tags];
+        List<Set<Tag>> tagsByItem = new ArrayList<>();
+        int clusterSize = tags / clusters;
+        for (int item = 0; item < items; item++) {
+            int cluster = random.nextInt(clusters);
+            Set<Tag> itemTagSet = new HashSet<>();
+            int count = 1 + random.nextInt(3);
+            for (int i = 0; i < count; i++)
+                itemTagSet.add(allTags.get(cluster * clusterSize + random.nextInt(clusterSize)));
+            itemTagSet.forEach(tag -> frequencies[tag.id().intValue()]++);
+            tagsByItem.add(itemTagSet);
+        }
+        itemTags = new ArrayList<>();
+        for (int item = 0; item < items; item++) {
+            BigDecimal planned = BigDecimal.valueOf(random.nextInt(100_000), 2);
+            BigDecimal actual = BigDecimal.valueOf(-random.nextInt(100_000), 2);
+            for (Tag tag : tagsByItem.get(item))
+                itemTags.add(new BudgetItemTag((long) item, tag, planned, actual, frequencies[tag.id().intValue()]));
+        }
+    }
+
+    @Benchmark
+    public List<List<BudgetTagProfile>> unionFind() {
+        return BudgetModel.profile(itemTags);
+    }
+
+    @Benchmark
+    public List<List<BudgetTagProfile>> collapse() {
+        Map<Long, Set<Tag>> byItem = new HashMap<>();
+        Map<Long, Integer> frequencies = new HashMap<>();
+        Map<Long, BigDecimal> planned = new HashMap<>();
+        Map<Long, BigDecimal> actual = new HashMap<>();
+        for (BudgetItemTag itemTag : itemTags) {
+            byItem.computeIfAbsent(itemTag.itemId(), k -> new HashSet<>()).add(itemTag.tag());
+            frequencies.put(itemTag.tag().id(), itemTag.frequency());
+            planned.merge(itemTag.tag().id(), itemTag.planned(), BigDecimal::add);
+            actual.merge(itemTag.tag().id(), itemTag.actual(), BigDecimal::add);
+        }
+        Set<Set<Tag>> collapsed = collapse(byItem.values());
+        int count;
+        do {
+            count = collapsed.size();
+            collapsed = collapse(collapsed);
+        } while (collapsed.size() < count);
+        return collapsed.stream().map(set -> set.stream()
+                .sorted((left, right) -> frequencies.get(right.id()).compareTo(frequencies.get(left.id())))
+                .map(tag -> {
+                    BudgetTagProfile profile = new BudgetTagProfile(tag.id(), tag.name());
+                    profile.setTotalPlanned(planned.get(tag.id()));
+                    profile.setTotalActual(actual.get(tag.id()));
+                    return profile;
+                })
+                .toList()
+        ).toList();
+    }
+
+    private static Set<Set<Tag>> collapse(Collection<Set<Tag>> collection) {
+        Set<Set<Tag>> seen = new HashSet<>();
+        Set<Tag> ptr = Collections.emptySet();
+        for (Set<Tag> set : collection) {
+            Set<Tag> intersection = new HashSet<>(ptr);
+            intersection.retainAll(set);
+            if (intersection.isEmpty()) {
+                if (!ptr.isEmpty())
+                    seen.add(ptr);
+                seen.add(set);
+                ptr = set;
+            } else {
+                Set<Tag> copy = new HashSet<>(ptr);
+                copy.addAll(set);
+                seen.remove(set);
+                seen.remove(ptr);
+                seen.add(copy);
+                ptr = copy;
+            }
+        }
+        return seen;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type-ahead searches of a synthetic account of 100,000 transactions in a {@link TransactionIndex}: the first page of
+ * a description search as the user types, of a range of amounts, and of a month.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransactionIndexBenchmark {
+
+    private static final List<String> WORDS = List.of("POS Purchase", "Debit order", "Payment", "Transfer", "Woolworths",
+            "Checkers", "Pick n Pay", "Engen", "Shell", "Uber", "Uber Eats", "Takealot", "Netflix", "Vodacom",
+            "Discovery", "Salary", "Interest", "Fee", "Cash withdrawal", "Dis-Chem");
+
+    @Param({"100000"})
+    private int transactions;
+
+    @Param({"uber e", "vodacom"})
+    private String typed;
+
+    private TransactionIndex index;
+
+    @Setup(Level.Trial)
+    public void makeAccount() {
+        Random random = new Random(5);
+        Account account = new Account(1L, "Cheque", "123", "250655", "FNB", "#ff0000");
+        List<Transaction> list = new ArrayList<>();
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        for (long id = 1; id <= transactions; id++) {
+            Date postedOn = Date.from(start.plusDays(random.nextInt(3650)).atStartOfDay(ZoneId.systemDefault())
+                    .toInstant());
+            String description = String.format("%s %s %06d", WORDS.get(random.nextInt(WORDS.size())),
+                    WORDS.get(random.nextInt(WORDS.size())), random.nextInt(1_000_000));
+            list.add(new Transaction(id, account, postedOn, null, BigDecimal.valueOf(random.nextInt(1_000_000) - 800_000, 2),
+                    BigDecimal.ZERO, description, id, random.nextBoolean(), false, true));
+        }
+        index = TransactionIndex.of(account, list);
+    }
+
+    @Benchmark
+    public TransactionPage description() {
+        return index.page(TransactionQuery.description(typed), false, null, true, 50);
+    }
+
+    @Benchmark
+    public TransactionPage amounts() {
+        return index.page(TransactionQuery.amounts("500..600"), true, null, true, 50);
+    }
+
+    @Benchmark
+    public TransactionPage month() {
+        return index.page(TransactionQuery.in(YearMonth.of(2020, 3)), true, null, true, 50);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bank CSV parsers on the test statements, each scaled up 10,000 times, and the splitting of their lines into
+ * amounts: with CsvFields, and the way the parsers used to do it.
+ * <p>
+ * Run with ./gradlew jmh from the project directory, where the test statements are found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvParsingBenchmark {
+
+    private static final Path STATEMENTS = Path.of("src/test/resources/hoogenbj/countary/util");
+    private static final int COPIES = 10_000;
+
+    @Param({"rmbpb_account.csv", "bankzero_account.csv", "CapitecBankTransactionHistory_123-123.csv"})
+    private String statement;
+
+    private Path file;
+    private StatementParser parser;
+    private List<String> lines;
+    private int[] amountColumns;
+
+    @Setup(Level.Trial)
+    public void scaleUp() throws IOException {
+        List<String> original = Files.readAllLines(STATEMENTS.resolve(statement));
+        int header = switch (statement) {
+            case "rmbpb_account.csv" -> 7;
+            case "bankzero_account.csv" -> 1;
+            default -> 2;
+        };
+        amountColumns = switch (statement) {
+            case "rmbpb_account.csv" -> new int[]{1, 2};
+            case "bankzero_account.csv" -> new int[]{7, 8};
+            default -> new int[]{8, 9, 10};
+        };
+        List<String> scaled = new ArrayList<>(original.subList(0, header));
+        for (int i = 0; i < COPIES; i++)
+            scaled.addAll(original.subList(header, original.size()));
+        file = Files.createTempFile("countary-benchmark", ".csv");
+        Files.write(file, scaled);
+        lines = scaled.subList(header, scaled.size());
+        parser = new StatementDetector().detect(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException, StatementParseException {
+        parser.parse(file.toUri(), new ParsedStatement(), blackhole::consume);
+    }
+
+    @Benchmark
+    public void scanAmounts(Blackhole blackhole) {
+        CsvFields fields = new CsvFields();
+        for (String line : lines) {
+            fields.scan(line);
+            for (int column : amountColumns) {
+                if (column < fields.size())
+                    blackhole.consume(fields.decimal(column));
+            }
+        }
+    }
+
+    /**
+     * As the parsers did before CsvFields: String.split, a regular expression to strip quotes and a DecimalFormat
+     * per amount. Quoted commas shift the columns, which is one of the reasons for CsvFields.
+     */
+    @Benchmark
+    public void splitAmounts(Blackhole blackhole) {
+        for (String line : lines) {
+            String[] fields = line.split(",");
+            for (int column : amountColumns) {
+                if (column < fields.length)
+                    blackhole.consume(ParseUtils.parseBigDecimal(String.join("", fields[column].split("'|\"|\\s"))));
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import hoogenbj.countary.util.ofx2.Parser;
+import hoogenbj.countary.util.ofx2.StatementTransaction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OFX 2 test statement with its transactions repeated to make one long statement, parsed with
+ * {@link OFX2StatementParser}, which reads it with StAX, and the way the parser used to read it: into a DOM that is
+ * then walked.
+ * <p>
+ * Run with ./gradlew jmh from the project directory, where the test statements are found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OFX2ParsingBenchmark {
+
+    private static final Path STATEMENT = Path.of("src/test/resources/hoogenbj/countary/util/CapitecBankTransactionHistory_OFX2.ofx");
+    private static final Set<String> FIELD_NAMES = Set.of("TRNTYPE", "DTPOSTED", "DTUSER", "TRNAMT", "FITID", "MEMO");
+
+    // The statement has 4 transactions
+    @Param({"1250", "5000"})
+    private int copies;
+
+    private Path file;
+    private OFX2StatementParser parser;
+
+    @Setup(Level.Trial)
+    public void scaleUp() throws IOException {
+        List<String> original = Files.readAllLines(STATEMENT);
+        int first = 0;
+        while (!original.get(first).trim().equals("<STMTTRN>"))
+            first++;
+        int last = original.size() - 1;
+        while (!original.get(last).trim().equals("</STMTTRN>"))
+            last--;
+        List<String> scaled = new ArrayList<>(original.subList(0, first));
+        for (int i = 0; i < copies; i++)
+            scaled.addAll(original.subList(first, last + 1));
+        scaled.addAll(original.subList(last + 1, original.size()));
+        file = Files.createTempFile("countary-benchmark", ".ofx");
+        Files.write(file, scaled);
+        parser = new OFX2StatementParser();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void stax(Blackhole blackhole) throws IOException, StatementParseException {
+        parser.parse(file.toUri(), new ParsedStatement(), blackhole::consume);
+    }
+
+    /**
+     * As the parser did before it used StAX: the whole document in memory, walked with getChildNodes().item(i) on
+     * every iteration, the lines made once the walk is done.
+     */
+    @Benchmark
+    public void dom(Blackhole blackhole) throws IOException, SAXException, ParserConfigurationException {
+        String path = file.toUri().toString();
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(path);
+        ParsedStatement statement = new ParsedStatement();
+        Node body = document.getDocumentElement();
+        for (int i = 0; i < body.getChildNodes().getLength(); i++) {
+            Node messages = body.getChildNodes().item(i);
+            if (!messages.getNodeName().equals("BANKMSGSRSV1"))
+                continue;
+            for (int j = 0; j < messages.getChildNodes().getLength(); j++) {
+                Node response = messages.getChildNodes().item(j);
+                if (response.getNodeName().equals("STMTTRNRS"))
+                    parseStatement(response, statement, path);
+            }
+        }
+        statement.getLines().forEach(blackhole::consume);
+        blackhole.consume(statement.getAccountNumber());
+    }
+
+    private static void parseStatement(Node response, ParsedStatement statement, String path) {
+        BigDecimal balance = null;
+        List<StatementTransaction> transactions = new ArrayList<>();
+        for (Node stmtrs : children(response, "STMTRS")) {
+            for (int i = 0; i < stmtrs.getChildNodes().getLength(); i++) {
+                Node node = stmtrs.getChildNodes().item(i);
+                switch (node.getNodeName()) {
+                    case "BANKACCTFROM" ->
+                            children(node, "ACCTID").forEach(acctid -> statement.setAccountNumber(acctid.getTextContent()));
+                    case "LEDGERBAL" -> {
+                        for (Node balamt : children(node, "BALAMT"))
+                            balance = ParseUtils.parseBigDecimal(balamt.getTextContent());
+                    }
+                    case "BANKTRANLIST" -> {
+                        for (Node stmttrn : children(node, "STMTTRN")) {
+                            Map<String, String> fields = new HashMap<>();
+                            for (int j = 0; j < stmttrn.getChildNodes().getLength(); j++) {
+                                Node field = stmttrn.getChildNodes().item(j);
+                                if (FIELD_NAMES.contains(field.getNodeName()))
+                                    fields.put(field.getNodeName(), field.getTextContent());
+                            }
+                            transactions.add(new StatementTransaction(fields.get("TRNTYPE"), fields.get("DTPOSTED"),
+                                    fields.get("DTUSER"), fields.get("TRNAMT"), fields.get("FITID"), fields.get("MEMO")));
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        statement.setLines(Parser.toLines(transactions, balance, path));
+    }
+
+    private static List<Node> children(Node parent, String name) {
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
+            if (parent.getChildNodes().item(i).getNodeName().equals(name))
+                children.add(parent.getChildNodes().item(i));
+        }
+        return children;
+    }
+}
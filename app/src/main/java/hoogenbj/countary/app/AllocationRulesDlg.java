@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.app;
+
+import hoogenbj.countary.model.AllocationRule;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.Initializable;
+import javafx.scene.control.*;
+import javafx.stage.Window;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.ResourceBundle;
+
+/**
+ * Lists the allocation rules, by pattern, and hands back the ones picked for deleting.
+ */
+public class AllocationRulesDlg extends Dialog<List<AllocationRule>> implements Initializable {
+    @FXML
+    private ListView<AllocationRule> listView;
+    @FXML
+    private ButtonType deleteButtonType;
+
+    private List<AllocationRule> rules;
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        listView.setCellFactory(this::makeListCell);
+        listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        listView.setItems(FXCollections.observableArrayList(rules.stream()
+                .sorted(Comparator.comparing(rule -> rule.pattern().toLowerCase())).toList()));
+    }
+
+    private ListCell<AllocationRule> makeListCell(ListView<AllocationRule> ruleListView) {
+        return new ListCell<>() {
+            @Override
+            protected void updateItem(AllocationRule rule, boolean empty) {
+                super.updateItem(rule, empty);
+                setText(null);
+                setGraphic(null);
+                if (!empty && rule != null) {
+                    setText(String.format("\"%s\" to %s", rule.pattern(), rule.item().name()));
+                }
+            }
+        };
+    }
+
+    public static AllocationRulesDlg getInstance(Window owner, List<AllocationRule> rules) {
+        FXMLLoader loader = CountaryApp.injector.getInstance(FXMLLoader.class);
+        loader.setLocation(AllocationRulesDlg.class.getResource("AllocationRulesDlg.fxml"));
+        AllocationRulesDlg controller = new AllocationRulesDlg();
+        controller.rules = rules;
+        controller.initOwner(owner);
+        controller.setTitle("Allocation rules");
+        loader.setController(controller);
+        try {
+            DialogPane dlgPane = loader.load();
+            controller.setDialogPane(dlgPane);
+            Button deleteButton = (Button) dlgPane.lookupButton(controller.deleteButtonType);
+            deleteButton.disableProperty().bind(controller.listView.getSelectionModel().selectedItemProperty().isNull());
+            controller.setResultConverter(buttonType -> {
+                if (!Objects.equals(ButtonBar.ButtonData.OK_DONE, buttonType.getButtonData())) {
+                    return null;
+                }
+                return List.copyOf(controller.listView.getSelectionModel().getSelectedItems());
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to launch AllocationRulesDlg", e);
+        }
+        return controller;
+    }
+}
@@ -91,6 +91,9 @@ public class BudgetController implements ControllerHelpers {
     @Inject
     private DataModel model;
 
+    @Inject
+    private AsyncDataModel asyncModel;
+
     @Inject
     private UserInterface userInterface;
 
@@ -284,24 +287,22 @@ public class BudgetController implements ControllerHelpers {
             Set<BudgetItemHolder> holders = model.getBudgetItemHolders(budget, (a, b) -> null, (a, b) -> null);
             CloneBudgetDlgController controller = CloneBudgetDlgController.getInstance(CountaryApp.OWNER_WINDOW, holders.stream().toList());
             controller.showAndWait().ifPresent(result -> {
-                try {
-                    String name = (String) result.get(CloneBudgetDlgController.NAME);
-                    BudgetItemHolder budgetItemHolder = (BudgetItemHolder) result.get(CloneBudgetDlgController.BUDGET_ITEM);
-                    BudgetItem budgetItem = null;
-                    if (budgetItemHolder != null)
-                        budgetItem = budgetItemHolder.getBudgetItem();
-                    Boolean transferBalance = (Boolean) result.get(CloneBudgetDlgController.TRANSFER_BALANCE);
-                    Boolean copyActualToPlanned = (Boolean) result.get(CloneBudgetDlgController.COPY_ACTUAL_TO_PLANNED);
-                    Budget newBudget = model.cloneBudget(budget, name, copyActualToPlanned, transferBalance, budgetItem);
-                    BudgetHolder clonedBudgetHolder = new BudgetHolder(newBudget, this::onHiddenChanged);
+                String name = (String) result.get(CloneBudgetDlgController.NAME);
+                BudgetItemHolder budgetItemHolder = (BudgetItemHolder) result.get(CloneBudgetDlgController.BUDGET_ITEM);
+                BudgetItem budgetItem = budgetItemHolder == null ? null : budgetItemHolder.getBudgetItem();
+                Boolean transferBalance = (Boolean) result.get(CloneBudgetDlgController.TRANSFER_BALANCE);
+                Boolean copyActualToPlanned = (Boolean) result.get(CloneBudgetDlgController.COPY_ACTUAL_TO_PLANNED);
+                whenDone(asyncModel.write(model -> model.cloneBudget(budget, name, copyActualToPlanned,
+                        transferBalance, budgetItem)), cloned -> {
+                    userInterface.showNotification(String.format("Cloned %d items from %s into %s in %d ms.",
+                            cloned.items(), budget.name(), name, cloned.elapsedMillis()));
+                    BudgetHolder clonedBudgetHolder = new BudgetHolder(cloned.budget(), this::onHiddenChanged);
                     updateActualBalance(clonedBudgetHolder);
                     listOfBudgets.add(clonedBudgetHolder);
                     updateActualBalance(budgetHolder);
                     tableView.refresh();
                     tableView.getSelectionModel().select(clonedBudgetHolder);
-                } catch (SQLException e) {
-                    DbUtils.handleException(userInterface, "budget", e);
-                }
+                }, e -> DbUtils.handleException(userInterface, "budget", e), "Unable to clone budget " + budget.name());
             });
         } catch (SQLException e) {
             throw new RuntimeException(String.format("Unable to retrieve budget items for budget %s", budget.name()), e);
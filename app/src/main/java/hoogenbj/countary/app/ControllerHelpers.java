@@ -18,6 +18,7 @@ package hoogenbj.countary.app;
 
 import hoogenbj.countary.model.BudgetHolder;
 import hoogenbj.countary.model.BudgetItemHolder;
+import hoogenbj.countary.util.DbUtils;
 import hoogenbj.countary.util.ParseUtils;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Pos;
@@ -30,12 +31,15 @@ import javafx.scene.text.Font;
 import javafx.util.StringConverter;
 
 import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static hoogenbj.countary.util.ParseUtils.DECIMAL_FORMAT_SYMBOLS;
@@ -98,6 +102,35 @@ public interface ControllerHelpers {
         };
     }
 
+    /**
+     * Hands the result of a call made through {@link hoogenbj.countary.model.AsyncDataModel} to {@code onResult}, or
+     * reports the failure the way an exception thrown on the JavaFX application thread gets reported.
+     */
+    default <T> void whenDone(CompletableFuture<T> future, Consumer<T> onResult, String failure) {
+        whenDone(future, onResult, null, failure);
+    }
+
+    /**
+     * @param onSQLException - Deals with a failed database call instead, e.g. through {@link DbUtils#handleException}
+     */
+    default <T> void whenDone(CompletableFuture<T> future, Consumer<T> onResult,
+                              Consumer<SQLException> onSQLException, String failure) {
+        future.whenComplete((result, e) -> {
+            try {
+                if (e == null)
+                    onResult.accept(result);
+                else if (e instanceof SQLException sqlException && onSQLException != null)
+                    onSQLException.accept(sqlException);
+                else
+                    throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(failure, e);
+            } catch (RuntimeException thrown) {
+                // Thrown on the application thread, but a future would swallow it
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, thrown);
+            }
+        });
+    }
+
     default void anchorLayout(Node node) {
         AnchorPane.setTopAnchor(node, 0.0);
         AnchorPane.setLeftAnchor(node, 0.0);
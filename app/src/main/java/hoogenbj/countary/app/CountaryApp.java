@@ -18,6 +18,8 @@ package hoogenbj.countary.app;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import hoogenbj.countary.di.GuiceModule;
+import hoogenbj.countary.model.AsyncDataModel;
+import hoogenbj.countary.model.ConnectionProvider;
 import hoogenbj.countary.model.DataModel;
 import hoogenbj.countary.util.DbUtils;
 import javafx.application.Application;
@@ -30,7 +32,7 @@ import java.sql.SQLException;
 
 public class CountaryApp extends Application implements Thread.UncaughtExceptionHandler {
 
-    private static final int DBVERSION = 2;
+    public static final int DBVERSION = 8;
     public static Window OWNER_WINDOW = null;
     public static Injector injector;
 
@@ -41,6 +43,14 @@ public class CountaryApp extends Application implements Thread.UncaughtException
         Thread.setDefaultUncaughtExceptionHandler(this);
     }
 
+    @Override
+    public void stop() throws Exception {
+        injector.getInstance(AsyncDataModel.class).shutdown();
+        // Closing the connections also checkpoints the write-ahead log
+        injector.getInstance(ConnectionProvider.class).reset();
+        super.stop();
+    }
+
     @Override
     public void start(Stage stage) {
         UserInterface userInterface = injector.getInstance(UserInterface.class);
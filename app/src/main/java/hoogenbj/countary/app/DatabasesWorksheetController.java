@@ -17,17 +17,26 @@
 package hoogenbj.countary.app;
 
 import com.google.inject.Inject;
+import hoogenbj.countary.model.CheckpointMode;
 import hoogenbj.countary.model.DataModel;
+import hoogenbj.countary.model.JournalMode;
 import hoogenbj.countary.util.DbUtils;
+import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.TextField;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 
 public class DatabasesWorksheetController implements ControllerHelpers {
     @FXML
     private TextField path;
+    @FXML
+    private ChoiceBox<KeyValue> journalMode;
+    @FXML
+    private ChoiceBox<KeyValue> checkpointMode;
     @Inject
     private Settings settings;
 
@@ -76,6 +85,25 @@ public class DatabasesWorksheetController implements ControllerHelpers {
         if (dbUrl != null) {
             path.setText(settings.getDatabasePath());
         }
+        journalMode.setItems(FXCollections.observableList(Arrays.stream(JournalMode.values())
+                .map(m -> new KeyValue(m.description(), m.name())).toList()));
+        checkpointMode.setItems(FXCollections.observableList(Arrays.stream(CheckpointMode.values())
+                .map(m -> new KeyValue(m.description(), m.name())).toList()));
+        journalMode.setValue(new KeyValue(settings.getJournalMode().description(), settings.getJournalMode().name()));
+        checkpointMode.setValue(new KeyValue(settings.getCheckpointMode().description(), settings.getCheckpointMode().name()));
+        checkpointMode.setDisable(settings.getJournalMode() != JournalMode.WriteAheadLog);
+        journalMode.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null && !newValue.equals(oldValue)) {
+                JournalMode mode = JournalMode.valueOf(newValue.value());
+                settings.setJournalMode(mode);
+                checkpointMode.setDisable(mode != JournalMode.WriteAheadLog);
+            }
+        });
+        checkpointMode.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null && !newValue.equals(oldValue)) {
+                settings.setCheckpointMode(CheckpointMode.valueOf(newValue.value()));
+            }
+        });
     }
 
     @FXML
@@ -15,6 +15,8 @@
  */
 package hoogenbj.countary.app;
 
+import hoogenbj.countary.model.CheckpointMode;
+import hoogenbj.countary.model.JournalMode;
 import hoogenbj.countary.util.StatementParsers;
 
 public interface Settings {
@@ -43,4 +45,19 @@ public interface Settings {
     void setBackupPath(String backupPath);
 
     void setAccountStatement(int hashcode, StatementParsers parser);
+
+    JournalMode getJournalMode();
+
+    void setJournalMode(JournalMode journalMode);
+
+    CheckpointMode getCheckpointMode();
+
+    void setCheckpointMode(CheckpointMode checkpointMode);
+
+    /**
+     * @return The most memory the search index of an account may take, or 0 to always search the database
+     */
+    int getSearchIndexMegabytes();
+
+    void setSearchIndexMegabytes(int megabytes);
 }
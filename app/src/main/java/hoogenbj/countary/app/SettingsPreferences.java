@@ -15,6 +15,8 @@
  */
 package hoogenbj.countary.app;
 
+import hoogenbj.countary.model.CheckpointMode;
+import hoogenbj.countary.model.JournalMode;
 import hoogenbj.countary.util.StatementParsers;
 
 import java.util.prefs.Preferences;
@@ -26,6 +28,10 @@ public class SettingsPreferences implements Settings {
     private static final String CURRENT_ACCOUNT_KEY = KEY_PREFIX + "/current/account/key";
     private static final String CURRENT_ACCOUNT_VALUE = KEY_PREFIX + "/current/account/value";
     private static final String CUSTOM_COLORS_KEY = KEY_PREFIX + "/custom_colors";
+    private static final String JOURNAL_MODE_KEY = KEY_PREFIX + "/database/journal_mode";
+    private static final String CHECKPOINT_MODE_KEY = KEY_PREFIX + "/database/checkpoint_mode";
+    private static final String SEARCH_INDEX_MEGABYTES_KEY = KEY_PREFIX + "/search/index_megabytes";
+    private static final int DEFAULT_SEARCH_INDEX_MEGABYTES = 64;
 
     private static final String STATEMENT_PARSER = KEY_PREFIX + "/%d/parser";
 
@@ -37,6 +43,12 @@ public class SettingsPreferences implements Settings {
 
     private String backupPath;
 
+    private JournalMode journalMode;
+
+    private CheckpointMode checkpointMode;
+
+    private Integer searchIndexMegabytes;
+
     public SettingsPreferences(Preferences preferences) {
         this.preferences = preferences;
     }
@@ -125,4 +137,43 @@ public class SettingsPreferences implements Settings {
     public void setAccountStatement(int hashcode, StatementParsers parser) {
         preferences.put(String.format(STATEMENT_PARSER, hashcode), parser.name());
     }
+
+    @Override
+    public JournalMode getJournalMode() {
+        if (journalMode == null)
+            this.journalMode = JournalMode.valueOf(preferences.get(JOURNAL_MODE_KEY, JournalMode.WriteAheadLog.name()));
+        return journalMode;
+    }
+
+    @Override
+    public void setJournalMode(JournalMode journalMode) {
+        preferences.put(JOURNAL_MODE_KEY, journalMode.name());
+        this.journalMode = journalMode;
+    }
+
+    @Override
+    public CheckpointMode getCheckpointMode() {
+        if (checkpointMode == null)
+            this.checkpointMode = CheckpointMode.valueOf(preferences.get(CHECKPOINT_MODE_KEY, CheckpointMode.Automatic.name()));
+        return checkpointMode;
+    }
+
+    @Override
+    public void setCheckpointMode(CheckpointMode checkpointMode) {
+        preferences.put(CHECKPOINT_MODE_KEY, checkpointMode.name());
+        this.checkpointMode = checkpointMode;
+    }
+
+    @Override
+    public int getSearchIndexMegabytes() {
+        if (searchIndexMegabytes == null)
+            this.searchIndexMegabytes = preferences.getInt(SEARCH_INDEX_MEGABYTES_KEY, DEFAULT_SEARCH_INDEX_MEGABYTES);
+        return searchIndexMegabytes;
+    }
+
+    @Override
+    public void setSearchIndexMegabytes(int megabytes) {
+        preferences.putInt(SEARCH_INDEX_MEGABYTES_KEY, megabytes);
+        this.searchIndexMegabytes = megabytes;
+    }
 }
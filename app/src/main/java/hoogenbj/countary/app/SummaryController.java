@@ -18,6 +18,7 @@ package hoogenbj.countary.app;
 
 import hoogenbj.countary.model.*;
 import hoogenbj.countary.util.ParseUtils;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.fxml.FXML;
@@ -32,8 +33,6 @@ import javafx.scene.text.Text;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 
 public class SummaryController extends StackPane implements ControllerHelpers {
     @FXML
@@ -73,28 +72,25 @@ public class SummaryController extends StackPane implements ControllerHelpers {
     }
 
     public void initialize() {
-        model = new SummaryModel(dataModel, holder);
+        model = new SummaryModel(dataModel, holder, Platform::runLater,
+                loading -> Thread.ofVirtual().name("countary-summary").start(loading)).start();
+        model.setOnChange(this::updateFundingAccountBalances);
+        sceneProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue == null)
+                model.close();
+        });
         debits.textProperty().bind(holder.transactionDebitsProperty());
         credits.textProperty().bind(holder.transactionCreditsProperty());
         funded.textProperty().bind(holder.budgetFundedProperty());
         unfunded.textProperty().bind(holder.budgetUnfundedProperty());
         fundingBalance.textProperty().bind(holder.budgetBalanceProperty());
-        fundingBalance.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue != null && !newValue.equals(oldValue)) {
-                updateFundingAccountBalances();
-            }
-        });
         transactionBalance.textProperty().bind(holder.transactionBalanceProperty());
         updateFundingAccountBalances();
     }
 
     private void updateFundingAccountBalances() {
         fundingAccountBalances.getChildren().clear();
-        Map<Account, BigDecimal> totals = new HashMap<>();
-        model.getBudgetBalances().values()
-                .forEach(accountBalances ->
-                        accountBalances.forEach((key, value) -> totals.merge(key, value, BigDecimal::add)));
-        totals.forEach((key, value) -> {
+        model.getFundingBalances().forEach((key, value) -> {
             HBox hBox = makeBalanceBox(key, value);
             fundingAccountBalances.getChildren().add(hBox);
         });
@@ -115,11 +111,11 @@ public class SummaryController extends StackPane implements ControllerHelpers {
         return hBox;
     }
 
-    public void update(Account account, Budget budget) {
-        model.update(account, budget);
-    }
-
-    public void update(Account account) {
-        model.update(account);
+    /**
+     * The summary follows the changes to the data by itself. This only checks it against the database, e.g. after an
+     * import, and loads it again if it has gone astray.
+     */
+    public void refresh() {
+        model.refresh();
     }
 }
@@ -29,14 +29,17 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.SVGPath;
+import javafx.stage.StageStyle;
 import javafx.util.StringConverter;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -50,8 +53,6 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-import static hoogenbj.countary.util.DbUtils.MAX_TRANSACTION_ROWS;
-
 public class TransactionController implements ControllerHelpers {
     private Consumer<Account> onStatementLoaded;
     private Consumer<TransactionHolder> onTransactionSelected;
@@ -65,10 +66,20 @@ public class TransactionController implements ControllerHelpers {
     @FXML
     private Button manyToOne;
     @FXML
+    private Button addRule;
+    @FXML
+    private Button autoAllocate;
+    @FXML
+    private Button manageRules;
+    @FXML
     ComboBox<Account> accounts;
     private Settings settings;
     private UserInterface userInterface;
     private DataModel model;
+    private AsyncDataModel asyncModel;
+    private StatementDetector statementDetector;
+    private ImportPipeline importPipeline;
+    private AutoAllocator autoAllocator;
     ObservableList<Account> accountsList;
     ObservableList<TransactionHolder> listOfTransactions;
     private Boolean multipleTransactionsSelected = false;
@@ -80,6 +91,14 @@ public class TransactionController implements ControllerHelpers {
     @FXML
     Button loadStatementButton;
     @FXML
+    private Button loadStatementsButton;
+    @FXML
+    private HBox importProgress;
+    @FXML
+    private ProgressBar importProgressBar;
+    @FXML
+    private Label importStatus;
+    @FXML
     private TableColumn<TransactionHolder, String> postingDateColumn;
 
     @FXML
@@ -104,6 +123,12 @@ public class TransactionController implements ControllerHelpers {
     private Button calculate;
 
     private TransactionModel transactionModel;
+    private boolean paging;
+
+    private static final double SCROLL_EDGE = 0.02;
+    private static final Comparator<TransactionHolder> NEWEST_FIRST = Comparator
+            .comparing(TransactionHolder::pdate, Comparator.reverseOrder())
+            .thenComparing(holder -> holder.getTransaction().id(), Comparator.reverseOrder());
 
     public void setBudgetItemSelected(BudgetItemHolder budgetItemSelected) {
         this.budgetItemSelected = budgetItemSelected;
@@ -111,12 +136,17 @@ public class TransactionController implements ControllerHelpers {
     }
 
     public TransactionController(Settings settings, UserInterface userInterface, DataModel model,
+                                 AsyncDataModel asyncModel,
                                  BiConsumer<Account, BudgetItem> onAllocation,
                                  Consumer<TransactionHolder> onTransactionSelected,
                                  Consumer<Account> onStatementLoaded) {
         this.settings = settings;
         this.userInterface = userInterface;
         this.model = model;
+        this.asyncModel = asyncModel;
+        this.statementDetector = new StatementDetector();
+        this.importPipeline = new ImportPipeline(asyncModel, statementDetector);
+        this.autoAllocator = new AutoAllocator(model);
         this.onAllocation = onAllocation;
         this.onTransactionSelected = onTransactionSelected;
         this.onStatementLoaded = onStatementLoaded;
@@ -137,7 +167,8 @@ public class TransactionController implements ControllerHelpers {
             if (!model.tableExists("account")) {
                 userInterface.showWarning("The database appears to be empty. Create database objects first.");
             } else {
-                transactionModel = new TransactionModel(model, this::refreshTransactions, this::searchClearable);
+                transactionModel = new TransactionModel(model, this::refreshTransactions, this::searchClearable,
+                        settings.getSearchIndexMegabytes() * 1024L * 1024L);
                 initControls();
                 KeyValue recentAccount = settings.getCurrentAccount();
                 if (recentAccount != null) {
@@ -170,21 +201,53 @@ public class TransactionController implements ControllerHelpers {
     }
 
     private void refreshTransactions(List<Transaction> transactions) {
-        if (transactions.size() == MAX_TRANSACTION_ROWS) {
-            Platform.runLater(() -> userInterface.showNotification(
-                    String.format("Maximum number of transactions (%d) retrieved. Narrow your search.",
-                            MAX_TRANSACTION_ROWS)));
-        }
         List<TransactionHolder> list = transactions
                 .stream().map(TransactionHolder::new).toList();
         holderLookup.clear();
         list.forEach(holder -> holderLookup.put(holder.getTransaction(), holder));
         listOfTransactions = FXCollections.observableArrayList(list);
-        SortedList<TransactionHolder> sortedList = new SortedList<>(listOfTransactions, (left, right) -> right.pdate().compareTo(left.pdate()));
+        SortedList<TransactionHolder> sortedList = new SortedList<>(listOfTransactions, NEWEST_FIRST);
         tableView.setItems(sortedList);
         tableView.refresh();
     }
 
+    private void watchScrolling() {
+        if (tableView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow)
+            flow.positionProperty().addListener((observable, oldValue, newValue) ->
+                    onScrolled(flow, newValue.doubleValue()));
+    }
+
+    /**
+     * Reads the next page of transactions when the user scrolls near either end of the rows that are loaded.
+     */
+    private void onScrolled(VirtualFlow<?> flow, double position) {
+        if (paging || transactionModel == null)
+            return;
+        TransactionModel.Slide slide = null;
+        if (position >= 1.0 - SCROLL_EDGE)
+            slide = transactionModel.loadOlder();
+        else if (position <= SCROLL_EDGE)
+            slide = transactionModel.loadNewer();
+        if (slide == null)
+            return;
+        paging = true;
+        try {
+            IndexedCell<?> firstVisible = flow.getFirstVisibleCell();
+            TransactionHolder anchor = firstVisible == null || firstVisible.getIndex() < 0
+                    || firstVisible.getIndex() >= tableView.getItems().size()
+                    ? null : tableView.getItems().get(firstVisible.getIndex());
+            slide.dropped().forEach(transaction -> listOfTransactions.remove(holderLookup.remove(transaction)));
+            List<TransactionHolder> added = slide.added().stream().map(TransactionHolder::new).toList();
+            added.forEach(holder -> holderLookup.put(holder.getTransaction(), holder));
+            listOfTransactions.addAll(added);
+            // Keep the rows the user was looking at where they were
+            if (anchor != null)
+                tableView.scrollTo(anchor);
+        } finally {
+            paging = false;
+        }
+    }
+
     private void initControls() throws SQLException {
         searchDatePicker.setConverter(convertSearchDate());
         searchDatePicker.valueProperty().addListener(this::dateBasedSearch);
@@ -196,11 +259,15 @@ public class TransactionController implements ControllerHelpers {
         manyToOne.setDisable(true);
         oneToMany.setOnAction(action -> mapOneTransactionToManyBudgetItems());
         manyToOne.setOnAction(action -> mapManyTransactionsToOneBudgetItem());
+        addRule.setOnAction(action -> addAllocationRule());
+        autoAllocate.setOnAction(action -> autoAllocate(accounts.getValue()));
+        manageRules.setOnAction(action -> manageAllocationRules());
         searchCriteria.textProperty().addListener(this::textBasedSearch);
         tableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         tableView.getSelectionModel().getSelectedItems()
                 .addListener((ListChangeListener<? super TransactionHolder>) c -> monitorSelectionChanges(c.getList()));
         tableView.setRowFactory(this::makeRow);
+        tableView.skinProperty().addListener((observable, oldValue, newValue) -> watchScrolling());
         showCompletedAlso.selectedProperty().addListener(this::listenToShowCompletedAlsoChanges);
         postingDateColumn.setCellValueFactory(p -> p.getValue().postingDateProperty());
         txDateColumn.setCellValueFactory(p -> p.getValue().txDateProperty());
@@ -388,63 +455,169 @@ public class TransactionController implements ControllerHelpers {
         CreateTransactionDlgController dialog = CreateTransactionDlgController
                 .getInstance(CountaryApp.OWNER_WINDOW, accounts.getValue());
         Optional<Transaction> value = dialog.showAndWait();
-        value.ifPresent(
-                transaction -> {
-                    try {
-                        Transaction newTransaction = model.createTransaction(transaction);
-                        TransactionHolder holder = new TransactionHolder(newTransaction);
-                        listOfTransactions.add(holder);
-                        holderLookup.put(newTransaction, holder);
-                        tableView.refresh();
-                    } catch (SQLException e) {
-                        throw new RuntimeException("Unable to create transaction", e);
-                    }
-                }
-        );
+        value.ifPresent(transaction -> whenDone(asyncModel.write(model -> model.createTransaction(transaction)),
+                newTransaction -> {
+                    TransactionHolder holder = new TransactionHolder(newTransaction);
+                    listOfTransactions.add(holder);
+                    holderLookup.put(newTransaction, holder);
+                    tableView.refresh();
+                }, "Unable to create transaction"));
     }
 
     @FXML
     private void onLoadStatement() {
         ImportStatementDlgController dlg = ImportStatementDlgController.getInstance(CountaryApp.OWNER_WINDOW, accounts.getValue());
         Optional<KeyValue> value = dlg.showAndWait();
-        value.ifPresent(
-                keyValue -> {
-                    ParsedStatement parsedStatement = parseStatement(keyValue.value(), StatementParsers.valueOf(keyValue.key()).parser());
-                    if (parsedStatement.getAccountNumber() != null && !parsedStatement.getAccountNumber().equals(transactionModel.getAccount().number())) {
-                        userInterface.showError(String.format("Account number %s in statement is wrong", parsedStatement.getAccountNumber()));
-                    } else {
-                        List<Integer> hashes = parsedStatement.getLines().stream().map(ParsedStatement.Line::hashCode).toList();
-                        List<ParsedStatement.Line> noDups;
-                        try {
-                            Set<Integer> matchingHashCodes = new HashSet<>(model.getTransactionHashesMatchingHashCodes(hashes));
-                            noDups = parsedStatement.getLines().stream().filter(line -> !matchingHashCodes.contains(line.hashCode())).toList();
-                        } catch (SQLException e) {
-                            throw new RuntimeException("Exception while looking for duplicate transactions", e);
-                        }
-                        if (noDups.isEmpty())
-                            return;
-                        Account account = accounts.getValue();
-                        try {
-                            model.saveTransactions(account, noDups);
-                        } catch (SQLException e) {
-                            throw new RuntimeException("Exception while saving transactions in database", e);
+        value.ifPresent(keyValue -> {
+            Account account = accounts.getValue();
+            // The statement is saved as it is parsed, so both happen on the writer
+            whenDone(asyncModel.write(model -> importStatement(model, account, keyValue.value(),
+                            StatementParsers.valueOf(keyValue.key()).parser(), statementDetector)),
+                    importer -> {
+                        if (importer.isWrongAccount()) {
+                            userInterface.showError(String.format("Account number %s in statement is wrong",
+                                    importer.getStatement().getAccountNumber()));
+                        } else if (importer.getSaved() > 0) {
+                            transactionModel.setAccount(account);
+                            onStatementLoaded.accept(account);
+                            autoAllocate(account);
                         }
-                        transactionModel.setAccount(account);
-                        onStatementLoaded.accept(account);
-                    }
-                }
-        );
+                    }, "Unable to import statement: " + keyValue.value());
+        });
+    }
+
+    @FXML
+    private void onLoadStatements() {
+        List<Path> files = userInterface.openBankStatementFiles().stream().map(Path::of).toList();
+        if (files.isEmpty())
+            return;
+        loadStatementsButton.setDisable(true);
+        importProgressBar.setProgress(0);
+        importStatus.setText(String.format("Importing %d statements", files.size()));
+        importProgress.setManaged(true);
+        importProgress.setVisible(true);
+        // Statements without an account number go to the current account
+        whenDone(importPipeline.importFiles(files, List.copyOf(accountsList), accounts.getValue(), this::showImportProgress),
+                this::onStatementsLoaded, "Unable to import statements");
+    }
+
+    private void showImportProgress(ImportPipeline.Progress progress) {
+        importProgressBar.setProgress((progress.parsed() + progress.done()) / (2.0 * progress.files()));
+        importStatus.setText(String.format("%d of %d done, parsing %,.0f and saving %,.0f lines/s", progress.done(),
+                progress.files(), progress.parseLinesPerSecond(), progress.writeLinesPerSecond()));
+    }
+
+    private void onStatementsLoaded(List<ImportPipeline.Result> results) {
+        importProgress.setVisible(false);
+        importProgress.setManaged(false);
+        loadStatementsButton.setDisable(false);
+        Set<Account> loaded = new LinkedHashSet<>();
+        int saved = 0;
+        StringBuilder failures = new StringBuilder();
+        for (ImportPipeline.Result result : results) {
+            if (result.failure() != null)
+                failures.append(String.format("%s: %s%n", result.file().getFileName(), result.failure().getMessage()));
+            else if (result.saved() > 0)
+                loaded.add(result.account());
+            saved += result.saved();
+        }
+        if (loaded.contains(accounts.getValue()))
+            transactionModel.setAccount(accounts.getValue());
+        loaded.forEach(onStatementLoaded);
+        if (!failures.isEmpty())
+            userInterface.showError(failures.toString());
+        else
+            userInterface.showNotification(String.format("Saved %d new transactions from %d statements", saved,
+                    results.size()));
+        if (loaded.contains(accounts.getValue()))
+            autoAllocate(accounts.getValue());
+    }
+
+    /**
+     * Makes a rule that allocates transactions like the selected one to the item of the selected budget item.
+     */
+    private void addAllocationRule() {
+        TransactionHolder selected = tableView.getSelectionModel().getSelectedItem();
+        if (selected == null || budgetItemSelected == null)
+            return;
+        Item item = budgetItemSelected.getBudgetItem().item();
+        TextInputDialog dialog = new TextInputDialog(selected.getTransaction().description());
+        dialog.setGraphic(null);
+        dialog.setHeaderText(null);
+        dialog.initStyle(StageStyle.UTILITY);
+        dialog.setTitle("New allocation rule");
+        dialog.setContentText(String.format("Allocate to %s when the description contains:", item.name()));
+        dialog.showAndWait().filter(pattern -> !pattern.isBlank()).ifPresent(pattern ->
+                whenDone(asyncModel.write(model -> model.createAllocationRule(pattern, item)),
+                        rule -> userInterface.showNotification(String.format("Transactions containing \"%s\" go to %s",
+                                rule.pattern(), item.name())),
+                        e -> DbUtils.handleException(userInterface, "rule", e),
+                        "Unable to create allocation rule"));
+    }
+
+    /**
+     * Proposes allocations of the account's transactions by the allocation rules, to the budget of the selected budget
+     * item, and applies them once confirmed.
+     */
+    private void autoAllocate(Account account) {
+        if (account == null || budgetItemSelected == null)
+            return;
+        Budget budget = budgetItemSelected.getBudgetItem().budget();
+        whenDone(asyncModel.read(model -> autoAllocator.propose(budget, account)), proposals -> {
+            if (proposals.proposals().isEmpty())
+                return;
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+            alert.setTitle("Auto-allocate");
+            alert.setHeaderText(String.format("Allocate %d of %d transactions to %s by rule?",
+                    proposals.proposals().size(), proposals.transactions(), budget.name()));
+            alert.setContentText(String.format("Matched against %d rules at %,.0f transactions/s",
+                    proposals.rules(), proposals.transactionsPerSecond()));
+            alert.showAndWait().filter(ButtonType.OK::equals).ifPresent(ok ->
+                    whenDone(asyncModel.write(model -> autoAllocator.apply(proposals.proposals())), applied -> {
+                        if (account.equals(accounts.getValue()))
+                            transactionModel.setAccount(account);
+                        proposals.proposals().stream().map(AutoAllocator.Proposal::budgetItem).distinct()
+                                .forEach(budgetItem -> onAllocation.accept(account, budgetItem));
+                        if (applied.skipped() > 0)
+                            userInterface.showNotification(String.format("Skipped %d transactions that had been " +
+                                    "allocated meanwhile", applied.skipped()));
+                    }, e -> DbUtils.handleException(userInterface, "allocation", e), "Unable to allocate transactions"));
+        }, "Unable to match transactions against allocation rules");
+    }
+
+    /**
+     * Lists the allocation rules and deletes those the user picks.
+     */
+    private void manageAllocationRules() {
+        whenDone(asyncModel.read(DataModel::getAllocationRules), rules ->
+                AllocationRulesDlg.getInstance(CountaryApp.OWNER_WINDOW, rules).showAndWait()
+                        .filter(picked -> !picked.isEmpty()).ifPresent(this::deleteAllocationRules),
+                "Unable to read allocation rules");
+    }
+
+    private void deleteAllocationRules(List<AllocationRule> rules) {
+        whenDone(asyncModel.write(model -> {
+                    for (AllocationRule rule : rules)
+                        model.deleteAllocationRule(rule);
+                    return rules.size();
+                }), deleted -> userInterface.showNotification(String.format("Deleted %d allocation rules", deleted)),
+                e -> DbUtils.handleException(userInterface, "rule", e), "Unable to delete allocation rules");
     }
 
-    private ParsedStatement parseStatement(String filePath, Class<? extends StatementParser> parserClass) {
+    private static StatementImporter importStatement(DataModel model, Account account, String filePath,
+                                                     Class<? extends StatementParser> parserClass,
+                                                     StatementDetector detector) throws SQLException {
         try {
-            StatementParser parser = parserClass.getDeclaredConstructor().newInstance();
-            return parser.parse(new File(filePath).toURI());
+            // What the file turns out to be counts for more than what was picked for it
+            StatementParser parser = detector.detect(Path.of(filePath));
+            if (parser == null)
+                parser = parserClass.getDeclaredConstructor().newInstance();
+            StatementImporter importer = new StatementImporter(model, account);
+            importer.importStatement(parser, new File(filePath).toURI());
+            return importer;
         } catch (IOException | InstantiationException | IllegalAccessException | InvocationTargetException |
                  NoSuchMethodException e) {
             throw new RuntimeException("Unable to parse statement: " + filePath, e);
-        } catch (StatementParseException e) {
-            throw e;
         }
     }
 
@@ -500,6 +673,8 @@ public class TransactionController implements ControllerHelpers {
     }
 
     private void applyToToolbox() {
+        addRule.setDisable(!singleTransactionsSelected || budgetItemSelected == null);
+        autoAllocate.setDisable(budgetItemSelected == null);
         if (budgetItemSelected == null) {
             manyToOne.setDisable(true);
             oneToMany.setDisable(true);
@@ -545,15 +720,13 @@ public class TransactionController implements ControllerHelpers {
                     operations.add((Connection connection) -> {
                         replacements.addAll(model.setAllocated(connection, transactions.stream().map(TransactionHolder::getTransaction).toList()));
                     });
-                    try {
-                        model.doInTransaction(operations.toArray(new DatabaseOperation[0]));
+                    BudgetItem budgetItem = budgetItemSelected.getBudgetItem();
+                    whenDone(asyncModel.doInTransaction(operations), done -> {
                         replacements.forEach(holder -> holderLookup.get(holder.getTransaction()).setTransaction(holder.getTransaction()));
                         tableView.getSelectionModel().clearSelection();
                         tableView.refresh();
-                        onAllocation.accept(allocations.get(0).transaction().account(), budgetItemSelected.getBudgetItem());
-                    } catch (SQLException e) {
-                        DbUtils.handleException(userInterface, "transaction", e);
-                    }
+                        onAllocation.accept(allocations.get(0).transaction().account(), budgetItem);
+                    }, e -> DbUtils.handleException(userInterface, "transaction", e), "Unable to allocate transactions");
                 });
             }
         } else if (count == 1) {
@@ -585,22 +758,23 @@ public class TransactionController implements ControllerHelpers {
                             budgetItemSelected.getBudgetItem(),
                             allocations.stream().map(AllocationHolder::new).toList());
             dialog.showAndWait().ifPresent(allocation -> {
-                try {
-                    model.doInTransaction((connection) -> {
-                        model.createAllocation(connection, allocation.transaction(), allocation.budgetItem(),
-                                allocation.amount(), allocation.note());
-                    }, (connection) -> {
-                        if (allocation.amount().compareTo(balanceToAllocate) == 0) {
-                            TransactionHolder newTransactionHolder = model.setAllocated(connection, transactionHolder.getTransaction());
-                            holderLookup.get(transactionHolder.getTransaction()).setTransaction(newTransactionHolder.getTransaction());
-                            tableView.getSelectionModel().clearSelection();
-                            tableView.refresh();
-                        }
+                List<TransactionHolder> replacements = new ArrayList<>();
+                BudgetItem budgetItem = budgetItemSelected.getBudgetItem();
+                CompletableFuture<Void> allocated = asyncModel.doInTransaction((connection) -> {
+                    model.createAllocation(connection, allocation.transaction(), allocation.budgetItem(),
+                            allocation.amount(), allocation.note());
+                }, (connection) -> {
+                    if (allocation.amount().compareTo(balanceToAllocate) == 0)
+                        replacements.add(model.setAllocated(connection, transactionHolder.getTransaction()));
+                });
+                whenDone(allocated, done -> {
+                    replacements.forEach(holder -> {
+                        holderLookup.get(transactionHolder.getTransaction()).setTransaction(holder.getTransaction());
+                        tableView.getSelectionModel().clearSelection();
+                        tableView.refresh();
                     });
-                    onAllocation.accept(allocation.transaction().account(), budgetItemSelected.getBudgetItem());
-                } catch (SQLException e) {
-                    DbUtils.handleException(userInterface, "allocation", e);
-                }
+                    onAllocation.accept(allocation.transaction().account(), budgetItem);
+                }, e -> DbUtils.handleException(userInterface, "allocation", e), "Unable to allocate transaction");
             });
         } else {
             userInterface.showError("No transactions are selected");
@@ -609,17 +783,11 @@ public class TransactionController implements ControllerHelpers {
 
     private void textBasedSearch(ObservableValue<? extends String> observable, String oldValue, String newValue) {
         if (newValue != null && !newValue.equals(oldValue) && newValue.length() > 1) {
-            BigDecimal value = null;
-            try {
-                value = ParseUtils.parseBigDecimal(newValue);
-            } catch (Exception e) {
-                // need to know if it is a valid amount
-            }
-            if (value == null)
+            // an amount, or a range of amounts such as 500..600
+            if (TransactionQuery.amounts(newValue) == null)
                 transactionModel.searchByDescription(newValue);
-            else {
+            else
                 transactionModel.searchByAmount(newValue);
-            }
         } else {
             transactionModel.clearSearch();
         }
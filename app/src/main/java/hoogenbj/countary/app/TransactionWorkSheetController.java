@@ -37,6 +37,8 @@ public class TransactionWorkSheetController implements ControllerHelpers {
     @Inject
     private DataModel model;
     @Inject
+    private AsyncDataModel asyncModel;
+    @Inject
     private UserInterface userInterface;
     private TransactionController transactionController;
     @FXML
@@ -86,7 +88,7 @@ public class TransactionWorkSheetController implements ControllerHelpers {
     }
 
     private Node getTransactionsPane() throws IOException {
-        transactionController = new TransactionController(settings, userInterface, model,
+        transactionController = new TransactionController(settings, userInterface, model, asyncModel,
                 this::onBudgetItemAllocation, this::transactionSelectionListener, this::onStatementLoaded);
         Node transactionsNode = transactionController.createNode();
         AnchorPane transactionsPane = new AnchorPane();
@@ -99,7 +101,7 @@ public class TransactionWorkSheetController implements ControllerHelpers {
     }
 
     private void onStatementLoaded(Account account) {
-        summaryController.update(account);
+        summaryController.refresh();
     }
 
     private Node getReportPane() {
@@ -150,7 +152,6 @@ public class TransactionWorkSheetController implements ControllerHelpers {
         } catch (SQLException e) {
             throw new RuntimeException(String.format("Unable to update allocation on worksheet for budget item %s", budgetItem.item().name()), e);
         }
-        summaryController.update(account, budgetItem.budget());
     }
 
     private void budgetSelectionListener(BudgetHolder budgetHolder) {
@@ -284,6 +285,5 @@ public class TransactionWorkSheetController implements ControllerHelpers {
             throw new RuntimeException(String.format("Unable to retrieve budget item %s",
                     allocation.budgetItem().item().name()), e);
         }
-        summaryController.update(allocation.transaction().account(), allocation.budgetItem().budget());
     }
 }
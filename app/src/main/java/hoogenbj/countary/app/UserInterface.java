@@ -17,6 +17,7 @@
 package hoogenbj.countary.app;
 
 import java.io.File;
+import java.util.List;
 
 public interface UserInterface {
     void showWarning(String content);
@@ -29,6 +30,8 @@ public interface UserInterface {
 
     String openBankStatementFile(String ext);
 
+    List<String> openBankStatementFiles();
+
     void showNotification(String notification);
 
     File restoreDatabaseFromFile(Settings settings);
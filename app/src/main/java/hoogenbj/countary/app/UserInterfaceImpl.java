@@ -24,6 +24,7 @@ import org.controlsfx.control.Notifications;
 import java.io.File;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.List;
 import java.util.Optional;
 
 import static hoogenbj.countary.app.CountaryApp.OWNER_WINDOW;
@@ -107,6 +108,20 @@ public class UserInterfaceImpl implements UserInterface {
             return null;
     }
 
+    @Override
+    public List<String> openBankStatementFiles() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select bank statement files:");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Bank Statement Files", "*.csv", "*.ofx"),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
+        List<File> files = fileChooser.showOpenMultipleDialog(OWNER_WINDOW);
+        if (files != null) {
+            return files.stream().map(File::getAbsolutePath).toList();
+        } else
+            return List.of();
+    }
+
     @Override
     public void showError(String content) {
         ErrorDialogController instance = ErrorDialogController.getInstance(OWNER_WINDOW, content);
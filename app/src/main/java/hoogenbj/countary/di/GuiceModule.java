@@ -16,11 +16,18 @@
 package hoogenbj.countary.di;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import hoogenbj.countary.app.Settings;
 import hoogenbj.countary.app.UserInterface;
 import hoogenbj.countary.app.UserInterfaceImpl;
+import hoogenbj.countary.model.AsyncDataModel;
+import hoogenbj.countary.model.CategoryTree;
+import hoogenbj.countary.model.DataChanges;
+import hoogenbj.countary.model.ConnectionPool;
+import hoogenbj.countary.model.ConnectionProvider;
 import hoogenbj.countary.model.DataModel;
 import hoogenbj.countary.model.DatabaseDataModel;
+import hoogenbj.countary.model.FingerprintFilters;
 import javafx.fxml.FXMLLoader;
 
 public class GuiceModule extends AbstractModule {
@@ -29,7 +36,12 @@ public class GuiceModule extends AbstractModule {
     protected void configure() {
         bind(FXMLLoader.class).toProvider(FXMLLoaderProvider.class);
         bind(Settings.class).toProvider(SettingsProvider.class);
+        bind(ConnectionProvider.class).to(ConnectionPool.class).in(Singleton.class);
+        bind(CategoryTree.class).in(Singleton.class);
+        bind(FingerprintFilters.class).in(Singleton.class);
+        bind(DataChanges.class).in(Singleton.class);
         bind(DataModel.class).to(DatabaseDataModel.class);
+        bind(AsyncDataModel.class).in(Singleton.class);
         bind(UserInterface.class).to(UserInterfaceImpl.class);
     }
 
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2022. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.math.BigDecimal;
+
+/**
+ * @param debits  - Sum of the debits of the transactions of the account that are not yet fully allocated
+ * @param credits - Sum of the credits of the transactions of the account that are not yet fully allocated
+ * @param funded  - What has been allocated to budgets from the account, over all budgets
+ */
+public record AccountSummary(Account account, BigDecimal debits, BigDecimal credits, BigDecimal funded) {
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import com.google.inject.Inject;
+import javafx.application.Platform;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link DataModel} calls off the JavaFX application thread, so that imports, clones and allocations do not
+ * freeze the user interface.
+ * <p>
+ * Reads run on virtual threads, no more of them at a time than the {@link ConnectionPool} has readers. Writes run one
+ * after the other, in the order they were submitted, on a single writer thread; SQLite only allows one writer anyway.
+ * The returned futures are completed on the JavaFX application thread, so whatever is chained onto them may touch
+ * the scene graph.
+ * <p>
+ * A read submitted after a write is not guaranteed to see it. Chain the read onto the future of the write instead.
+ */
+public class AsyncDataModel {
+
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T apply(DataModel model) throws SQLException;
+    }
+
+    @Inject
+    private DataModel dataModel;
+
+    private final Semaphore readPermits;
+    private final Executor callbacks;
+    private final ExecutorService readers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("countary-read-", 0).factory());
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("countary-write").factory());
+
+    public AsyncDataModel() {
+        this.readPermits = new Semaphore(ConnectionPool.DEFAULT_READERS, true);
+        this.callbacks = Platform::runLater;
+    }
+
+    /**
+     * @param callbacks - Completes the futures, instead of the JavaFX application thread
+     */
+    AsyncDataModel(DataModel dataModel, int maxReaders, Executor callbacks) {
+        this.dataModel = dataModel;
+        this.readPermits = new Semaphore(maxReaders, true);
+        this.callbacks = callbacks;
+    }
+
+    public <T> CompletableFuture<T> read(Call<T> call) {
+        return submit(readers, model -> {
+            readPermits.acquireUninterruptibly();
+            try {
+                return call.apply(model);
+            } finally {
+                readPermits.release();
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> write(Call<T> call) {
+        return submit(writer, call);
+    }
+
+    /**
+     * The asynchronous counterpart of {@link DataModel#doInTransaction(DatabaseOperation[])}. The operations run on
+     * the writer thread, so they must not touch the scene graph; do that once the future completes.
+     */
+    @SafeVarargs
+    public final CompletableFuture<Void> doInTransaction(DatabaseOperation<Connection>... operations) {
+        return write(model -> {
+            model.doInTransaction(operations);
+            return null;
+        });
+    }
+
+    /**
+     * As {@link #doInTransaction(DatabaseOperation[])}, for operations that have been collected in a list.
+     */
+    public CompletableFuture<Void> doInTransaction(List<DatabaseOperation<Connection>> operations) {
+        return write(model -> {
+            model.doInTransaction(operations.toArray(new DatabaseOperation[0]));
+            return null;
+        });
+    }
+
+    /**
+     * Lets the writes already submitted finish, e.g. before the connections are closed when the application stops.
+     */
+    public void shutdown() throws InterruptedException {
+        readers.shutdown();
+        writer.shutdown();
+        writer.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+        readers.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> submit(ExecutorService executor, Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                T result = call.apply(dataModel);
+                callbacks.execute(() -> future.complete(result));
+            } catch (Throwable e) {
+                callbacks.execute(() -> future.completeExceptionally(e));
+            }
+        });
+        return future;
+    }
+}
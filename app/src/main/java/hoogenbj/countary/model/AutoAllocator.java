@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.util.PatternMatcher;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allocates the transactions of an account to the items of a budget by the {@link AllocationRule}s, e.g. after
+ * importing statements. All the rules are matched against a description at once by a {@link PatternMatcher}, and the
+ * rule with the longest pattern wins, so "UBER EATS" can go elsewhere than "UBER". Only rules for items that are in
+ * the budget take part, and only transactions without any allocations are allocated, each in full.
+ * <p>
+ * Proposing and applying are separate, so that the proposals can be confirmed first. Transactions that got allocated
+ * meanwhile, e.g. by an import that was already under way, are skipped when applying.
+ */
+public class AutoAllocator {
+
+    public record Proposal(Transaction transaction, BudgetItem budgetItem, AllocationRule rule) {
+    }
+
+    /**
+     * @param matchNanos - The time spent matching descriptions against the rules
+     */
+    public record Proposals(List<Proposal> proposals, int transactions, int rules, long matchNanos) {
+        public double transactionsPerSecond() {
+            return matchNanos == 0 ? 0 : transactions * 1e9 / matchNanos;
+        }
+    }
+
+    /**
+     * @param skipped - The proposals left alone because their transaction had been allocated since
+     */
+    public record Applied(List<TransactionHolder> allocated, int skipped) {
+    }
+
+    private final DataModel model;
+
+    public AutoAllocator(DataModel model) {
+        this.model = model;
+    }
+
+    public Proposals propose(Budget budget, Account account) throws SQLException {
+        return propose(model.getAllocationRules(), model.getBudgetItems(budget),
+                model.getUnallocatedTransactions(account));
+    }
+
+    static Proposals propose(List<AllocationRule> allRules, Iterable<BudgetItem> budgetItems,
+                             List<Transaction> transactions) {
+        Map<Long, BudgetItem> byItem = new HashMap<>();
+        budgetItems.forEach(budgetItem -> byItem.put(budgetItem.item().id(), budgetItem));
+        List<AllocationRule> rules = allRules.stream().filter(rule -> byItem.containsKey(rule.item().id())).toList();
+        List<Proposal> proposals = new ArrayList<>();
+        long start = System.nanoTime();
+        PatternMatcher matcher = new PatternMatcher(rules.stream().map(AllocationRule::pattern).toList());
+        for (Transaction transaction : transactions) {
+            if (transaction.description() == null || transaction.amount().signum() == 0)
+                continue;
+            int match = matcher.longestMatch(transaction.description());
+            if (match >= 0) {
+                AllocationRule rule = rules.get(match);
+                proposals.add(new Proposal(transaction, byItem.get(rule.item().id()), rule));
+            }
+        }
+        return new Proposals(proposals, transactions.size(), rules.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Allocates the whole amount of each transaction as proposed, all in one database transaction, unless it is no
+     * longer without allocations.
+     */
+    public Applied apply(List<Proposal> proposals) throws SQLException {
+        List<TransactionHolder> allocated = new ArrayList<>();
+        model.doInTransaction(connection -> {
+            List<Transaction> transactions = new ArrayList<>();
+            for (Proposal proposal : proposals) {
+                if (!model.isUnallocated(connection, proposal.transaction()))
+                    continue;
+                model.createAllocation(connection, proposal.transaction(), proposal.budgetItem(),
+                        proposal.transaction().amount(), String.format("By rule: %s", proposal.rule().pattern()));
+                transactions.add(proposal.transaction());
+            }
+            if (!transactions.isEmpty())
+                allocated.addAll(model.setAllocated(connection, transactions));
+        });
+        return new Applied(allocated, proposals.size() - allocated.size());
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2023. Johan Hoogenboezem
+ * Copyright (c) 2022. Johan Hoogenboezem
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -13,14 +13,14 @@
  *    See the License for the specific language governing permissions and
  *    limitations under the License.
  */
+package hoogenbj.countary.model;
 
-package hoogenbj.countary.util.ofx;
+import java.math.BigDecimal;
 
-import java.util.regex.Pattern;
-
-public class Tags {
-    public static final Pattern HEADER_REGEX = Pattern.compile("\\s*([A-Z]+):(\\w+)");
-    public static final Pattern SIMPLE_TAG_REGEX = Pattern.compile("\\s*\\<([A-Z0-9.]+)\\>(.+)");
-    public static final Pattern COMPLEX_TAG_REGEX = Pattern.compile("\\s*\\<([A-Z0-9.]+)\\>$");
-    public static final Pattern END_TAG_REGEX = Pattern.compile("\\s*\\</([A-Z0-9.]+)\\>$");
+/**
+ * A tag of an item in a budget, with what was planned for and allocated to the budget item.
+ *
+ * @param frequency - The number of items with the tag, in all budgets
+ */
+public record BudgetItemTag(Long itemId, Tag tag, BigDecimal planned, BigDecimal actual, int frequency) {
 }
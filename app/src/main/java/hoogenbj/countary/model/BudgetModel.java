@@ -27,57 +27,94 @@ public class BudgetModel {
         this.dataModel = dataModel;
     }
 
-    private static class Tracker {
-        public Set<Tag> ptr = Collections.emptySet();
-        public Set<Set<Tag>> seen = new HashSet<>();
+    /**
+     * Groups the tags of the budget's items so that tags that occur on the same item end up in the same group, as
+     * do tags that are linked by a chain of such items. Within a group the most frequently used tags come first.
+     */
+    public List<List<BudgetTagProfile>> getBudgetTagProfile(Budget budget) throws SQLException {
+        return profile(dataModel.getBudgetItemTags(budget));
+    }
+
+    static List<List<BudgetTagProfile>> profile(List<BudgetItemTag> itemTags) {
+        // the tags are numbered in the order they are first seen, for the union-find
+        Map<Long, Integer> numbers = new HashMap<>();
+        List<BudgetItemTag> tags = new ArrayList<>();
+        List<BigDecimal> planned = new ArrayList<>();
+        List<BigDecimal> actual = new ArrayList<>();
+        Map<Long, Integer> firstTagOfItem = new HashMap<>();
+        TagGroups groups = new TagGroups();
+        for (BudgetItemTag itemTag : itemTags) {
+            int tag = numbers.computeIfAbsent(itemTag.tag().id(), id -> {
+                tags.add(itemTag);
+                planned.add(BigDecimal.ZERO);
+                actual.add(BigDecimal.ZERO);
+                return groups.add();
+            });
+            if (itemTag.planned() != null)
+                planned.set(tag, planned.get(tag).add(itemTag.planned()));
+            if (itemTag.actual() != null)
+                actual.set(tag, actual.get(tag).add(itemTag.actual()));
+            Integer first = firstTagOfItem.putIfAbsent(itemTag.itemId(), tag);
+            if (first != null)
+                groups.union(first, tag);
+        }
+        Comparator<Integer> mostFrequentFirst = Comparator
+                .comparing((Integer tag) -> tags.get(tag).frequency(), Comparator.reverseOrder())
+                .thenComparing(tag -> tags.get(tag).tag().name());
+        Map<Integer, List<Integer>> byGroup = new HashMap<>();
+        for (int tag = 0; tag < tags.size(); tag++)
+            byGroup.computeIfAbsent(groups.find(tag), group -> new ArrayList<>()).add(tag);
+        return byGroup.values().stream()
+                .map(group -> group.stream().sorted(mostFrequentFirst).toList())
+                .sorted(Comparator.comparing(group -> group.get(0), mostFrequentFirst))
+                .map(group -> group.stream().map(tag -> {
+                    BudgetTagProfile profile = new BudgetTagProfile(tags.get(tag).tag().id(),
+                            tags.get(tag).tag().name());
+                    profile.setTotalPlanned(planned.get(tag));
+                    profile.setTotalActual(actual.get(tag));
+                    return profile;
+                }).toList())
+                .toList();
     }
 
-    private Set<Set<Tag>> collapse(Collection<Set<Tag>> collection) {
-        Tracker tracker = new Tracker();
-        collection.forEach(set -> {
-            Set<Tag> intersection = new HashSet<>(tracker.ptr);
-            intersection.retainAll(set);
-            if (intersection.isEmpty()) {
-                if (!tracker.ptr.isEmpty())
-                    tracker.seen.add(tracker.ptr);
-                tracker.seen.add(set);
-                tracker.ptr = set;
-            } else {
-                Set<Tag> copy = new HashSet<>(tracker.ptr);
-                copy.addAll(set);
-                tracker.seen.remove(set);
-                tracker.seen.remove(tracker.ptr);
-                tracker.seen.add(copy);
-                tracker.ptr = copy;
+    /**
+     * Union-find over the numbers of the tags, with union by size and path halving.
+     */
+    private static class TagGroups {
+        private int[] parents = new int[64];
+        private int[] sizes = new int[64];
+        private int count;
+
+        int add() {
+            if (count == parents.length) {
+                parents = Arrays.copyOf(parents, 2 * count);
+                sizes = Arrays.copyOf(sizes, 2 * count);
             }
+            parents[count] = count;
+            sizes[count] = 1;
+            return count++;
+        }
 
-        });
-        return tracker.seen;
-    }
+        int find(int tag) {
+            while (parents[tag] != tag) {
+                parents[tag] = parents[parents[tag]];
+                tag = parents[tag];
+            }
+            return tag;
+        }
 
-    public List<List<BudgetTagProfile>> getBudgetTagProfile(Budget budget) throws SQLException {
-        Collection<Set<Tag>> ftags = dataModel.getItemTagsForBudget(budget);
-        Set<Set<Tag>> collapsed = collapse(ftags);
-        int count;
-        // Keep calling collapse until there is nothing to collapse
-        do {
-            count = collapsed.size();
-            collapsed = collapse(collapsed);
-        } while (collapsed.size() < count);
-        Map<Long, Integer> quantifiedTags = dataModel.getQuantifiedTagOrder();
-        List<List<BudgetTagProfile>> budgetTagProfile = collapsed.stream().map(set -> set.stream()
-                .map(t -> new BudgetTagProfile(t.id(), t.name()))
-                .sorted((left, right) -> quantifiedTags.get(right.getTagId()).compareTo(quantifiedTags.get(left.getTagId())))
-                .toList()
-        ).toList();
-        Map<Long, BigDecimal> planned = dataModel.getPlannedByBudgetAndTags(budget);
-        budgetTagProfile.forEach(bdp -> {
-            bdp.forEach(p -> p.setTotalPlanned(planned.computeIfAbsent(p.getTagId(), k -> BigDecimal.ZERO)));
-        });
-        Map<Long, BigDecimal> actual = dataModel.getActualByBudgetAndTags(budget);
-        budgetTagProfile.forEach(bdp -> {
-            bdp.forEach(p -> p.setTotalActual(actual.computeIfAbsent(p.getTagId(), k -> BigDecimal.ZERO)));
-        });
-        return budgetTagProfile;
+        void union(int one, int other) {
+            int a = find(one);
+            int b = find(other);
+            if (a == b)
+                return;
+            if (sizes[a] < sizes[b]) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            parents[b] = a;
+            sizes[a] += sizes[b];
+        }
     }
 }
@@ -16,62 +16,41 @@
 
 package hoogenbj.countary.model;
 
-import hoogenbj.countary.app.BigDecimalProperty;
-import hoogenbj.countary.util.ParseUtils;
-
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * The planned and actual totals of the categories of a budget, each including those of its subcategories, and the
+ * actual total of the budget. The totals are kept as numbers and only formatted into the {@link CategoryHolder}s.
+ * <p>
+ * It remembers what it last counted for every budget item, so that a change to a budget item only adds the
+ * difference to the totals of its category and that category's ancestors, instead of summing the whole tree again.
+ */
 public class CategoryModel {
     private final Map<Category, CategoryHolder> categoryLookup = new HashMap<>();
-    private final Map<Category, Set<Category>> childrenLookup = new HashMap<>();
-    private final Map<Integer, Set<Category>> treeLevels = new HashMap<>();
-    private final Map<Category, Set<BudgetItemHolder>> categoryItems;
+    private final Map<Category, BigDecimal> plannedTotals = new HashMap<>();
+    private final Map<Category, BigDecimal> actualTotals = new HashMap<>();
+    private final Map<BudgetItemHolder, Counted> counted = new HashMap<>();
     private final Set<Category> categories;
     private final BudgetHolder budgetHolder;
+    private BigDecimal budgetActual = BigDecimal.ZERO;
+
+    private record Counted(Category category, BigDecimal planned, BigDecimal actual) {
+    }
 
     public CategoryModel(BudgetHolder budgetHolder, Set<Category> categories, Map<Category, Set<BudgetItemHolder>> categoryItems) {
-        this.categoryItems = categoryItems;
         this.categories = categories;
         this.budgetHolder = budgetHolder;
-        // The categories the budget items belong to constitute the 0-level of the tree. If they have parents, then
-        // those constitute level 1 of the tree.
-        categoryItems.keySet()
-                .forEach(category -> {
-                    Set<Category> zero = treeLevels.computeIfAbsent(0, l -> new HashSet<>());
-                    zero.add(category);
-                    if (category.parent() != null) {
-                        Set<Category> children = childrenLookup.computeIfAbsent(category.parent(), parent -> new HashSet<>());
-                        children.add(category);
-                        Set<Category> one = treeLevels.computeIfAbsent(1, l -> new HashSet<>());
-                        one.add(category.parent());
-                    }
-                });
-        // Find all remaining levels of the category tree.
-        Integer level = 2;
-        AtomicInteger count = new AtomicInteger();
-        do {
-            count.set(0);
-            Set<Category> keySet = new HashSet<>(childrenLookup.keySet());
-            keySet.forEach(category -> {
-                if (category.parent() != null) {
-                    Set<Category> children = childrenLookup.computeIfAbsent(category.parent(), parent -> new HashSet<>());
-                    if (!children.contains(category)) {
-                        count.getAndIncrement();
-                        children.add(category);
-                        Set<Category> lvl = treeLevels.computeIfAbsent(level, l -> new HashSet<>());
-                        lvl.add(category.parent());
-                    }
-                }
-            });
-        } while (count.get() > 0);
-        treeLevels.getOrDefault(0, new HashSet<>()).forEach(category -> {
-            categoryItems.get(category).forEach((holder) -> {
-                updatePlanned(holder);
-                updateActual(holder);
-            });
+        categoryItems.forEach((category, holders) -> {
+            // every category with items shows a total, even if it is nothing
+            add(category, BigDecimal.ZERO, BigDecimal.ZERO);
+            holders.forEach(this::count);
+        });
+        categoryLookup.forEach((category, holder) -> {
+            holder.setPlanned(plannedTotals.get(category));
+            holder.setActual(actualTotals.get(category));
         });
+        budgetHolder.balanceProperty().set(budgetActual);
     }
 
     public Set<Category> getCategories() {
@@ -79,75 +58,65 @@ public class CategoryModel {
     }
 
     public void updateActual(BudgetItemHolder budgetItemHolder) {
-        Set<BudgetItemHolder> items = categoryItems.get(budgetItemHolder.getCategory());
-        BigDecimal totalActual = items.stream()
-                .map(BudgetItemHolder::getActual)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        Category category = budgetItemHolder.getBudgetItem().item().category();
-        categoryLookup.computeIfAbsent(category, CategoryHolder::new).setActual(totalActual);
-        updateTreeActual();
-        List<Category> roots = categoryLookup.keySet().stream().filter(c -> c.parent() == null).toList();
-        totalActual = BigDecimal.ZERO;
-        for (Category root : roots) {
-            String actual = categoryLookup.get(root).getActual();
-            totalActual = totalActual.add(ParseUtils.parseBigDecimal(actual));
-        }
-        budgetHolder.balanceProperty().set(totalActual);
+        update(budgetItemHolder);
     }
 
     public void updatePlanned(BudgetItemHolder budgetItemHolder) {
-        Category category = budgetItemHolder.getCategory();
-        Set<BudgetItemHolder> items = categoryItems.get(category);
-        BigDecimal totalPlanned = items.stream()
-                .map(BudgetItemHolder::getPlanned)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        categoryLookup.computeIfAbsent(category, CategoryHolder::new).setPlanned(totalPlanned);
-        updateTreePlanned();
+        update(budgetItemHolder);
+    }
+
+    private void update(BudgetItemHolder budgetItemHolder) {
+        Counted before = counted.get(budgetItemHolder);
+        if (before != null)
+            add(before.category(), before.planned().negate(), before.actual().negate());
+        Counted now = count(budgetItemHolder);
+        if (before != null && !before.category().equals(now.category()))
+            show(before.category());
+        show(now.category());
+        budgetHolder.balanceProperty().set(budgetActual);
+    }
+
+    private Counted count(BudgetItemHolder budgetItemHolder) {
+        Counted now = new Counted(budgetItemHolder.getCategory(), orZero(budgetItemHolder.getPlanned()),
+                orZero(budgetItemHolder.getActual()));
+        counted.put(budgetItemHolder, now);
+        add(now.category(), now.planned(), now.actual());
+        return now;
+    }
+
+    /**
+     * Adds to the totals of the category, its ancestors and the budget.
+     */
+    private void add(Category category, BigDecimal planned, BigDecimal actual) {
+        for (Category c = category; c != null; c = c.parent()) {
+            plannedTotals.merge(c, planned, BigDecimal::add);
+            actualTotals.merge(c, actual, BigDecimal::add);
+            categoryLookup.computeIfAbsent(c, CategoryHolder::new);
+        }
+        budgetActual = budgetActual.add(actual);
+    }
+
+    /**
+     * Formats the totals of the category and its ancestors for the view.
+     */
+    private void show(Category category) {
+        for (Category c = category; c != null; c = c.parent()) {
+            CategoryHolder holder = categoryLookup.get(c);
+            holder.setPlanned(plannedTotals.get(c));
+            holder.setActual(actualTotals.get(c));
+        }
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
     }
 
-    private void updateTreePlanned() {
-        Set<Category> set;
-        int treeLevel = 1;
-        do {
-            set = treeLevels.computeIfAbsent(treeLevel++, key -> new HashSet<>());
-            for (Category parent : set) {
-                BigDecimal total = childrenLookup.get(parent).stream()
-                        .map(category -> {
-                            CategoryHolder holder = categoryLookup.computeIfAbsent(category, CategoryHolder::new);
-                            if (holder.getPlanned() != null)
-                                return ParseUtils.parseBigDecimal(holder.getPlanned());
-                            else
-                                return BigDecimal.ZERO;
-                        })
-                        .filter(Objects::nonNull)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                categoryLookup.computeIfAbsent(parent, CategoryHolder::new).setPlanned(total);
-            }
-
-        } while (!set.isEmpty());
+    public BigDecimal getPlanned(Category category) {
+        return plannedTotals.getOrDefault(category, BigDecimal.ZERO);
     }
 
-    private void updateTreeActual() {
-        Set<Category> set;
-        int treeLevel = 1;
-        do {
-            set = treeLevels.computeIfAbsent(treeLevel++, key -> new HashSet<>());
-            for (Category parent : set) {
-                BigDecimal total = childrenLookup.get(parent).stream()
-                        .map(category -> {
-                            CategoryHolder holder = categoryLookup.computeIfAbsent(category, CategoryHolder::new);
-                            if (holder.getActual() != null)
-                                return ParseUtils.parseBigDecimal(holder.getActual());
-                            else
-                                return BigDecimal.ZERO;
-                        })
-                        .filter(Objects::nonNull)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                categoryLookup.computeIfAbsent(parent, CategoryHolder::new).setActual(total);
-            }
-
-        } while (!set.isEmpty());
+    public BigDecimal getActual(Category category) {
+        return actualTotals.getOrDefault(category, BigDecimal.ZERO);
     }
 
     public Map<Category, CategoryHolder> getCategoryLookup() {
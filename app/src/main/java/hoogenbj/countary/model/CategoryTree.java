@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The whole category table, read with a single query the first time a category is needed and kept in memory from
+ * then on. {@link DatabaseDataModel} tells it about every change it makes to a category once that change has been
+ * committed, so the tree stays in step with the database without being read again.
+ * <p>
+ * Since a {@link Category} holds on to its parent, renaming or recolouring a category also replaces the records of
+ * all of its descendants. Those are rebuilt from the rows kept here, not reloaded.
+ */
+public class CategoryTree {
+
+    private final Map<Long, Row> rows = new HashMap<>();
+    private final Map<Long, Category> categories = new HashMap<>();
+    private boolean loaded;
+
+    /**
+     * @param connection - Used to load the table if that has not happened yet
+     */
+    public synchronized Category get(Connection connection, Long id) throws SQLException {
+        if (!loaded)
+            load(connection);
+        Category category = build(id);
+        if (category == null)
+            throw new NullPointerException("Unable to retrieve a category with id " + id);
+        return category;
+    }
+
+    public synchronized void added(Category category) {
+        if (!loaded)
+            return;
+        rows.put(category.id(), new Row(category.id(), category.name(), category.bgColor(), category.kind(),
+                category.parent() == null ? null : category.parent().id()));
+    }
+
+    public synchronized void renamed(Long id, String name) {
+        Row row = rows.get(id);
+        if (row != null)
+            replace(new Row(id, name, row.bgColor(), row.kind(), row.parentId()));
+    }
+
+    public synchronized void recoloured(Long id, String bgColor) {
+        Row row = rows.get(id);
+        if (row != null)
+            replace(new Row(id, row.name(), bgColor, row.kind(), row.parentId()));
+    }
+
+    public synchronized void removed(Long id) {
+        rows.remove(id);
+        categories.remove(id);
+    }
+
+    /**
+     * Forgets everything, e.g. after switching to another database. The table is read again when next needed.
+     */
+    public synchronized void clear() {
+        rows.clear();
+        categories.clear();
+        loaded = false;
+    }
+
+    private void load(Connection connection) throws SQLException {
+        String query = "select id, name, kind, bgColor, parentId from category";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                Long id = resultSet.getLong(1);
+                Long parentId = resultSet.getLong(5);
+                if (resultSet.wasNull())
+                    parentId = null;
+                rows.put(id, new Row(id, resultSet.getString(2), resultSet.getString(4),
+                        Kind.valueOf(resultSet.getString(3)), parentId));
+            }
+        }
+        loaded = true;
+    }
+
+    private Category build(Long id) {
+        Category category = categories.get(id);
+        if (category != null)
+            return category;
+        Row row = rows.get(id);
+        if (row == null)
+            return null;
+        Category parent = row.parentId() == null ? null : build(row.parentId());
+        category = new Category(row.id(), row.name(), row.bgColor(), row.kind(), parent);
+        categories.put(id, category);
+        return category;
+    }
+
+    private void replace(Row row) {
+        rows.put(row.id(), row);
+        // Drop the category and everything below it; they get rebuilt on demand with the new parent records.
+        categories.values().removeIf(category -> descendsFrom(category, row.id()));
+    }
+
+    private static boolean descendsFrom(Category category, Long id) {
+        for (Category c = category; c != null; c = c.parent()) {
+            if (c.id().equals(id))
+                return true;
+        }
+        return false;
+    }
+
+    private record Row(Long id, String name, String bgColor, Kind kind, Long parentId) {
+    }
+}
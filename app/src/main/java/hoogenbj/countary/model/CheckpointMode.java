@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2023. Johan Hoogenboezem
+ * Copyright (c) 2025. Johan Hoogenboezem
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -13,25 +13,23 @@
  *    See the License for the specific language governing permissions and
  *    limitations under the License.
  */
+package hoogenbj.countary.model;
 
-package hoogenbj.countary.util.ofx;
-
-public class SimpleTag extends Tag {
-    private String content;
-    private Tag parent;
+/**
+ * When the write-ahead log gets copied back into the database file. Only relevant in
+ * {@link JournalMode#WriteAheadLog} mode.
+ */
+public enum CheckpointMode {
+    Automatic("Automatic"),
+    OnIdle("When idle");
 
-    public SimpleTag(Tag parent, String name, String content) {
-        super(name);
-        this.content = content;
-        this.parent = parent;
-    }
+    private final String description;
 
-    public String getContent() {
-        return content;
+    CheckpointMode(String description) {
+        this.description = description;
     }
 
-    @Override
-    public Tag processLine(String line) {
-        return parent;
+    public String description() {
+        return description;
     }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2023. Johan Hoogenboezem
+ * Copyright (c) 2025. Johan Hoogenboezem
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -13,19 +13,12 @@
  *    See the License for the specific language governing permissions and
  *    limitations under the License.
  */
+package hoogenbj.countary.model;
 
-package hoogenbj.countary.util.ofx;
-
-public abstract class Tag {
-    private String name;
-
-    public Tag(String name) {
-        this.name = name;
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public abstract Tag processLine(String line);
+/**
+ * @param budget        - The new budget
+ * @param items         - Number of budget items copied into it
+ * @param elapsedMillis - How long the clone took, including any balance transfer
+ */
+public record ClonedBudget(Budget budget, int items, long elapsedMillis) {
 }
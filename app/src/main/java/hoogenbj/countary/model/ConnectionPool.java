@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import com.google.inject.Inject;
+import hoogenbj.countary.app.Settings;
+import org.sqlite.SQLiteConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small pool of SQLite connections: one writer and a handful of readers. Connections stay open between calls, so
+ * the database file is opened and the pragmas are applied once per connection instead of once per query.
+ * <p>
+ * A thread never holds more than one physical connection. Asking for a reader while already holding one (or while
+ * holding the writer) returns the connection the thread already has. That keeps the nested lookups in
+ * {@link DatabaseDataModel} from exhausting the pool, and means that reads done while writing see the writes.
+ * <p>
+ * In {@link JournalMode#WriteAheadLog} mode every reader works inside its own read transaction for as long as it is
+ * checked out, so all the queries behind one model call see the same snapshot, and readers are never blocked by a
+ * long import or allocation running on the writer. With {@link CheckpointMode#OnIdle} automatic checkpoints are
+ * switched off and a background thread checkpoints the log once the pool has been idle for a while.
+ * <p>
+ * Each connection keeps its own {@link StatementCache}, so the fixed queries in {@link DatabaseDataModel} are only
+ * prepared the first time a connection runs them.
+ * <p>
+ * Actions registered with {@link #afterCommit(Runnable)} are kept with the writer until it is handed back, and are
+ * then run on the writing thread, after the writer has been released, for the work that was committed. An action
+ * that fails is logged and does not stop the others; the work is committed by then, so nobody should hear that it
+ * failed.
+ */
+public class ConnectionPool implements ConnectionProvider {
+
+    private static final System.Logger LOG = System.getLogger(ConnectionPool.class.getName());
+
+    public static final int DEFAULT_READERS = 4;
+    public static final long DEFAULT_CHECKPOINT_IDLE_MILLIS = 2000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    @Inject
+    private Settings settings;
+
+    private final Semaphore readerPermits;
+    private final long checkpointIdleMillis;
+    private final int statementCacheSize;
+    private final Deque<Connection> idleReaders = new ArrayDeque<>();
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final ThreadLocal<Lease> readLease = new ThreadLocal<>();
+    private final ThreadLocal<Lease> writeLease = new ThreadLocal<>();
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder openNanos = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+    private final StatementCache.Listener statementListener = new StatementCache.Listener() {
+        @Override
+        public void hit(String sql) {
+            statementHits.increment();
+        }
+
+        @Override
+        public void miss(String sql) {
+            statementMisses.increment();
+        }
+
+        @Override
+        public void evicted(String sql) {
+            statementEvictions.increment();
+        }
+    };
+
+    // guarded by this
+    private Configuration configuration;
+    private int generation;
+    private ScheduledExecutorService checkpointer;
+    private ScheduledFuture<?> checkpointTask;
+    // guarded by writerLock
+    private Connection writer;
+    private int writerGeneration;
+
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean walDirty;
+
+    public ConnectionPool() {
+        this(DEFAULT_READERS, DEFAULT_CHECKPOINT_IDLE_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    ConnectionPool(int maxReaders, long checkpointIdleMillis, int statementCacheSize) {
+        readerPermits = new Semaphore(maxReaders, true);
+        this.checkpointIdleMillis = checkpointIdleMillis;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    ConnectionPool(Settings settings, int maxReaders, long checkpointIdleMillis, int statementCacheSize) {
+        this(maxReaders, checkpointIdleMillis, statementCacheSize);
+        this.settings = settings;
+    }
+
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        Lease lease = writeLease.get();
+        if (lease == null)
+            lease = readLease.get();
+        if (lease != null)
+            return rejoin(lease);
+        Checkout checkout = checkout();
+        long start = System.nanoTime();
+        try {
+            readerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+        try {
+            Connection physical = validOrNull(checkout.idle());
+            if (physical == null)
+                physical = open(checkout.configuration());
+            else
+                hits.increment();
+            if (checkout.configuration().journalMode() == JournalMode.WriteAheadLog)
+                physical.setAutoCommit(false);
+            lease = new Lease(physical, checkout.generation(), false);
+            readLease.set(lease);
+            return lease.newHandle(false);
+        } catch (SQLException | RuntimeException e) {
+            readerPermits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getWriteConnection() throws SQLException {
+        Lease lease = writeLease.get();
+        if (lease != null)
+            return rejoin(lease);
+        Checkout checkout = checkoutWriter();
+        long start = System.nanoTime();
+        try {
+            writerLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database writer", e);
+        }
+        waitNanos.add(System.nanoTime() - start);
+        try {
+            if (writer != null && writerGeneration != checkout.generation()) {
+                closeQuietly(writer);
+                writer = null;
+            }
+            writer = validOrNull(writer);
+            if (writer == null) {
+                writer = open(checkout.configuration());
+                writerGeneration = checkout.generation();
+            } else {
+                hits.increment();
+            }
+            walDirty = true;
+            lease = new Lease(writer, writerGeneration, true);
+            writeLease.set(lease);
+            return lease.newHandle(false);
+        } catch (SQLException | RuntimeException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    @Override
+    public void afterCommit(Runnable action) {
+        Lease lease = writeLease.get();
+        if (lease == null)
+            action.run();
+        else
+            lease.afterCommit(action);
+    }
+
+    @Override
+    public synchronized void reset() {
+        generation++;
+        idleReaders.forEach(this::closeQuietly);
+        idleReaders.clear();
+        if (writerLock.tryLock()) {
+            try {
+                if (writer != null && writeLease.get() == null) {
+                    closeQuietly(writer);
+                    writer = null;
+                }
+            } finally {
+                writerLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public ConnectionStatistics getStatistics() {
+        return new ConnectionStatistics(checkouts.sum(), hits.sum(), misses.sum(), validationFailures.sum(),
+                waitNanos.sum(), openNanos.sum(), checkpoints.sum(), statementHits.sum(), statementMisses.sum(),
+                statementEvictions.sum());
+    }
+
+    /**
+     * Copies the write-ahead log back into the database file without waiting for readers or the writer. Does
+     * nothing if the writer is busy or the database is not in write-ahead log mode.
+     *
+     * @return true if the whole log was checkpointed
+     */
+    public boolean checkpoint() {
+        if (!writerLock.tryLock())
+            return false;
+        try {
+            synchronized (this) {
+                if (writer == null || writerGeneration != generation
+                        || configuration.journalMode() != JournalMode.WriteAheadLog)
+                    return false;
+            }
+            try (Statement statement = writer.createStatement();
+                 ResultSet rs = statement.executeQuery("pragma wal_checkpoint(PASSIVE)")) {
+                checkpoints.increment();
+                // columns are: busy, pages in the log, pages checkpointed
+                boolean complete = rs.next() && rs.getInt(1) == 0 && rs.getInt(2) == rs.getInt(3);
+                if (complete)
+                    walDirty = false;
+                return complete;
+            }
+        } catch (SQLException e) {
+            return false;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void checkpointWhenIdle() {
+        if (walDirty && System.nanoTime() - lastActivity >= TimeUnit.MILLISECONDS.toNanos(checkpointIdleMillis)
+                && writeLease.get() == null)
+            checkpoint();
+    }
+
+    private Connection rejoin(Lease lease) {
+        checkouts.increment();
+        hits.increment();
+        lease.holds++;
+        return lease.newHandle(true);
+    }
+
+    private synchronized Checkout checkout() {
+        checkouts.increment();
+        lastActivity = System.nanoTime();
+        switchDatabaseIfChanged();
+        return new Checkout(configuration, generation, idleReaders.pollFirst());
+    }
+
+    private synchronized Checkout checkoutWriter() {
+        checkouts.increment();
+        lastActivity = System.nanoTime();
+        switchDatabaseIfChanged();
+        return new Checkout(configuration, generation, null);
+    }
+
+    private void switchDatabaseIfChanged() {
+        Configuration current = new Configuration(settings.getDatabaseUrl(), settings.getJournalMode(),
+                settings.getCheckpointMode());
+        if (!current.equals(configuration)) {
+            if (configuration != null)
+                reset();
+            configuration = current;
+            scheduleCheckpoints();
+        }
+    }
+
+    private void scheduleCheckpoints() {
+        if (checkpointTask != null) {
+            checkpointTask.cancel(false);
+            checkpointTask = null;
+        }
+        if (configuration.journalMode() == JournalMode.WriteAheadLog
+                && configuration.checkpointMode() == CheckpointMode.OnIdle) {
+            if (checkpointer == null) {
+                checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "countary-checkpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            long period = Math.max(checkpointIdleMillis / 2, 1);
+            checkpointTask = checkpointer.scheduleWithFixedDelay(this::checkpointWhenIdle, period, period,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Connection validOrNull(Connection connection) {
+        if (connection == null)
+            return null;
+        try {
+            if (connection.isValid(VALIDATION_TIMEOUT_SECONDS))
+                return connection;
+        } catch (SQLException e) {
+            // fall through and replace it
+        }
+        validationFailures.increment();
+        closeQuietly(connection);
+        return null;
+    }
+
+    private Connection open(Configuration configuration) throws SQLException {
+        long start = System.nanoTime();
+        SQLiteConfig config = new SQLiteConfig();
+        config.enforceForeignKeys(true);
+        config.setJournalMode(configuration.journalMode().pragma());
+        Connection connection = DriverManager.getConnection(configuration.url(), config.toProperties());
+        if (configuration.journalMode() == JournalMode.WriteAheadLog
+                && configuration.checkpointMode() == CheckpointMode.OnIdle) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("pragma wal_autocheckpoint = 0");
+            }
+        }
+        openNanos.add(System.nanoTime() - start);
+        misses.increment();
+        return connection;
+    }
+
+    private void release(Lease lease) {
+        if (--lease.holds > 0)
+            return;
+        lastActivity = System.nanoTime();
+        boolean reusable = restoreAutoCommit(lease);
+        if (lease.writer) {
+            writeLease.remove();
+            try {
+                synchronized (this) {
+                    reusable &= lease.generation == generation;
+                }
+                if (!reusable) {
+                    closeQuietly(writer);
+                    writer = null;
+                }
+            } finally {
+                writerLock.unlock();
+            }
+            lease.committed.forEach(ConnectionPool::runCommitted);
+        } else {
+            readLease.remove();
+            synchronized (this) {
+                if (reusable && lease.generation == generation)
+                    idleReaders.push(lease.physical);
+                else
+                    closeQuietly(lease.physical);
+            }
+            readerPermits.release();
+        }
+    }
+
+    private static void runCommitted(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.ERROR, "Action after commit failed", e);
+        }
+    }
+
+    private boolean restoreAutoCommit(Lease lease) {
+        Connection connection = lease.physical;
+        try {
+            if (connection.isClosed()) {
+                lease.rolledBack();
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                // Work that was not committed explicitly is discarded, just as closing the connection used to do.
+                lease.rolledBack();
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            lease.committed();
+            return true;
+        } catch (SQLException e) {
+            lease.rolledBack();
+            closeQuietly(connection);
+            return false;
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        StatementCache statements = statementCaches.remove(connection);
+        if (statements != null)
+            statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // nothing more we can do with it
+        }
+    }
+
+    private record Configuration(String url, JournalMode journalMode, CheckpointMode checkpointMode) {
+    }
+
+    private record Checkout(Configuration configuration, int generation, Connection idle) {
+    }
+
+    private class Lease {
+        private final Connection physical;
+        private final int generation;
+        private final boolean writer;
+        private int holds = 1;
+        // actions for work that is still in the transaction, and for work that has been committed
+        private final List<Runnable> uncommitted = new ArrayList<>();
+        private final List<Runnable> committed = new ArrayList<>();
+
+        private Lease(Connection physical, int generation, boolean writer) {
+            this.physical = physical;
+            this.generation = generation;
+            this.writer = writer;
+        }
+
+        private PreparedStatement prepare(Connection handle, String sql, int autoGeneratedKeys)
+                throws SQLException {
+            return statementCaches.computeIfAbsent(physical,
+                            connection -> new StatementCache(connection, statementCacheSize, statementListener))
+                    .prepare(handle, sql, autoGeneratedKeys);
+        }
+
+        private void afterCommit(Runnable action) {
+            boolean autoCommit;
+            try {
+                autoCommit = physical.getAutoCommit();
+            } catch (SQLException e) {
+                autoCommit = false;
+            }
+            (autoCommit ? committed : uncommitted).add(action);
+        }
+
+        private void committed() {
+            committed.addAll(uncommitted);
+            uncommitted.clear();
+        }
+
+        private void rolledBack() {
+            uncommitted.clear();
+        }
+
+        private Connection newHandle(boolean nested) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this, nested));
+        }
+    }
+
+    /**
+     * What callers get instead of the physical connection. A nested handle joins the transaction of the outermost
+     * one, so it may not commit, roll back or change the auto-commit mode.
+     */
+    private class Handle implements InvocationHandler {
+        private final Lease lease;
+        private final boolean nested;
+        private boolean closed;
+
+        private Handle(Lease lease, boolean nested) {
+            this.lease = lease;
+            this.nested = nested;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        release(lease);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || lease.physical.isClosed();
+                }
+                case "setAutoCommit", "commit", "rollback" -> {
+                    if (nested)
+                        return null;
+                    if (closed)
+                        throw new SQLException("Connection has been returned to the pool");
+                    boolean autoCommit = lease.physical.getAutoCommit();
+                    Object result = invokePhysical(method, args);
+                    if (method.getName().equals("rollback"))
+                        lease.rolledBack();
+                    else if (!autoCommit && lease.physical.getAutoCommit() || method.getName().equals("commit"))
+                        lease.committed();
+                    return result;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + lease.physical;
+                }
+            }
+            if (closed)
+                throw new SQLException("Connection has been returned to the pool");
+            if (method.getName().equals("prepareStatement") && args.length <= 2
+                    && (args.length == 1 || args[1] instanceof Integer))
+                return lease.prepare((Connection) proxy, (String) args[0],
+                        args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1]);
+            return invokePhysical(method, args);
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(lease.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
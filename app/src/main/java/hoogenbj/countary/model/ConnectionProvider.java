@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out connections to the current database. Closing a connection obtained from here returns it to the provider
+ * instead of closing the underlying SQLite connection.
+ */
+public interface ConnectionProvider {
+
+    Connection getReadConnection() throws SQLException;
+
+    /**
+     * There is only one writer. A thread that already holds it gets the same connection back and joins the
+     * transaction that is in progress.
+     */
+    Connection getWriteConnection() throws SQLException;
+
+    /**
+     * Runs the action once the work the calling thread is doing with the writer has been committed, or right away if
+     * the thread is not holding the writer. The action is dropped if the work is rolled back instead.
+     */
+    void afterCommit(Runnable action);
+
+    /**
+     * Closes all idle connections. Connections still in use are closed when they are handed back.
+     */
+    void reset();
+
+    ConnectionStatistics getStatistics();
+}
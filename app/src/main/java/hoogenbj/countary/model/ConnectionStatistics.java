@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+/**
+ * @param checkouts          - Number of times a connection was handed out
+ * @param hits               - Checkouts served by an already open connection
+ * @param misses             - Checkouts that had to open a new connection
+ * @param validationFailures - Idle connections that were found to be unusable on checkout
+ * @param waitNanos          - Total time spent waiting for a connection to become available
+ * @param openNanos          - Total time spent opening new connections
+ * @param checkpoints        - Number of write-ahead log checkpoints run by the pool
+ * @param statementHits      - Prepared statements served from a connection's statement cache
+ * @param statementMisses    - Prepared statements that had to be compiled
+ * @param statementEvictions - Cached statements closed to make room for others
+ */
+public record ConnectionStatistics(long checkouts, long hits, long misses, long validationFailures,
+                                   long waitNanos, long openNanos, long checkpoints,
+                                   long statementHits, long statementMisses, long statementEvictions) {
+
+    public double hitRate() {
+        return checkouts == 0 ? 0 : (double) hits / checkouts;
+    }
+
+    public double statementHitRate() {
+        long lookups = statementHits + statementMisses;
+        return lookups == 0 ? 0 : (double) statementHits / lookups;
+    }
+
+    public double averageWaitMicros() {
+        return checkouts == 0 ? 0 : waitNanos / 1000.0 / checkouts;
+    }
+
+    public double averageOpenMicros() {
+        return misses == 0 ? 0 : openNanos / 1000.0 / misses;
+    }
+
+    /**
+     * Rough estimate of the time not spent opening connections thanks to reuse.
+     */
+    public double savedMillis() {
+        return hits * averageOpenMicros() / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("checkouts=%d, hits=%d, misses=%d, hitRate=%.1f%%, validationFailures=%d, " +
+                        "avgWait=%.1fus, avgOpen=%.1fus, saved=%.1fms, checkpoints=%d, statementHits=%d, " +
+                        "statementMisses=%d, statementHitRate=%.1f%%, statementEvictions=%d",
+                checkouts, hits, misses, hitRate() * 100, validationFailures, averageWaitMicros(),
+                averageOpenMicros(), savedMillis(), checkpoints, statementHits, statementMisses,
+                statementHitRate() * 100, statementEvictions);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * What a committed write did to the transactions and allocations, as far as the totals kept in memory (e.g. by the
+ * {@link SummaryModel}) are concerned. Listeners added with {@link DataModel#addChangeListener} hear about a change
+ * only once it has been committed, on the thread that made it.
+ */
+public sealed interface DataChange {
+
+    record TransactionCreated(Transaction transaction) implements DataChange {
+    }
+
+    /**
+     * Transactions saved in bulk, e.g. from a statement, which are not listed one by one.
+     *
+     * @param debits  - The sum of the debits of the new transactions that are not allocated
+     * @param credits - The sum of the credits of the new transactions that are not allocated
+     */
+    record TransactionsInserted(Account account, BigDecimal debits, BigDecimal credits) implements DataChange {
+    }
+
+    record TransactionDeleted(Transaction transaction) implements DataChange {
+    }
+
+    /**
+     * @param transactions - The transactions as they were before being marked as allocated
+     */
+    record TransactionsAllocated(List<Transaction> transactions) implements DataChange {
+    }
+
+    record AllocationCreated(Allocation allocation) implements DataChange {
+    }
+
+    /**
+     * @param unallocated - True if the transaction of the allocation was marked as allocated before, and no longer is
+     */
+    record AllocationDeleted(Allocation allocation, boolean unallocated) implements DataChange {
+    }
+
+    /**
+     * Anything else, e.g. a restore or a script, after which nothing kept in memory can be trusted.
+     */
+    record Reset() implements DataChange {
+    }
+}
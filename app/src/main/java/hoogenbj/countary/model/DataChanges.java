@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The listeners to {@link DataChange}s. There is one for the application, shared by every {@link DatabaseDataModel},
+ * so that a listener hears of a change whichever model made it, e.g. one of the {@link AsyncDataModel}.
+ */
+public class DataChanges {
+
+    private static final System.Logger LOG = System.getLogger(DataChanges.class.getName());
+
+    private final List<Consumer<DataChange>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Consumer<DataChange> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<DataChange> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells every listener, in the order they were added. One that fails does not keep the change from the others.
+     */
+    public void fire(DataChange change) {
+        for (Consumer<DataChange> listener : listeners) {
+            try {
+                listener.accept(change);
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.ERROR, "Change listener failed on " + change.getClass().getSimpleName(),
+                        e);
+            }
+        }
+    }
+}
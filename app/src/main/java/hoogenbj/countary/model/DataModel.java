@@ -22,27 +22,23 @@ import hoogenbj.countary.util.ParsedStatement;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 public interface DataModel {
 
     void clearCache();
 
-    Map<Long, BigDecimal> getPlannedByBudgetAndTags(Budget budget) throws SQLException;
-
-    Map<Long, BigDecimal> getActualByBudgetAndTags(Budget budget) throws SQLException;
-
     BigDecimal getActualByBudgetAndTag(Budget budget, Tag tag) throws SQLException;
 
     BigDecimal getActualForBudget(Budget budget) throws SQLException;
 
     BigDecimal getPlannedByBudgetAndTag(Budget budget, Tag tag) throws SQLException;
 
-    Map<Long, Integer> getQuantifiedTagOrder() throws SQLException;
+    List<BudgetItemTag> getBudgetItemTags(Budget budget) throws SQLException;
 
     boolean tableExists(String tableName) throws SQLException;
 
@@ -52,9 +48,18 @@ public interface DataModel {
 
     List<Transaction> getTransactions(Account account, boolean showCompletedAlso) throws SQLException;
 
+    List<Transaction> getUnallocatedTransactions(Account account) throws SQLException;
+
+    boolean isUnallocated(Connection connection, Transaction transaction) throws SQLException;
+
+    TransactionPage getTransactionPage(Account account, boolean showCompletedAlso, TransactionPage.Cursor from,
+                                       boolean older, int pageSize) throws SQLException;
+
     Account createAccount(Account account) throws SQLException;
 
-    List<Integer> getTransactionHashesMatchingHashCodes(List<Integer> hashes) throws SQLException;
+    Set<Long> getExistingFingerprints(Account account, List<Long> fingerprints) throws SQLException;
+
+    void fingerprintTransactions() throws SQLException;
 
     void saveTransactions(Account account, List<ParsedStatement.Line> lines) throws SQLException;
 
@@ -74,9 +79,26 @@ public interface DataModel {
 
     Map<Account, BigDecimal> calculateBalances(Budget budget) throws SQLException;
 
+    Summary getSummary() throws SQLException;
+
+    List<AccountSummary> getAccountSummaries() throws SQLException;
+
+    /**
+     * @return The actual of every budget that has ever had allocations, by budget id
+     */
+    Map<Long, BigDecimal> getBudgetActuals() throws SQLException;
+
+    /**
+     * The listener hears about every change to transactions and allocations once it has been committed, by this model
+     * or any other.
+     */
+    void addChangeListener(Consumer<DataChange> listener);
+
+    void removeChangeListener(Consumer<DataChange> listener);
+
     Budget createBudget(Budget budget) throws SQLException;
 
-    Budget cloneBudget(Budget budget, String newName, Boolean copyActualToPlanned, Boolean transferBalance, BudgetItem budgetItem) throws SQLException;
+    ClonedBudget cloneBudget(Budget budget, String newName, Boolean copyActualToPlanned, Boolean transferBalance, BudgetItem budgetItem) throws SQLException;
 
     void transferToBudget(Budget from, Budget to, BudgetItem fromBudgetItem, BudgetItem toBudgetItem, Map<Account, BigDecimal> amounts) throws SQLException;
 
@@ -95,14 +117,18 @@ public interface DataModel {
     Allocation createAllocation(Connection connection, Transaction transaction, BudgetItem budgetItem,
                                 BigDecimal amount, String note) throws SQLException;
 
+    List<AllocationRule> getAllocationRules() throws SQLException;
+
+    AllocationRule createAllocationRule(String pattern, Item item) throws SQLException;
+
+    void deleteAllocationRule(AllocationRule rule) throws SQLException;
+
     Set<Long> searchTags(String what, String criteria) throws SQLException;
 
     Set<Tag> getTagsForItem(Item item) throws SQLException;
 
     Set<ItemTag> getItemTags(Item item) throws SQLException;
 
-    Collection<Set<Tag>> getItemTagsForBudget(Budget budget) throws SQLException;
-
     void deleteItemTag(ItemTag itemTag) throws SQLException;
 
     ItemTag createItemTag(Item item, Tag tag) throws SQLException;
@@ -179,7 +205,8 @@ public interface DataModel {
 
     BudgetItem getBudgetItem(Long id) throws SQLException;
 
-    List<Transaction> searchTransactions(Account account, boolean showCompleted, String what, String currentCriteria) throws SQLException;
+    TransactionPage queryTransactionPage(Account account, boolean showCompleted, TransactionQuery query,
+                                         TransactionPage.Cursor from, boolean older, int pageSize) throws SQLException;
 
     void backup(String filePath) throws SQLException;
 
@@ -17,46 +17,86 @@ package hoogenbj.countary.model;
 
 import com.google.inject.Inject;
 import hoogenbj.countary.app.KeyValue;
-import hoogenbj.countary.app.Settings;
 import hoogenbj.countary.app.UserInterface;
 import hoogenbj.countary.util.ParsedStatement;
+import hoogenbj.countary.util.TransactionFingerprint;
 
 import static org.sqlite.SQLiteErrorCode.*;
 
-import org.sqlite.SQLiteConfig;
-
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.Date;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static hoogenbj.countary.util.DbUtils.MAX_TRANSACTION_ROWS;
 
 public class DatabaseDataModel implements DataModel {
 
+    private static final int FINGERPRINT_CHUNK = 500;
+    private static final double HALF_A_CENT = 0.005;
+
     @Inject
-    private Settings settings;
+    private ConnectionProvider connectionProvider;
 
-    private static final Map<Long, Category> categoryCache = new HashMap<>();
+    @Inject
+    private CategoryTree categoryTree;
 
-    private final Properties connectionProperties;
+    @Inject
+    private FingerprintFilters fingerprintFilters;
+
+    @Inject
+    private DataChanges dataChanges;
 
     public DatabaseDataModel() {
-        SQLiteConfig config = new SQLiteConfig();
-        config.enforceForeignKeys(true);
-        connectionProperties = config.toProperties();
+    }
+
+    DatabaseDataModel(ConnectionProvider connectionProvider) {
+        this(connectionProvider, new DataChanges());
+    }
+
+    DatabaseDataModel(ConnectionProvider connectionProvider, DataChanges dataChanges) {
+        this.connectionProvider = connectionProvider;
+        this.categoryTree = new CategoryTree();
+        this.fingerprintFilters = new FingerprintFilters();
+        this.dataChanges = dataChanges;
     }
 
     @Override
     public void clearCache() {
-        categoryCache.clear();
+        categoryTree.clear();
+        fingerprintFilters.clear();
+        changed(new DataChange.Reset());
+    }
+
+    @Override
+    public void addChangeListener(Consumer<DataChange> listener) {
+        dataChanges.addListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Consumer<DataChange> listener) {
+        dataChanges.removeListener(listener);
+    }
+
+    /**
+     * Must be called before the write connection is closed, so that nobody hears of work that is rolled back.
+     */
+    private void changed(DataChange change) {
+        connectionProvider.afterCommit(() -> {
+            // before anyone who hears of the change can import again
+            fingerprintFilters.accept(change);
+            dataChanges.fire(change);
+        });
     }
 
     @Override
     public void backup(String filePath) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              Statement statement = connection.createStatement()) {
             statement.executeUpdate(String.format("backup to %s", filePath));
         }
@@ -64,36 +104,54 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public void executeStatements(List<String> statements) throws SQLException {
-        executeStatements(statements, connectionProperties);
+        executeStatements(statements, true);
     }
 
     @Override
     public void executeStatements(List<String> statements, boolean enforceForeignKeys) throws SQLException {
-        SQLiteConfig config = new SQLiteConfig();
-        config.enforceForeignKeys(enforceForeignKeys);
-        executeStatements(statements, config.toProperties());
+        try (Connection connection = connectionProvider.getWriteConnection()) {
+            // foreign_keys can only be changed outside a transaction
+            if (!enforceForeignKeys)
+                setForeignKeys(connection, false);
+            try {
+                connection.setAutoCommit(false);
+                executeStatements(connection, statements);
+                changed(new DataChange.Reset());
+                connection.setAutoCommit(true);
+            } catch (SQLException | RuntimeException e) {
+                if (!connection.getAutoCommit())
+                    connection.rollback();
+                throw e;
+            } finally {
+                if (!enforceForeignKeys) {
+                    connection.setAutoCommit(true);
+                    setForeignKeys(connection, true);
+                }
+            }
+        }
     }
 
-    private void executeStatements(List<String> statements, Properties connectionProperties) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
-            connection.setAutoCommit(false);
-            executeStatements(connection, statements);
-            connection.setAutoCommit(true);
+    private void setForeignKeys(Connection connection, boolean on) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(String.format("pragma foreign_keys = %s", on ? "on" : "off"));
         }
     }
 
     @Override
     public void createDemoDatabase(List<String> meta, List<String> data) throws SQLException {
         // This creates the metadata and the data
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getWriteConnection()) {
             connection.setAutoCommit(false);
             executeStatements(connection, meta);
             executeStatements(connection, data);
+            changed(new DataChange.Reset());
             connection.setAutoCommit(true);
         }
     }
 
     private void executeStatements(Connection connection, List<String> statements) throws SQLException {
+        // Arbitrary statements may change categories behind the tree's back
+        categoryTree.clear();
         try (Statement statement = connection.createStatement()) {
             statements.forEach(s -> {
                 try {
@@ -107,49 +165,15 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public void restore(String filePath) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              Statement statement = connection.createStatement()) {
             statement.executeUpdate(String.format("restore from %s", filePath));
         }
-    }
-
-    @Override
-    public Map<Long, BigDecimal> getPlannedByBudgetAndTags(Budget budget) throws SQLException {
-        String query = "select t.id,sum(planned) from budget_item bf " +
-                "join item_tag ft on bf.itemId=ft.itemId " +
-                "join tag t on t.id=ft.tagId " +
-                "where budgetId=? group by t.id";
-        Map<Long, BigDecimal> planned = new HashMap<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, budget.id());
-            try (ResultSet rs = statement.executeQuery()) {
-                while (rs.next()) {
-                    planned.put(rs.getLong(1), rs.getBigDecimal(2));
-                }
-            }
-        }
-        return planned;
-    }
-
-    @Override
-    public Map<Long, BigDecimal> getActualByBudgetAndTags(Budget budget) throws SQLException {
-        String query = "select t.id,sum(a.amount) from budget_item bf " +
-                "join item_tag ft on bf.itemId=ft.itemId " +
-                "join tag t on t.id=ft.tagId " +
-                "join allocation a on a.budgetItemId=bf.id " +
-                "where budgetId=? group by t.id";
-        Map<Long, BigDecimal> actual = new HashMap<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, budget.id());
-            try (ResultSet rs = statement.executeQuery()) {
-                while (rs.next()) {
-                    actual.put(rs.getLong(1), rs.getBigDecimal(2));
-                }
-            }
-        }
-        return actual;
+        // Connections opened before the restore may still hold the old schema
+        connectionProvider.reset();
+        categoryTree.clear();
+        fingerprintFilters.clear();
+        changed(new DataChange.Reset());
     }
 
     @Override
@@ -164,8 +188,8 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public BigDecimal getActualForBudget(Budget budget) throws SQLException {
-        String query = "select coalesce(sum(a.amount),0) from budget_item bf join allocation a on a.budgetItemId=bf.id where budgetId=?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        String query = "select actual from budget_actual where budgetId=?";
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             try (ResultSet rs = statement.executeQuery()) {
@@ -182,6 +206,32 @@ public class DatabaseDataModel implements DataModel {
         }
     }
 
+    /**
+     * Everything a budget's tag profile needs in one query: a row per tag of every item in the budget.
+     */
+    @Override
+    public List<BudgetItemTag> getBudgetItemTags(Budget budget) throws SQLException {
+        String query = "select bi.itemId, t.id, t.name, bi.planned, coalesce(bia.actual, 0), f.frequency " +
+                "from budget_item bi " +
+                "join item_tag it on it.itemId = bi.itemId " +
+                "join tag t on t.id = it.tagId " +
+                "join (select tagId, count(*) as frequency from item_tag group by tagId) f on f.tagId = t.id " +
+                "left join budget_item_actual bia on bia.budgetItemId = bi.id " +
+                "where bi.budgetId = ?";
+        List<BudgetItemTag> list = new ArrayList<>();
+        try (Connection connection = connectionProvider.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, budget.id());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    list.add(new BudgetItemTag(rs.getLong(1), new Tag(rs.getLong(2), rs.getString(3)),
+                            rs.getBigDecimal(4), rs.getBigDecimal(5), rs.getInt(6)));
+                }
+            }
+        }
+        return list;
+    }
+
     @Override
     public BigDecimal getPlannedByBudgetAndTag(Budget budget, Tag tag) throws SQLException {
         String query = "select sum(bf.planned) from budget_item bf " +
@@ -191,7 +241,7 @@ public class DatabaseDataModel implements DataModel {
     }
 
     private BigDecimal getSumByBudgetAndTag(Budget budget, Tag tag, String query) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             statement.setLong(2, tag.id());
@@ -205,25 +255,10 @@ public class DatabaseDataModel implements DataModel {
         }
     }
 
-    @Override
-    public Map<Long, Integer> getQuantifiedTagOrder() throws SQLException {
-        String query = "select tagId, count(tagId) as ct from item_tag group by tagId order by ct desc";
-        Map<Long, Integer> quantifiedTags = new HashMap<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             Statement statement = connection.createStatement()) {
-            try (ResultSet rs = statement.executeQuery(query)) {
-                while (rs.next()) {
-                    quantifiedTags.put(rs.getLong(1), rs.getInt(2));
-                }
-            }
-        }
-        return quantifiedTags;
-    }
-
     @Override
     public int getDbVersion() throws SQLException {
         String query = "select version from db_version where id = 1";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             try (ResultSet rs = statement.executeQuery()) {
                 if (rs.next()) {
@@ -236,13 +271,14 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public boolean tableExists(String tableName) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getReadConnection()) {
             DatabaseMetaData md = connection.getMetaData();
-            ResultSet rs = md.getTables(null, null, tableName, null);
-            int count = 0;
-            while (rs.next())
-                count++;
-            return count > 0;
+            try (ResultSet rs = md.getTables(null, null, tableName, null)) {
+                int count = 0;
+                while (rs.next())
+                    count++;
+                return count > 0;
+            }
         }
     }
 
@@ -255,9 +291,7 @@ public class DatabaseDataModel implements DataModel {
     public List<Account> getAccounts() throws SQLException {
         List<Account> list = new ArrayList<>();
         String query = "select id, name, number, branchCode, bank, tagColor from account";
-        SQLiteConfig config = new SQLiteConfig();
-        config.enforceForeignKeys(true);
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              Statement statement = connection.createStatement()) {
             try (ResultSet rs = statement.executeQuery(query)) {
                 while (rs.next()) {
@@ -275,7 +309,7 @@ public class DatabaseDataModel implements DataModel {
     public Account getAccount(Long accountId) throws SQLException {
         Account account = null;
         String query = "select id, name, number, branchCode, bank, tagColor from account where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, accountId);
             try (ResultSet rs = statement.executeQuery()) {
@@ -290,25 +324,112 @@ public class DatabaseDataModel implements DataModel {
     }
 
     @Override
-    public List<Transaction> searchTransactions(Account account, boolean showCompleted, String what, String currentCriteria) throws SQLException {
+    public TransactionPage getTransactionPage(Account account, boolean showCompletedAlso, TransactionPage.Cursor from,
+                                              boolean older, int pageSize) throws SQLException {
+        return readTransactionPage(account, showCompletedAlso ? "" : "and t.allocated = false ", List.of(), from,
+                older, pageSize);
+    }
+
+    /**
+     * Amounts and dates are compared as numbers, so SQLite can use transactions_account_amount_index,
+     * transactions_account_abs_amount_index and the posting and transaction date indexes for them, and only the
+     * description is looked up in transactions_idx. Amounts are stored as reals, hence the half a cent either side.
+     */
+    @Override
+    public TransactionPage queryTransactionPage(Account account, boolean showCompleted, TransactionQuery query,
+                                                TransactionPage.Cursor from, boolean older, int pageSize)
+            throws SQLException {
+        StringBuilder filter = new StringBuilder(showCompleted ? "" : "and t.allocated = false ");
+        List<Object> parameters = new ArrayList<>();
+        String amount = query.absolute() ? "abs(t.amount)" : "t.amount";
+        if (query.minAmount() != null) {
+            filter.append(String.format("and %s >= ? ", amount));
+            parameters.add(query.minAmount().doubleValue() - HALF_A_CENT);
+        }
+        if (query.maxAmount() != null) {
+            filter.append(String.format("and %s <= ? ", amount));
+            parameters.add(query.maxAmount().doubleValue() + HALF_A_CENT);
+        }
+        if (query.from() != null || query.to() != null) {
+            long start = query.fromMillis();
+            long end = query.toMillis();
+            // a range search on each index, where an or would have SQLite scan all of the account
+            filter.append("and t.id in (select id from transactions where accountId = ? and posting_date >= ? " +
+                    "and posting_date < ? union select id from transactions where accountId = ? and txdate >= ? " +
+                    "and txdate < ?) ");
+            parameters.addAll(List.of(account.id(), start, end, account.id(), start, end));
+        }
+        String words = query.description() == null ? null : matchWords(query.description());
+        if (words != null) {
+            filter.append("and t.id in (select rowid from transactions_idx where description match ?) ");
+            parameters.add(words);
+        }
+        return readTransactionPage(account, filter.toString(), parameters, from, older, pageSize);
+    }
+
+    /**
+     * All the words, each quoted so that none of it is taken for full text query syntax. The last word, and any word
+     * that ends in a '*', may be only the start of a word.
+     *
+     * @return null if there are no words in it
+     */
+    private static String matchWords(String words) {
+        String[] tokens = words.trim().split("\\s+");
+        StringBuilder match = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            boolean prefix = i == tokens.length - 1 || tokens[i].endsWith("*");
+            String token = tokens[i].replaceAll("\\*+$", "");
+            // e.g. a lone quote, which would make an empty phrase
+            if (token.codePoints().noneMatch(Character::isLetterOrDigit))
+                continue;
+            if (!match.isEmpty())
+                match.append(' ');
+            match.append('"').append(token.replace("\"", "\"\"")).append('"');
+            if (prefix)
+                match.append('*');
+        }
+        return match.isEmpty() ? null : match.toString();
+    }
+
+    /**
+     * Reads the page of transactions just before (older) or just after (newer) the cursor, seeking on
+     * (posting_date, id) with transactions_account_posting_index instead of skipping rows with an offset.
+     * A page is always returned newest first.
+     */
+    private TransactionPage readTransactionPage(Account account, String filter, List<Object> parameters,
+                                                TransactionPage.Cursor from, boolean older, int pageSize)
+            throws SQLException {
+        // allocations is kept up to date by triggers on the allocation table
+        String subQuery = "t.allocations > 0";
+        String seek = "";
+        if (from != null)
+            seek = older ? "and (t.posting_date, t.id) < (?, ?) " : "and (t.posting_date, t.id) > (?, ?) ";
+        String order = older ? "desc" : "asc";
+        String query = String.format("select t.id, t.posting_date, t.txdate, t.amount, t.balance, t.description, " +
+                        "t.hash, t.allocated, t.manual, %s from transactions t where t.accountId = ? %s%s" +
+                        "order by t.posting_date %s, t.id %s limit ?",
+                subQuery, filter, seek, order, order);
         List<Transaction> transactionList = new ArrayList<>();
-        String subQuery = "(select count(*)>0 from allocation a where a.transactionId=t.id)";
-        String where;
-        if (showCompleted) {
-            where = String.format("where t.accountId = ? and idx.%s match %s limit %d", what, currentCriteria, MAX_TRANSACTION_ROWS);
-        } else {
-            where = String.format("where t.accountId = ? and t.allocated = false and idx.%s match %s limit %d",
-                    what, currentCriteria, MAX_TRANSACTION_ROWS);
-        }
-        String query = String.format("select t.id, t.posting_date, t.txdate, t.amount, t.balance, t.description, t.hash, " +
-                "t.allocated, t.manual, %s " +
-                "from transactions t join transactions_idx idx on idx.id = t.id %s", subQuery, where);
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, account.id());
+            int index = 1;
+            statement.setLong(index++, account.id());
+            for (Object parameter : parameters)
+                statement.setObject(index++, parameter);
+            if (from != null) {
+                statement.setLong(index++, from.postingDate());
+                statement.setLong(index++, from.id());
+            }
+            // One extra row tells whether there is another page
+            statement.setInt(index, pageSize + 1);
             buildTransactionsResult(account, transactionList, statement);
         }
-        return transactionList;
+        boolean more = transactionList.size() > pageSize;
+        if (more)
+            transactionList.remove(pageSize);
+        if (!older)
+            Collections.reverse(transactionList);
+        return new TransactionPage(transactionList, more);
     }
 
     private void buildTransactionsResult(Account account, List<Transaction> transactionList, PreparedStatement statement) throws SQLException {
@@ -334,7 +455,8 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public List<Transaction> getTransactions(Account account, boolean showCompletedAlso) throws SQLException {
         List<Transaction> transactionList = new ArrayList<>();
-        String subQuery = "(select count(*)>0 from allocation a where a.transactionId=t.id)";
+        // allocations is kept up to date by triggers on the allocation table
+        String subQuery = "t.allocations > 0";
         String query = null;
         if (showCompletedAlso)
             query = String.format("select id, posting_date, txdate, amount, balance, description, hash, allocated, manual, %s " +
@@ -342,7 +464,7 @@ public class DatabaseDataModel implements DataModel {
         else
             query = String.format("select id, posting_date, txdate, amount, balance, description, hash, allocated, manual, %s " +
                     "from transactions t where accountId = ? and allocated = false order by id limit %d", subQuery, MAX_TRANSACTION_ROWS);
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, account.id());
             buildTransactionsResult(account, transactionList, statement);
@@ -350,9 +472,40 @@ public class DatabaseDataModel implements DataModel {
         return transactionList;
     }
 
+    /**
+     * All of them, unlike {@link #getTransactions(Account, boolean)}, and only those without any allocations.
+     */
+    @Override
+    public List<Transaction> getUnallocatedTransactions(Account account) throws SQLException {
+        List<Transaction> transactionList = new ArrayList<>();
+        String query = "select id, posting_date, txdate, amount, balance, description, hash, allocated, manual, " +
+                "t.allocations > 0 from transactions t where accountId = ? and allocated = false and t.allocations = 0 " +
+                "order by id";
+        try (Connection connection = connectionProvider.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, account.id());
+            buildTransactionsResult(account, transactionList, statement);
+        }
+        return transactionList;
+    }
+
+    /**
+     * Whether the transaction is still one of {@link #getUnallocatedTransactions(Account)}, as seen by the connection.
+     */
+    @Override
+    public boolean isUnallocated(Connection connection, Transaction transaction) throws SQLException {
+        String query = "select 1 from transactions where id = ? and allocated = false and allocations = 0";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, transaction.id());
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
     private Set<Long> searchByCriteria(String withWhat, String query) throws SQLException {
         Set<Long> longs = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, withWhat);
             try (ResultSet rs = statement.executeQuery()) {
@@ -368,7 +521,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Account createAccount(Account account) throws SQLException {
         String query = "insert into account(name, number, branchCode, bank, tagColor) values (?,?,?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setString(1, account.name());
@@ -390,7 +543,7 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public Transaction createTransaction(Transaction transaction) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getWriteConnection()) {
             connection.setAutoCommit(true);
             return createTransaction(connection, transaction);
         }
@@ -415,10 +568,12 @@ public class DatabaseDataModel implements DataModel {
             statement.executeUpdate();
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
-                    return new Transaction(generatedKeys.getLong(1), transaction.account(),
+                    Transaction created = new Transaction(generatedKeys.getLong(1), transaction.account(),
                             transaction.postingDate(), transaction.txdate(), transaction.amount(), transaction.balance(),
                             transaction.description(), transaction.hash(), transaction.allocated(), transaction.manual(),
                             transaction.canDelete());
+                    changed(new DataChange.TransactionCreated(created));
+                    return created;
                 } else {
                     throw new RuntimeException("Unable to get generated key");
                 }
@@ -429,7 +584,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Category renameCategory(Category category, String name) throws SQLException {
         String query = "update category set name = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setString(1, name);
@@ -437,6 +592,7 @@ public class DatabaseDataModel implements DataModel {
             int updated = statement.executeUpdate();
             if (updated != 1)
                 throw new RuntimeException(String.format("Expected row count of 1 after updating name. Row count was %d instead.", updated));
+            connectionProvider.afterCommit(() -> categoryTree.renamed(category.id(), name));
             return new Category(category.id(), name, category.bgColor(), category.kind(), category.parent());
         }
     }
@@ -444,7 +600,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Category createCategory(String name, Kind kind, String bgColor, Category parent) throws SQLException {
         String query = "insert into category(name, kind, bgColor, parentId) values (?,?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setString(1, name);
@@ -457,7 +613,9 @@ public class DatabaseDataModel implements DataModel {
             statement.executeUpdate();
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
-                    return new Category(generatedKeys.getLong(1), name, bgColor, kind, parent);
+                    Category category = new Category(generatedKeys.getLong(1), name, bgColor, kind, parent);
+                    connectionProvider.afterCommit(() -> categoryTree.added(category));
+                    return category;
                 } else {
                     throw new RuntimeException("Unable to get generated key");
                 }
@@ -469,7 +627,7 @@ public class DatabaseDataModel implements DataModel {
     public List<Category> getCategoryRoots(Kind kind) throws SQLException {
         String query = "select id, name, bgColor from category where kind = ? and parentId is null";
         List<Category> list = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, kind.name());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -487,7 +645,7 @@ public class DatabaseDataModel implements DataModel {
     public List<Category> getCategoryChildren(Category item) throws SQLException {
         String query = "select id, name, bgColor from category where parentId=?";
         List<Category> list = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, item.id());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -504,7 +662,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Category updateCategoryBgColor(Category category, String color) throws SQLException {
         String query = "update category set bgColor = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setString(1, color);
@@ -512,6 +670,7 @@ public class DatabaseDataModel implements DataModel {
             int updated = statement.executeUpdate();
             if (updated != 1)
                 throw new RuntimeException(String.format("Expected row count of 1 after updating name. Row count was %d instead.", updated));
+            connectionProvider.afterCommit(() -> categoryTree.recoloured(category.id(), color));
             return new Category(category.id(), category.name(), color, category.kind(), category.parent());
         }
     }
@@ -519,7 +678,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Account updateAccountTagColor(Account account, String color) throws SQLException {
         String query = "update account set tagColor = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setString(1, color);
@@ -527,6 +686,8 @@ public class DatabaseDataModel implements DataModel {
             int updated = statement.executeUpdate();
             if (updated != 1)
                 throw new RuntimeException(String.format("Expected row count of 1 after updating name. Row count was %d instead.", updated));
+            // the summary shows the tag of each account
+            changed(new DataChange.Reset());
             return new Account(account.id(), account.name(), account.number(), account.branchCode(), account.bank(), color);
         }
     }
@@ -577,11 +738,12 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void deleteCategory(Category category) throws SQLException {
         if (canDeleteCategory(category)) {
-            try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+            try (Connection connection = connectionProvider.getWriteConnection()) {
                 try (PreparedStatement statement = connection.prepareStatement("delete from category where id = ?")) {
                     statement.setLong(1, category.id());
                     statement.executeUpdate();
                 }
+                connectionProvider.afterCommit(() -> categoryTree.removed(category.id()));
             }
         } else {
             throw new RuntimeException("Cannot delete category");
@@ -590,96 +752,129 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public Set<Category> getBudgetCategories(Budget budget) throws SQLException {
-        String query = "select distinct c.id, c.parentId from budget_item bi join item i on i.id = bi.itemId " +
-                "join category c on c.id = i.categoryId where bi.budgetId = ?";
+        String query = "select distinct i.categoryId from budget_item bi join item i on i.id = bi.itemId " +
+                "where bi.budgetId = ?";
         Set<Category> set = new HashSet<>();
-        Set<Category> parents = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    set.add(getCategory(connection, resultSet.getLong(1)));
-                    Long parent = resultSet.getLong(2);
-                    if (!resultSet.wasNull()) {
-                        parents.add(getCategory(connection, parent));
-                    }
+                    // The category and all its ancestors
+                    for (Category c = getCategory(connection, resultSet.getLong(1)); c != null && set.add(c); )
+                        c = c.parent();
                 }
-                do {
-                    set.addAll(parents);
-                    parents = findParentCategories(parents, connection);
-                } while (!parents.isEmpty());
             }
         }
         return set;
     }
 
-    private Set<Category> findParentCategories(Set<Category> parents, Connection connection) throws SQLException {
-        String parentIds = String.join(",", parents.stream()
-                .filter(Objects::nonNull)
-                .map(category -> String.valueOf(category.id())).toList());
-        String query = "select parentId from Category where id in (" +
-                parentIds +
-                ")";
-        Set<Category> set = new HashSet<>();
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    Long parentId = resultSet.getLong(1);
-                    if (!resultSet.wasNull())
-                        set.add(getCategory(connection, parentId));
+    @Override
+    public Set<Long> getExistingFingerprints(Account account, List<Long> fingerprints) throws SQLException {
+        Set<Long> found = new HashSet<>();
+        try (Connection connection = connectionProvider.getReadConnection()) {
+            // what the filter rules out is new; re-imports of the same period are mostly what it lets through
+            List<Long> candidates = fingerprintFilters.candidates(connection, account, fingerprints);
+            // bound parameters, a chunk at a time, so the statement stays the same and within SQLite's limits
+            for (int from = 0; from < candidates.size(); from += FINGERPRINT_CHUNK) {
+                List<Long> chunk = candidates.subList(from, Math.min(from + FINGERPRINT_CHUNK, candidates.size()));
+                String query = "select fingerprint from transactions where accountId = ? and fingerprint in (" +
+                        String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement statement = connection.prepareStatement(query)) {
+                    statement.setLong(1, account.id());
+                    for (int i = 0; i < chunk.size(); i++)
+                        statement.setLong(i + 2, chunk.get(i));
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(rs.getLong(1));
+                        }
+                    }
                 }
             }
         }
-        return set;
+        return found;
     }
 
     @Override
-    public List<Integer> getTransactionHashesMatchingHashCodes(List<Integer> hashes) throws SQLException {
-        String query = "select hash from transactions where hash in (" +
-                String.join(",", hashes.stream().map(String::valueOf).toList()) + ")";
-        List<Integer> found = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            try (ResultSet rs = statement.executeQuery()) {
+    public void fingerprintTransactions() throws SQLException {
+        String query = "select id, accountId, posting_date, txdate, amount, balance, description from transactions " +
+                "where coalesce(manual, 0) = 0 order by accountId, id";
+        String update = "update transactions set fingerprint = ? where id = ?";
+        try (Connection connection = connectionProvider.getWriteConnection();
+             PreparedStatement select = connection.prepareStatement(query);
+             PreparedStatement statement = connection.prepareStatement(update)) {
+            connection.setAutoCommit(false);
+            try (ResultSet rs = select.executeQuery()) {
+                Long accountId = null;
+                TransactionFingerprint fingerprints = null;
                 while (rs.next()) {
-                    found.add(rs.getInt(1));
+                    if (!Long.valueOf(rs.getLong(2)).equals(accountId)) {
+                        accountId = rs.getLong(2);
+                        fingerprints = new TransactionFingerprint();
+                    }
+                    long txdate = rs.getLong(4);
+                    Long transactionDate = rs.wasNull() ? null : txdate;
+                    statement.setLong(1, fingerprints.next(rs.getLong(3), transactionDate, rs.getBigDecimal(5),
+                            rs.getBigDecimal(6), rs.getString(7)));
+                    statement.setLong(2, rs.getLong(1));
+                    statement.addBatch();
                 }
             }
+            statement.executeBatch();
+            // transaction gets committed now
+            connection.setAutoCommit(true);
         }
-        return found;
+        fingerprintFilters.clear();
     }
 
     @Override
     public void saveTransactions(Account account, List<ParsedStatement.Line> lines) throws SQLException {
-        String query = "insert into transactions(accountId, posting_date, txdate, amount, balance, description, hash, allocated) values(?,?,?,?,?,?,?,0)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        String query = "insert into transactions(accountId, posting_date, txdate, amount, balance, description, hash, " +
+                "fingerprint, allocated) values(?,?,?,?,?,?,?,?,0)";
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(false);
+            BigDecimal debits = BigDecimal.ZERO;
+            BigDecimal credits = BigDecimal.ZERO;
             for (ParsedStatement.Line line : lines) {
                 statement.setLong(1, account.id());
-                statement.setDate(2, new java.sql.Date(line.getPostedOn().getTimeInMillis()));
+                statement.setDate(2, toSqlDate(line.getPostedOn()));
                 if (line.getTransactionDate() == null)
                     statement.setNull(3, Types.INTEGER);
                 else
-                    statement.setDate(3, new java.sql.Date(line.getTransactionDate().getTimeInMillis()));
+                    statement.setDate(3, toSqlDate(line.getTransactionDate()));
                 statement.setBigDecimal(4, line.getAmount());
+                if (line.getAmount().signum() < 0)
+                    debits = debits.add(line.getAmount());
+                else
+                    credits = credits.add(line.getAmount());
                 statement.setBigDecimal(5, line.getBalance());
                 statement.setString(6, line.getDescription());
                 statement.setInt(7, line.hashCode());
+                if (line.getFingerprint() == null)
+                    statement.setNull(8, Types.INTEGER);
+                else {
+                    statement.setLong(8, line.getFingerprint());
+                    fingerprintFilters.added(account, line.getFingerprint());
+                }
                 statement.addBatch();
                 statement.clearParameters();
             }
             statement.executeBatch();
+            changed(new DataChange.TransactionsInserted(account, debits, credits));
             // transaction gets committed now
             connection.setAutoCommit(true);
         }
     }
 
+    private static java.sql.Date toSqlDate(LocalDateTime dateTime) {
+        return new java.sql.Date(dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
     @Override
     public Budget getBudget(Long id) throws SQLException {
         String query = "select id, copyBudgetId, name, kind, hidden from budget where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -693,36 +888,13 @@ public class DatabaseDataModel implements DataModel {
     }
 
     private Category getCategory(Connection connection, Long id) throws SQLException {
-        Category category = categoryCache.get(id);
-        if (category != null)
-            return category;
-        String query = "select id, name, kind, bgColor, parentId from category where id = ?";
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, id);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    Long parentId = resultSet.getLong(5);
-                    Category parent;
-                    if (resultSet.wasNull())
-                        parent = null;
-                    else
-                        parent = getCategory(connection, parentId);
-                    category = new Category(resultSet.getLong(1), resultSet.getString(2),
-                            resultSet.getString(4),
-                            Kind.valueOf(resultSet.getString(3)), parent);
-                    categoryCache.put(category.id(), category);
-                } else {
-                    throw new NullPointerException("Unable to retrieve a category with id " + id);
-                }
-            }
-        }
-        return category;
+        return categoryTree.get(connection, id);
     }
 
     @Override
     public List<Budget> getBudgets() throws SQLException {
         List<Budget> list = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              Statement statement = connection.createStatement()) {
             try (ResultSet resultSet = statement.executeQuery("select id, copyBudgetId, name, kind, hidden from budget")) {
                 while (resultSet.next()) {
@@ -742,16 +914,18 @@ public class DatabaseDataModel implements DataModel {
                 "(select count(*)>0 from allocation a where a.budgetItemId=bf.id) " +
                 "from item f " +
                 "join budget_item bf on bf.itemId = f.id where bf.budgetId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, budget.id());
-            try (ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    Item item = new Item(resultSet.getLong(1), resultSet.getString(2),
-                            Kind.valueOf(resultSet.getString(5)), getCategory(connection, resultSet.getLong(7)));
-                    Set<Tag> tags = getTagsForItem(item);
-                    set.add(new BudgetItem(resultSet.getLong(6), budget, item, resultSet.getString(3),
-                            resultSet.getBigDecimal(4), tags, !resultSet.getBoolean(8)));
+        try (Connection connection = connectionProvider.getReadConnection()) {
+            Map<Long, Set<Tag>> tagsByItem = getTagsForBudgetItems(connection, budget);
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setLong(1, budget.id());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Item item = new Item(resultSet.getLong(1), resultSet.getString(2),
+                                Kind.valueOf(resultSet.getString(5)), getCategory(connection, resultSet.getLong(7)));
+                        Set<Tag> tags = new HashSet<>(tagsByItem.getOrDefault(item.id(), Set.of()));
+                        set.add(new BudgetItem(resultSet.getLong(6), budget, item, resultSet.getString(3),
+                                resultSet.getBigDecimal(4), tags, !resultSet.getBoolean(8)));
+                    }
                 }
             }
         }
@@ -765,7 +939,7 @@ public class DatabaseDataModel implements DataModel {
                 "from item f " +
                 "join budget_item bf on bf.itemId = f.id " +
                 "where bf.id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, id);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -796,25 +970,49 @@ public class DatabaseDataModel implements DataModel {
                 "(select sum(amount) from allocation a where a.budgetItemId=bf.id ), f.categoryId, " +
                 "(select count(*)>0 from allocation a where a.budgetItemId=bf.id) " +
                 "from item f join budget_item bf on bf.itemId = f.id where bf.budgetId =?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
+        try (Connection connection = connectionProvider.getReadConnection()) {
+            Map<Long, Set<Tag>> tagsByItem = getTagsForBudgetItems(connection, budget);
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setLong(1, budget.id());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Item item = new Item(resultSet.getLong(1), resultSet.getString(2),
+                                Kind.valueOf(resultSet.getString(5)), getCategory(connection, resultSet.getLong(8)));
+                        Set<Tag> tags = new HashSet<>(tagsByItem.getOrDefault(item.id(), Set.of()));
+                        BudgetItem budgetItem = new BudgetItem(resultSet.getLong(6), budget, item,
+                                resultSet.getString(3), resultSet.getBigDecimal(4), tags, !resultSet.getBoolean(9));
+                        BudgetItemHolder holder = new BudgetItemHolder(budgetItem, onPlannedChange, onNoteChange);
+                        BigDecimal actual = resultSet.getBigDecimal(7);
+                        if (!resultSet.wasNull())
+                            holder.setActual(actual);
+                        set.add(holder);
+                    }
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Loads the tags of all the items in a budget with one query, instead of one query per item.
+     *
+     * @return The tags of each item, keyed by item id. Items without tags are left out.
+     */
+    private Map<Long, Set<Tag>> getTagsForBudgetItems(Connection connection, Budget budget) throws SQLException {
+        Map<Long, Set<Tag>> tagsByItem = new HashMap<>();
+        String query = "select bf.itemId, t.id, t.name from budget_item bf " +
+                "join item_tag ft on ft.itemId = bf.itemId " +
+                "join tag t on t.id = ft.tagId where bf.budgetId = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    Item item = new Item(resultSet.getLong(1), resultSet.getString(2),
-                            Kind.valueOf(resultSet.getString(5)), getCategory(connection, resultSet.getLong(8)));
-                    Set<Tag> tags = getTagsForItem(item);
-                    BudgetItem budgetItem = new BudgetItem(resultSet.getLong(6), budget, item, resultSet.getString(3),
-                            resultSet.getBigDecimal(4), tags, !resultSet.getBoolean(9));
-                    BudgetItemHolder holder = new BudgetItemHolder(budgetItem, onPlannedChange, onNoteChange);
-                    BigDecimal actual = resultSet.getBigDecimal(7);
-                    if (!resultSet.wasNull())
-                        holder.setActual(actual);
-                    set.add(holder);
+                    tagsByItem.computeIfAbsent(resultSet.getLong(1), k -> new HashSet<>())
+                            .add(new Tag(resultSet.getLong(2), resultSet.getString(3)));
                 }
             }
         }
-        return set;
+        return tagsByItem;
     }
 
     @Override
@@ -827,7 +1025,7 @@ public class DatabaseDataModel implements DataModel {
     public Set<Long> searchAccounts(String criteria) throws SQLException {
         String query = "select id from account_idx where name match ?";
         Set<Long> longs = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, criteria);
             try (ResultSet rs = statement.executeQuery()) {
@@ -845,7 +1043,7 @@ public class DatabaseDataModel implements DataModel {
         String query = "select bi.id from item_idx idx " +
                 "join budget_item bi on bi.itemId = idx.id and bi.budgetId = ? where idx.name match ?";
         Set<Long> longs = new HashSet<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             statement.setString(2, criteria);
@@ -862,7 +1060,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public boolean canDeleteTransaction(Transaction transaction) throws SQLException {
         String query = "select count(*) as count from allocation where transactionId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, transaction.id());
@@ -876,7 +1074,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public boolean canDeleteBudgetItem(BudgetItem budgetItem) throws SQLException {
         String query = "select count(*) as count from allocation where budgetItemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, budgetItem.id());
@@ -890,18 +1088,19 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void deleteTransaction(Transaction transaction) throws SQLException {
         String query = "delete from transactions where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setLong(1, transaction.id());
-            statement.executeUpdate();
+            if (statement.executeUpdate() == 1)
+                changed(new DataChange.TransactionDeleted(transaction));
         }
     }
 
     @Override
     public void deleteBudgetItem(BudgetItem budgetItem) throws SQLException {
         String query = "delete from budget_item where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setLong(1, budgetItem.id());
@@ -912,7 +1111,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void transferToBudget(Budget from, Budget to, BudgetItem fromBudgetItem, BudgetItem toBudgetItem,
                                  Map<Account, BigDecimal> amounts) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getWriteConnection()) {
             connection.setAutoCommit(false);
             Calendar postedOn = Calendar.getInstance();
             postedOn.setTime(Date.from(Instant.now()));
@@ -936,81 +1135,85 @@ public class DatabaseDataModel implements DataModel {
     }
 
     @Override
-    public Budget cloneBudget(Budget budget, String newName, Boolean copyActualToPlanned, Boolean transferBalance,
-                              BudgetItem budgetItem) throws SQLException {
-        if (!transferBalance)
-            return cloneBudget(budget, newName, copyActualToPlanned);
-        else {
-            String query = "insert into budget(name, kind, copyBudgetId, hidden) values (?,?,?,?)";
-            try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
-                connection.setAutoCommit(true);
-                Budget clone;
-                try (PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-                    statement.setString(1, newName);
-                    statement.setString(2, budget.kind().name());
-                    statement.setLong(3, budget.id());
-                    statement.setBoolean(4, budget.hidden());
-                    statement.executeUpdate();
-                    try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            clone = new Budget(generatedKeys.getLong(1), budget.id(), newName, budget.kind(), budget.hidden());
-                        } else {
-                            throw new RuntimeException("Unable to get generated key");
-                        }
-                    }
-                }
-                if (copyActualToPlanned) {
-                    Set<BudgetItem> set = getBudgetItems(budget);
-                    query = "insert into budget_item(budgetId,itemId,planned,note) " +
-                            "values(?,?,?,?)";
-                    try (PreparedStatement statement = connection.prepareStatement(query)) {
-                        set.forEach(bi -> {
-                            try {
-                                statement.clearParameters();
-                                BigDecimal actual = getActualForBudgetItem(bi);
-                                if (actual == null)
-                                    actual = BigDecimal.ZERO;
-                                statement.setLong(1, clone.id());
-                                statement.setLong(2, bi.item().id());
-                                statement.setBigDecimal(3, actual);
-                                statement.setString(4, bi.note());
-                                statement.executeUpdate();
-                            } catch (SQLException e) {
-                                throw new RuntimeException("Unable to insert budget clone's budget items", e);
-                            }
-                        });
-                    }
+    public ClonedBudget cloneBudget(Budget budget, String newName, Boolean copyActualToPlanned,
+                                    Boolean transferBalance, BudgetItem budgetItem) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = connectionProvider.getWriteConnection()) {
+            // Everything below either happens as a whole or not at all
+            connection.setAutoCommit(false);
+            Budget clone = insertBudgetClone(connection, budget, newName);
+            int items = cloneBudgetItems(connection, budget, clone, copyActualToPlanned);
+            if (transferBalance)
+                transferBalances(connection, budget, clone, budgetItem);
+            // transaction gets committed now
+            connection.setAutoCommit(true);
+            return new ClonedBudget(clone, items, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private Budget insertBudgetClone(Connection connection, Budget budget, String newName) throws SQLException {
+        String query = "insert into budget(name, kind, copyBudgetId, hidden) values (?,?,?,?)";
+        try (PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setString(1, newName);
+            statement.setString(2, budget.kind().name());
+            statement.setLong(3, budget.id());
+            statement.setBoolean(4, budget.hidden());
+            statement.executeUpdate();
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return new Budget(generatedKeys.getLong(1), budget.id(), newName, budget.kind(), budget.hidden());
                 } else {
-                    query = String.format(
-                            "insert into budget_item(budgetId,itemId,planned,note) select %d,itemId,planned,note from budget_item where budgetId=%d",
-                            clone.id(), budget.id());
-                    try (PreparedStatement statement = connection.prepareStatement(query)) {
-                        statement.executeUpdate();
-                    }
-                }
-                BudgetItem targetBudgetItem = getBudgetItem(connection, clone, budgetItem.item());
-                Map<Account, BigDecimal> balances = calculateBalances(connection, budget);
-                Calendar postedOn = Calendar.getInstance();
-                postedOn.setTime(Date.from(Instant.now()));
-                for (Map.Entry<Account, BigDecimal> entry : balances.entrySet()) {
-                    String description = "Closing balance";
-                    long transactionHash = Objects.hash(postedOn, description, entry.getValue().negate(), null,
-                            BigDecimal.ZERO);
-                    Transaction closingBalance = createTransaction(connection, new Transaction(null, entry.getKey(), postedOn.getTime(), null,
-                            entry.getValue().negate(), BigDecimal.ZERO, "Closing balance", transactionHash,
-                            true, true, false));
-                    createAllocation(connection, closingBalance, budgetItem, entry.getValue().negate(), "Transferring to " + newName);
-                    Transaction transferAmount = createTransaction(connection, new Transaction(null, entry.getKey(), postedOn.getTime(), null,
-                            entry.getValue(), BigDecimal.ZERO, "Transfer from " + budget.name(), transactionHash,
-                            true, true, false));
-                    createAllocation(connection, transferAmount, targetBudgetItem, entry.getValue(), "Transferring from " + budget.name());
+                    throw new RuntimeException("Unable to get generated key");
                 }
-                connection.setAutoCommit(true);
-                return clone;
             }
         }
     }
 
+    /**
+     * Copies the budget items of one budget to another with a single statement. When copying the actual amounts,
+     * the allocations of all the items are summed in the same statement.
+     *
+     * @return The number of budget items copied
+     */
+    private int cloneBudgetItems(Connection connection, Budget budget, Budget clone, boolean copyActualToPlanned)
+            throws SQLException {
+        String query;
+        if (copyActualToPlanned)
+            query = "insert into budget_item(budgetId,itemId,planned,note) " +
+                    "select ?, bf.itemId, coalesce(sum(a.amount), 0), bf.note from budget_item bf " +
+                    "left join allocation a on a.budgetItemId = bf.id " +
+                    "where bf.budgetId = ? group by bf.id";
+        else
+            query = "insert into budget_item(budgetId,itemId,planned,note) " +
+                    "select ?, itemId, planned, note from budget_item where budgetId = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, clone.id());
+            statement.setLong(2, budget.id());
+            return statement.executeUpdate();
+        }
+    }
+
+    private void transferBalances(Connection connection, Budget budget, Budget clone, BudgetItem budgetItem)
+            throws SQLException {
+        BudgetItem targetBudgetItem = getBudgetItem(connection, clone, budgetItem.item());
+        Map<Account, BigDecimal> balances = calculateBalances(connection, budget);
+        Calendar postedOn = Calendar.getInstance();
+        postedOn.setTime(Date.from(Instant.now()));
+        for (Map.Entry<Account, BigDecimal> entry : balances.entrySet()) {
+            String description = "Closing balance";
+            long transactionHash = Objects.hash(postedOn, description, entry.getValue().negate(), null,
+                    BigDecimal.ZERO);
+            Transaction closingBalance = createTransaction(connection, new Transaction(null, entry.getKey(), postedOn.getTime(), null,
+                    entry.getValue().negate(), BigDecimal.ZERO, "Closing balance", transactionHash,
+                    true, true, false));
+            createAllocation(connection, closingBalance, budgetItem, entry.getValue().negate(), "Transferring to " + clone.name());
+            Transaction transferAmount = createTransaction(connection, new Transaction(null, entry.getKey(), postedOn.getTime(), null,
+                    entry.getValue(), BigDecimal.ZERO, "Transfer from " + budget.name(), transactionHash,
+                    true, true, false));
+            createAllocation(connection, transferAmount, targetBudgetItem, entry.getValue(), "Transferring from " + budget.name());
+        }
+    }
+
     private BudgetItem getBudgetItem(Connection connection, Budget budget, Item item) throws SQLException {
         String query = "select f.id, f.name, bf.note, bf.planned, f.kind, bf.id, f.categoryId, bf.budgetId " +
                 "from item f join budget_item bf on bf.itemId = f.id " +
@@ -1033,20 +1236,17 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public Map<Account, BigDecimal> calculateBalances(Budget budget) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
-            connection.setAutoCommit(true);
+        try (Connection connection = connectionProvider.getReadConnection()) {
             return calculateBalances(connection, budget);
         }
     }
 
     private Map<Account, BigDecimal> calculateBalances(Connection connection, Budget budget) throws SQLException {
         Map<Account, BigDecimal> balances = new HashMap<>();
-        String query = "select sum(a.amount), act.id, act.name, act.number, act.branchCode, act.bank, act.tagColor " +
-                "from budget_item bf " +
-                "join allocation a on a.budgetItemId=bf.id " +
-                "join transactions t on a.transactionId=t.id " +
-                "join account act on t.accountId = act.id " +
-                "where budgetId=? group by act.id";
+        String query = "select s.actual, act.id, act.name, act.number, act.branchCode, act.bank, act.tagColor " +
+                "from budget_account_actual s " +
+                "join account act on s.accountId = act.id " +
+                "where s.budgetId=? and s.actual <> 0";
         try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budget.id());
             try (ResultSet rs = statement.executeQuery()) {
@@ -1067,63 +1267,81 @@ public class DatabaseDataModel implements DataModel {
         return balances;
     }
 
-    private Budget cloneBudget(Budget budget, String newName, boolean copyActualToPlanned) throws SQLException {
-        String query = "insert into budget(name, kind, copyBudgetId, hidden) values (?,?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
-            connection.setAutoCommit(true);
-            Budget clone;
-            try (PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-                statement.setString(1, newName);
-                statement.setString(2, budget.kind().name());
-                statement.setLong(3, budget.id());
-                statement.setBoolean(4, budget.hidden());
-                statement.executeUpdate();
-                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        clone = new Budget(generatedKeys.getLong(1), budget.id(), newName, budget.kind(), budget.hidden());
-                    } else {
-                        throw new RuntimeException("Unable to get generated key");
+    @Override
+    public Summary getSummary() throws SQLException {
+        // The aggregate tables are kept up to date by triggers on the allocation and transactions tables
+        String query = "select 0, sum(debits), sum(credits), null, null, null, null, null, null from account_summary " +
+                "union all " +
+                "select 1, funded, unfunded, null, null, null, null, null, null from summary_totals " +
+                "union all " +
+                "select 2, s.funded, null, act.id, act.name, act.number, act.branchCode, act.bank, act.tagColor " +
+                "from account_summary s join account act on s.accountId = act.id where round(s.funded, 2) <> 0";
+        BigDecimal debits = BigDecimal.ZERO;
+        BigDecimal credits = BigDecimal.ZERO;
+        BigDecimal funded = BigDecimal.ZERO;
+        BigDecimal unfunded = BigDecimal.ZERO;
+        Map<Account, BigDecimal> fundingBalances = new HashMap<>();
+        try (Connection connection = connectionProvider.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                switch (rs.getInt(1)) {
+                    case 0 -> {
+                        debits = zeroIfNull(rs.getBigDecimal(2));
+                        credits = zeroIfNull(rs.getBigDecimal(3));
                     }
+                    case 1 -> {
+                        funded = zeroIfNull(rs.getBigDecimal(2));
+                        unfunded = zeroIfNull(rs.getBigDecimal(3));
+                    }
+                    default -> fundingBalances.put(new Account(rs.getLong(4), rs.getString(5),
+                            rs.getString(6), rs.getString(7), rs.getString(8), rs.getString(9)),
+                            rs.getBigDecimal(2));
                 }
             }
-            if (copyActualToPlanned) {
-                Set<BudgetItem> set = getBudgetItems(budget);
-                query = "insert into budget_item(budgetId,itemId,planned,note) " +
-                        "values(?,?,?,?)";
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    set.forEach(bi -> {
-                        try {
-                            statement.clearParameters();
-                            BigDecimal actual = getActualForBudgetItem(bi);
-                            if (actual == null)
-                                actual = BigDecimal.ZERO;
-                            statement.setLong(1, clone.id());
-                            statement.setLong(2, bi.item().id());
-                            statement.setBigDecimal(3, actual);
-                            statement.setString(4, bi.note());
-                            statement.executeUpdate();
-                        } catch (SQLException e) {
-                            throw new RuntimeException("Unable to insert budget clone's budget items", e);
-                        }
-                    });
-                }
-            } else {
-                query = String.format(
-                        "insert into budget_item(budgetId,itemId,planned,note) select %d,itemId,planned,note from budget_item where budgetId=%d",
-                        clone.id(), budget.id());
-                try (PreparedStatement statement = connection.prepareStatement(query)) {
-                    statement.executeUpdate();
-                }
+        }
+        return new Summary(debits, credits, funded, unfunded, fundingBalances);
+    }
+
+    @Override
+    public List<AccountSummary> getAccountSummaries() throws SQLException {
+        String query = "select act.id, act.name, act.number, act.branchCode, act.bank, act.tagColor, s.debits, " +
+                "s.credits, s.funded from account_summary s join account act on s.accountId = act.id";
+        List<AccountSummary> list = new ArrayList<>();
+        try (Connection connection = connectionProvider.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                list.add(new AccountSummary(new Account(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        rs.getString(4), rs.getString(5), rs.getString(6)), zeroIfNull(rs.getBigDecimal(7)),
+                        zeroIfNull(rs.getBigDecimal(8)), zeroIfNull(rs.getBigDecimal(9))));
             }
-            connection.setAutoCommit(true);
-            return clone;
         }
+        return list;
+    }
+
+    @Override
+    public Map<Long, BigDecimal> getBudgetActuals() throws SQLException {
+        String query = "select budgetId, actual from budget_actual";
+        Map<Long, BigDecimal> actuals = new HashMap<>();
+        try (Connection connection = connectionProvider.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                actuals.put(rs.getLong(1), zeroIfNull(rs.getBigDecimal(2)));
+            }
+        }
+        return actuals;
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
     }
 
     @Override
     public Budget createBudget(Budget budget) throws SQLException {
         String query = "insert into budget(name, kind, hidden) values (?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setString(1, budget.name());
@@ -1143,7 +1361,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Item createItem(Item item) throws SQLException {
         String query = "insert into item(name, kind, categoryId) values (?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setString(1, item.name());
@@ -1169,7 +1387,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public List<Item> getItems() throws SQLException {
         List<Item> list = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              Statement statement = connection.createStatement()) {
             try (ResultSet resultSet = statement.executeQuery("select id, name, kind, categoryId from item")) {
                 while (resultSet.next()) {
@@ -1187,7 +1405,7 @@ public class DatabaseDataModel implements DataModel {
         Set<ItemTag> set = new HashSet<>();
         String query = "select ft.id, t.id, t.name from tag t " +
                 "join item_tag ft on ft.tagId = t.id where ft.itemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, item.id());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1199,33 +1417,11 @@ public class DatabaseDataModel implements DataModel {
         return set;
     }
 
-    @Override
-    public Collection<Set<Tag>> getItemTagsForBudget(Budget budget) throws SQLException {
-        String query = "select ft.id,ft.itemId,ft.tagId,t.name from item_tag ft " +
-                "join tag t on t.id=ft.tagId " +
-                "where itemId in ( select itemId from budget_item where budgetId=?)";
-        Map<Long, Set<Tag>> itemTags = new HashMap<>(30);
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setLong(1, budget.id());
-            try (ResultSet rs = statement.executeQuery()) {
-                while (rs.next()) {
-                    Long itemId = rs.getLong(2);
-                    Long tagId = rs.getLong(3);
-                    String tagName = rs.getString(4);
-                    Set<Tag> tags = itemTags.computeIfAbsent(itemId, k -> new HashSet<>(Set.of(new Tag(tagId, tagName))));
-                    tags.add(new Tag(tagId, tagName));
-                }
-            }
-        }
-        return itemTags.values();
-    }
-
     public Set<Tag> getTagsForItem(Item item) throws SQLException {
         Set<Tag> set = new HashSet<>();
         String query = "select ft.id, t.id, t.name from tag t " +
                 "join item_tag ft on ft.tagId = t.id where ft.itemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, item.id());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1240,7 +1436,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void deleteItemTag(ItemTag itemTag) throws SQLException {
         String query = "delete from item_tag where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setLong(1, itemTag.id());
@@ -1251,7 +1447,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public ItemTag createItemTag(Item item, Tag tag) throws SQLException {
         String query = "insert into item_tag(itemId, tagId) values (?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setLong(1, item.id());
@@ -1269,7 +1465,7 @@ public class DatabaseDataModel implements DataModel {
 
     private boolean tagExistsForItem(Item item, Tag tag) throws SQLException {
         String query = "select count(*) as count from item_tag where itemId = ? and tagId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, item.id());
@@ -1290,7 +1486,7 @@ public class DatabaseDataModel implements DataModel {
 
     public BudgetItem addItemToBudget(Budget budget, Item item, BigDecimal planned, String note) throws SQLException {
         String query = "insert into budget_item(budgetId, itemId, planned, note) values(?,?,?,?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setLong(1, budget.id());
@@ -1312,7 +1508,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Budget updateBudgetHidden(Budget budget, Boolean aBoolean) throws SQLException {
         String query = "update budget set hidden = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setBoolean(1, aBoolean);
@@ -1327,7 +1523,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public BudgetItem updateBudgetItemNote(BudgetItem budgetItem, String newValue) throws SQLException {
         String query = "update budget_item set note = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setString(1, newValue);
@@ -1343,7 +1539,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public BudgetItem updateBudgetItemPlanned(BudgetItem budgetItem, BigDecimal newValue) throws SQLException {
         String query = "update budget_item set planned = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setBigDecimal(1, newValue);
@@ -1359,7 +1555,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Item updateItemCategory(Item item, Category c) throws SQLException {
         String query = "update item set categoryId = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setLong(1, c.id());
@@ -1374,7 +1570,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Item updateItemName(Item item, String newValue) throws SQLException {
         String query = "update item set name = ? where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setString(1, newValue);
@@ -1389,7 +1585,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void deleteTagForItem(Item item, Long id) throws SQLException {
         String query = "delete from item_tag where itemId = ? and tagId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             connection.setAutoCommit(true);
             statement.setLong(1, item.id());
@@ -1403,7 +1599,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public boolean canDeleteItem(Item item) throws SQLException {
         String query = "select count(*) as count from budget_item where itemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, item.id());
@@ -1419,7 +1615,7 @@ public class DatabaseDataModel implements DataModel {
         if (category.id() == null)
             return false;
         String query = "select count(*) as count from item where categoryId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, category.id());
@@ -1430,7 +1626,7 @@ public class DatabaseDataModel implements DataModel {
             }
         }
         query = "select count(*) as count from category where parentId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query);
         ) {
             statement.setLong(1, category.id());
@@ -1444,7 +1640,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public void deleteItem(Item item) throws SQLException {
         if (canDeleteItem(item)) {
-            try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+            try (Connection connection = connectionProvider.getWriteConnection()) {
                 connection.setAutoCommit(false);
                 try (PreparedStatement statement = connection.prepareStatement("delete from item_tag where itemId = ?")) {
                     statement.setLong(1, item.id());
@@ -1464,7 +1660,7 @@ public class DatabaseDataModel implements DataModel {
     public List<Allocation> getAllocations(Long transactionId) throws SQLException {
         List<Allocation> list = new ArrayList<>();
         String query = "select id, budgetItemId, amount, note from allocation where transactionId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, transactionId);
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1483,7 +1679,7 @@ public class DatabaseDataModel implements DataModel {
     public List<Allocation> getAllocationsByBudgetItem(BudgetItem budgetItem) throws SQLException {
         List<Allocation> list = new ArrayList<>();
         String query = "select id, transactionId, amount, note from allocation where budgetItemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budgetItem.id());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1500,8 +1696,8 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public BigDecimal getActualForBudgetItem(BudgetItem budgetItem) throws SQLException {
-        String query = "select sum(amount) from allocation where budgetItemId = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        String query = "select actual from budget_item_actual where budgetItemId = ?";
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, budgetItem.id());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1517,9 +1713,9 @@ public class DatabaseDataModel implements DataModel {
     public Transaction getTransaction(Long transactionId) throws SQLException {
         Transaction transaction = null;
         String query = "select posting_date, txdate, amount, balance, description, hash, allocated, accountId, manual," +
-                "(select count(*)>0 from allocation a where a.transactionId=t.id) " +
+                "allocations > 0 " +
                 "from transactions t where id = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setLong(1, transactionId);
             try (ResultSet rs = statement.executeQuery()) {
@@ -1550,6 +1746,7 @@ public class DatabaseDataModel implements DataModel {
             int updated = statement.executeUpdate();
             if (updated != 1)
                 throw new RuntimeException(String.format("Expected row count of 1 after updating planned. Row count was %d instead.", updated));
+            changed(new DataChange.TransactionsAllocated(List.of(transaction)));
             return new TransactionHolder(transaction.addAllocated(true));
         }
     }
@@ -1567,13 +1764,14 @@ public class DatabaseDataModel implements DataModel {
             }
             statement.executeBatch();
         }
+        changed(new DataChange.TransactionsAllocated(List.copyOf(transactions)));
         return holderList;
     }
 
     @Override
     public List<TagHolder> getTags() throws SQLException {
         List<TagHolder> list = new ArrayList<>();
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              Statement statement = connection.createStatement()) {
             try (ResultSet resultSet = statement.executeQuery("select id, name from tag")) {
                 while (resultSet.next()) {
@@ -1589,7 +1787,7 @@ public class DatabaseDataModel implements DataModel {
     public Tag getTag(String text) throws SQLException {
         Tag tag = null;
         String query = "select id, name from tag where name = ?";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, text.toLowerCase());
             try (ResultSet resultSet = statement.executeQuery()) {
@@ -1604,7 +1802,7 @@ public class DatabaseDataModel implements DataModel {
     @Override
     public Tag createTag(String text) throws SQLException {
         String query = "insert into tag(name) values (?)";
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties);
+        try (Connection connection = connectionProvider.getWriteConnection();
              PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
             connection.setAutoCommit(true);
             statement.setString(1, text.toLowerCase());
@@ -1631,7 +1829,47 @@ public class DatabaseDataModel implements DataModel {
             statement.executeUpdate();
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
-                    return new Allocation(generatedKeys.getLong(1), transaction, budgetItem, amount, note);
+                    Allocation allocation = new Allocation(generatedKeys.getLong(1), transaction, budgetItem, amount,
+                            note);
+                    changed(new DataChange.AllocationCreated(allocation));
+                    return allocation;
+                } else {
+                    throw new RuntimeException("Unable to get generated key");
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<AllocationRule> getAllocationRules() throws SQLException {
+        List<AllocationRule> list = new ArrayList<>();
+        String query = "select r.id, r.pattern, i.id, i.name, i.kind, i.categoryId from allocation_rule r " +
+                "join item i on i.id = r.itemId order by r.id";
+        try (Connection connection = connectionProvider.getReadConnection();
+             Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(query)) {
+                while (resultSet.next()) {
+                    Item item = new Item(resultSet.getLong(3), resultSet.getString(4),
+                            Kind.valueOf(resultSet.getString(5)), getCategory(connection, resultSet.getLong(6)));
+                    list.add(new AllocationRule(resultSet.getLong(1), resultSet.getString(2), item));
+                }
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AllocationRule createAllocationRule(String pattern, Item item) throws SQLException {
+        String query = "insert into allocation_rule(pattern, itemId) values (?,?)";
+        try (Connection connection = connectionProvider.getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(true);
+            statement.setString(1, pattern.strip());
+            statement.setLong(2, item.id());
+            statement.executeUpdate();
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return new AllocationRule(generatedKeys.getLong(1), pattern.strip(), item);
                 } else {
                     throw new RuntimeException("Unable to get generated key");
                 }
@@ -1639,6 +1877,17 @@ public class DatabaseDataModel implements DataModel {
         }
     }
 
+    @Override
+    public void deleteAllocationRule(AllocationRule rule) throws SQLException {
+        String query = "delete from allocation_rule where id = ?";
+        try (Connection connection = connectionProvider.getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            connection.setAutoCommit(true);
+            statement.setLong(1, rule.id());
+            statement.executeUpdate();
+        }
+    }
+
     @Override
     public Set<Long> searchTags(String withWhat, String forWhat) throws SQLException {
         String query = String.format("select id from tag_idx where %s match ?", withWhat);
@@ -1647,7 +1896,7 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public void doInTransaction(DatabaseOperation... consumers) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getWriteConnection()) {
             connection.setAutoCommit(false);
             for (DatabaseOperation<Connection> consumer : consumers) {
                 consumer.apply(connection);
@@ -1658,17 +1907,21 @@ public class DatabaseDataModel implements DataModel {
 
     @Override
     public void deleteAllocation(Allocation allocation) throws SQLException {
-        try (Connection connection = DriverManager.getConnection(settings.getDatabaseUrl(), connectionProperties)) {
+        try (Connection connection = connectionProvider.getWriteConnection()) {
             connection.setAutoCommit(false);
+            int deleted;
             try (PreparedStatement statement = connection.prepareStatement("delete from allocation where id = ?")) {
                 statement.setLong(1, allocation.id());
-                statement.executeUpdate();
+                deleted = statement.executeUpdate();
             }
+            int unallocated;
             try (PreparedStatement statement = connection.prepareStatement(
-                    "update transactions set allocated = false where id = ?")) {
+                    "update transactions set allocated = false where id = ? and allocated")) {
                 statement.setLong(1, allocation.transaction().id());
-                statement.executeUpdate();
+                unallocated = statement.executeUpdate();
             }
+            if (deleted == 1)
+                changed(new DataChange.AllocationDeleted(allocation, unallocated == 1));
             connection.setAutoCommit(true);
         }
     }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.util.TransactionFingerprint;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A Bloom filter per account over the fingerprints of its transactions, read with a single query the first time the
+ * account's fingerprints are looked up. {@link DatabaseDataModel} tells it about every fingerprint it saves, so that
+ * lines that are certainly new need not be looked up in the database at all; only the ones the filter might contain
+ * are.
+ * <p>
+ * A filter can only say too much, never too little: a fingerprint that is deleted, or that was added in a
+ * transaction that got rolled back, only costs a lookup. Once an account has more fingerprints than its filter was
+ * sized for, the filter is dropped and read again when next needed. So is every filter on a {@link DataChange.Reset},
+ * since a restore or a script may have put in fingerprints no filter has seen.
+ */
+public class FingerprintFilters implements Consumer<DataChange> {
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Map<Long, Filter> filters = new HashMap<>();
+
+    /**
+     * @param connection - Used to load the account's fingerprints if that has not happened yet
+     * @return Those of the fingerprints that might have been saved for the account
+     */
+    public synchronized List<Long> candidates(Connection connection, Account account, List<Long> fingerprints)
+            throws SQLException {
+        Filter filter = filters.get(account.id());
+        if (filter == null) {
+            filter = load(connection, account.id());
+            filters.put(account.id(), filter);
+        }
+        List<Long> candidates = new ArrayList<>();
+        for (Long fingerprint : fingerprints) {
+            if (filter.mightContain(fingerprint))
+                candidates.add(fingerprint);
+        }
+        return candidates;
+    }
+
+    public synchronized void added(Account account, long fingerprint) {
+        Filter filter = filters.get(account.id());
+        if (filter == null)
+            return;
+        filter.add(fingerprint);
+        if (filter.isFull())
+            filters.remove(account.id());
+    }
+
+    /**
+     * Forgets everything, e.g. after switching to another database. The filters are read again when next needed.
+     */
+    public synchronized void clear() {
+        filters.clear();
+    }
+
+    @Override
+    public void accept(DataChange change) {
+        if (change instanceof DataChange.Reset)
+            clear();
+    }
+
+    private static Filter load(Connection connection, Long accountId) throws SQLException {
+        List<Long> fingerprints = new ArrayList<>();
+        String query = "select fingerprint from transactions where accountId = ? and fingerprint is not null";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, accountId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    fingerprints.add(resultSet.getLong(1));
+            }
+        }
+        // room to grow, so that a few imports do not make it reload
+        Filter filter = new Filter(Math.max(MIN_CAPACITY, 2 * fingerprints.size()));
+        fingerprints.forEach(filter::add);
+        return filter;
+    }
+
+    /**
+     * About 10 bits and 7 probes per fingerprint, which lets through less than 1% of the fingerprints it does not
+     * contain. A {@link TransactionFingerprint} is already well mixed, so its two halves serve as the two hashes the
+     * probes are derived from.
+     */
+    private static class Filter {
+        private static final int BITS_PER_ENTRY = 10;
+        private static final int PROBES = 7;
+
+        private final long[] bits;
+        private final long size;
+        private final int capacity;
+        private int count;
+
+        Filter(int capacity) {
+            this.capacity = capacity;
+            this.bits = new long[(int) (((long) capacity * BITS_PER_ENTRY + 63) / 64)];
+            this.size = (long) bits.length * 64;
+        }
+
+        void add(long fingerprint) {
+            for (int i = 0; i < PROBES; i++) {
+                long bit = bit(fingerprint, i);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            count++;
+        }
+
+        boolean mightContain(long fingerprint) {
+            for (int i = 0; i < PROBES; i++) {
+                long bit = bit(fingerprint, i);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        boolean isFull() {
+            return count > capacity;
+        }
+
+        private long bit(long fingerprint, int probe) {
+            long combined = (fingerprint >>> 32) + probe * (fingerprint & 0xffffffffL);
+            return Math.floorMod(combined, size);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.util.ParsedStatement;
+import hoogenbj.countary.util.StatementDetector;
+import hoogenbj.countary.util.StatementParseException;
+import hoogenbj.countary.util.StatementParser;
+import javafx.application.Platform;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Imports many statements at once, e.g. those of all the accounts at month end.
+ * <p>
+ * The type of each statement is detected from its start by the {@link StatementDetector} and the statements are parsed in parallel, on a pool with
+ * a thread per processor. They are then saved one after the other on the writer of the {@link AsyncDataModel}, each
+ * in a transaction of its own, so one bad statement does not stop the others. A statement goes to the account with
+ * its account number, or to the fallback account if it has none. Only a few parsed statements wait for the writer at
+ * a time.
+ */
+public class ImportPipeline {
+
+    /**
+     * @param failure - Why nothing was saved from the file, or null
+     */
+    public record Result(Path file, Account account, int saved, Throwable failure) {
+    }
+
+    /**
+     * How far an import is, and how fast each stage goes: lines per second of the time spent in it.
+     */
+    public record Progress(int files, int parsed, int done, long linesParsed, long parseNanos, long linesWritten,
+                           long writeNanos) {
+        public double parseLinesPerSecond() {
+            return parseNanos == 0 ? 0 : linesParsed * 1e9 / parseNanos;
+        }
+
+        public double writeLinesPerSecond() {
+            return writeNanos == 0 ? 0 : linesWritten * 1e9 / writeNanos;
+        }
+    }
+
+    private final AsyncDataModel asyncModel;
+    private final StatementDetector detector;
+    private final int parsers;
+    private final Executor callbacks;
+
+    public ImportPipeline(AsyncDataModel asyncModel, StatementDetector detector) {
+        this(asyncModel, detector, Runtime.getRuntime().availableProcessors(), Platform::runLater);
+    }
+
+    /**
+     * @param callbacks - Reports progress, instead of the JavaFX application thread
+     */
+    ImportPipeline(AsyncDataModel asyncModel, StatementDetector detector, int parsers, Executor callbacks) {
+        this.asyncModel = asyncModel;
+        this.detector = detector;
+        this.parsers = parsers;
+        this.callbacks = callbacks;
+    }
+
+    /**
+     * @param onProgress - Called on the JavaFX application thread whenever a file has been parsed or saved
+     * @return The results, in the order of the files
+     */
+    public CompletableFuture<List<Result>> importFiles(List<Path> files, List<Account> accounts, Account fallback,
+                                                       Consumer<Progress> onProgress) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parsers, runnable -> {
+            Thread thread = new Thread(runnable, "countary-parse-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore waiting = new Semaphore(2 * parsers);
+        Stages stages = new Stages(files.size());
+        List<CompletableFuture<Result>> results = files.stream().map(file -> CompletableFuture
+                .supplyAsync(() -> parse(file, accounts, fallback, waiting, stages, onProgress), pool)
+                .thenCompose(parsed -> save(parsed, stages))
+                .handle((result, e) -> {
+                    waiting.release();
+                    Result done = result != null ? result : new Result(file, null, 0,
+                            e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    stages.done.incrementAndGet();
+                    report(stages, onProgress);
+                    return done;
+                })).toList();
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> results.stream().map(CompletableFuture::join).toList())
+                .whenComplete((r, e) -> pool.shutdown());
+    }
+
+    private record Parsed(Path file, Account account, ParsedStatement statement) {
+    }
+
+    private static class Stages {
+        private final int files;
+        private final AtomicInteger parsed = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicLong linesParsed = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong linesWritten = new AtomicLong();
+        private final AtomicLong writeNanos = new AtomicLong();
+
+        private Stages(int files) {
+            this.files = files;
+        }
+
+        private Progress snapshot() {
+            return new Progress(files, parsed.get(), done.get(), linesParsed.get(), parseNanos.get(),
+                    linesWritten.get(), writeNanos.get());
+        }
+    }
+
+    private Parsed parse(Path file, List<Account> accounts, Account fallback, Semaphore waiting, Stages stages,
+                         Consumer<Progress> onProgress) {
+        // wait here while too many parsed statements are waiting for the writer
+        waiting.acquireUninterruptibly();
+        long start = System.nanoTime();
+        try {
+            StatementParser parser = detector.detect(file);
+            if (parser == null)
+                throw new StatementParseException("Unable to tell what kind of statement this is", file.toString());
+            ParsedStatement statement = parser.parse(file.toUri());
+            Account account = accountFor(statement, accounts, fallback, file);
+            stages.linesParsed.addAndGet(statement.getLines().size());
+            stages.parsed.incrementAndGet();
+            return new Parsed(file, account, statement);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StatementParseException(file.toString(), e);
+        } finally {
+            stages.parseNanos.addAndGet(System.nanoTime() - start);
+            report(stages, onProgress);
+        }
+    }
+
+    private static Account accountFor(ParsedStatement statement, List<Account> accounts, Account fallback, Path file) {
+        String number = statement.getAccountNumber();
+        if (number == null) {
+            if (fallback == null)
+                throw new StatementParseException("The statement has no account number and no account is selected",
+                        file.toString());
+            return fallback;
+        }
+        return accounts.stream().filter(account -> number.equals(account.number())).findFirst()
+                .orElseThrow(() -> new StatementParseException(
+                        String.format("There is no account with number %s", number), file.toString()));
+    }
+
+    private CompletableFuture<Result> save(Parsed parsed, Stages stages) {
+        return asyncModel.write(model -> {
+            long start = System.nanoTime();
+            StatementImporter importer = new StatementImporter(model, parsed.account());
+            importer.importStatement(parsed.statement());
+            stages.linesWritten.addAndGet(parsed.statement().getLines().size());
+            stages.writeNanos.addAndGet(System.nanoTime() - start);
+            return new Result(parsed.file(), parsed.account(), importer.getSaved(), null);
+        });
+    }
+
+    private void report(Stages stages, Consumer<Progress> onProgress) {
+        Progress progress = stages.snapshot();
+        callbacks.execute(() -> onProgress.accept(progress));
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.sqlite.SQLiteConfig;
+
+public enum JournalMode {
+    Rollback("Rollback journal", SQLiteConfig.JournalMode.DELETE),
+    WriteAheadLog("Write-ahead log", SQLiteConfig.JournalMode.WAL);
+
+    private final String description;
+    private final SQLiteConfig.JournalMode pragma;
+
+    JournalMode(String description, SQLiteConfig.JournalMode pragma) {
+        this.description = description;
+        this.pragma = pragma;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    public SQLiteConfig.JournalMode pragma() {
+        return pragma;
+    }
+}
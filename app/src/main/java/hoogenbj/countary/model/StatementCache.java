@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Keeps the prepared statements of one connection open, keyed by their SQL text, and evicts the least recently used
+ * one when it grows beyond its capacity. Closing a statement obtained from here resets it for the next caller
+ * instead of finalizing it.
+ * <p>
+ * Like the connection it belongs to, a cache is only ever used by one thread at a time.
+ */
+class StatementCache {
+
+    /**
+     * Told about every lookup, so the pool can report how well the cache is doing.
+     */
+    interface Listener {
+        void hit(String sql);
+
+        void miss(String sql);
+
+        void evicted(String sql);
+    }
+
+    private final Connection connection;
+    private final int capacity;
+    private final Listener listener;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection connection, int capacity, Listener listener) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.listener = listener;
+    }
+
+    /**
+     * @param owner - What {@link PreparedStatement#getConnection()} should return
+     */
+    PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse) {
+            listener.hit(sql);
+            return entry.checkout(owner);
+        }
+        listener.miss(sql);
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (entry != null) {
+            // The same query is still open further up the call stack, e.g. while walking a tree. Leave the cached
+            // one alone and hand out a statement of its own.
+            return statement;
+        }
+        entry = new Entry(key, statement);
+        entries.put(key, entry);
+        evict();
+        return entry.checkout(owner);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.values().forEach(entry -> {
+            entry.evicted = true;
+            if (!entry.inUse)
+                closeQuietly(entry.statement);
+        });
+        entries.clear();
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > capacity && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.inUse)
+                continue;
+            iterator.remove();
+            eldest.evicted = true;
+            closeQuietly(eldest.statement);
+            listener.evicted(eldest.key.sql());
+        }
+    }
+
+    private void release(Entry entry, List<ResultSet> resultSets) {
+        entry.inUse = false;
+        try {
+            // An open result set keeps the statement, and with it a read transaction, going.
+            for (ResultSet resultSet : resultSets)
+                resultSet.close();
+            entry.statement.clearParameters();
+            entry.statement.clearBatch();
+        } catch (SQLException e) {
+            entry.evicted = true;
+            entries.remove(entry.key, entry);
+        }
+        if (entry.evicted)
+            closeQuietly(entry.statement);
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // it is going away anyway
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    private class Entry {
+        private final Key key;
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private Entry(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        private PreparedStatement checkout(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this, owner));
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final Connection owner;
+        private final List<ResultSet> resultSets = new ArrayList<>();
+        private boolean closed;
+
+        private Handle(Entry entry, Connection owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        release(entry, resultSets);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed;
+                }
+                case "getConnection" -> {
+                    return owner;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Cached" + entry.statement;
+                }
+            }
+            if (closed)
+                throw new SQLException("Statement has been closed");
+            try {
+                Object result = method.invoke(entry.statement, args);
+                if (result instanceof ResultSet resultSet)
+                    resultSets.add(resultSet);
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
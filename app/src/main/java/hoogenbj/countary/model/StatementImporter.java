@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.util.ParsedStatement;
+import hoogenbj.countary.util.StatementParser;
+import hoogenbj.countary.util.TransactionFingerprint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Saves the lines of a statement while it is being parsed, a batch at a time, leaving out the lines that were saved
+ * before, as recognised by their {@link TransactionFingerprint}. Apart from a count per distinct line, what it holds
+ * on to depends on the batch size, not on the size of the statement. The whole statement is saved in one transaction,
+ * so it is saved either completely or not at all.
+ */
+public class StatementImporter implements Consumer<ParsedStatement.Line> {
+
+    public static final int BATCH_SIZE = 500;
+
+    private final DataModel model;
+    private final Account account;
+    private final int batchSize;
+    private final ParsedStatement statement = new ParsedStatement();
+    private final List<ParsedStatement.Line> batch;
+    private final TransactionFingerprint fingerprints = new TransactionFingerprint();
+    private boolean accountChecked;
+    private boolean wrongAccount;
+    private int saved;
+    private SQLException failure;
+
+    public StatementImporter(DataModel model, Account account) {
+        this(model, account, BATCH_SIZE);
+    }
+
+    StatementImporter(DataModel model, Account account, int batchSize) {
+        this.model = model;
+        this.account = account;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Parses the statement at uri and saves its new lines. Nothing is saved if the statement is for another account.
+     */
+    public void importStatement(StatementParser parser, URI uri) throws IOException, SQLException {
+        try {
+            save(() -> parser.parse(uri, statement, this));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves the new lines of a statement that has already been parsed.
+     */
+    public void importStatement(ParsedStatement parsed) throws SQLException {
+        save(() -> {
+            statement.setAccountHolder(parsed.getAccountHolder());
+            statement.setAccountNumber(parsed.getAccountNumber());
+            parsed.getLines().forEach(this);
+        });
+    }
+
+    private interface Lines {
+        void read() throws IOException;
+    }
+
+    private void save(Lines lines) throws SQLException {
+        model.doInTransaction(connection -> {
+            try {
+                lines.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            checkAccount();
+            flush();
+            if (failure != null)
+                throw failure;
+        });
+    }
+
+    @Override
+    public void accept(ParsedStatement.Line line) {
+        // the parsers set the account number before handing on the first line
+        checkAccount();
+        // Once something is wrong the rest of the statement is only read, the sink cannot stop the parser
+        if (wrongAccount || failure != null)
+            return;
+        line.setFingerprint(fingerprints.next(line));
+        batch.add(line);
+        if (batch.size() >= batchSize)
+            flush();
+    }
+
+    private void checkAccount() {
+        if (!accountChecked) {
+            accountChecked = true;
+            wrongAccount = statement.getAccountNumber() != null && !statement.getAccountNumber().equals(account.number());
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty() || failure != null)
+            return;
+        try {
+            // Repeats of a line within the statement have fingerprints of their own, so they are not duplicates
+            Set<Long> existing = model.getExistingFingerprints(account,
+                    batch.stream().map(ParsedStatement.Line::getFingerprint).toList());
+            List<ParsedStatement.Line> noDups = batch.stream()
+                    .filter(line -> !existing.contains(line.getFingerprint())).toList();
+            if (!noDups.isEmpty())
+                model.saveTransactions(account, noDups);
+            saved += noDups.size();
+        } catch (SQLException e) {
+            failure = e;
+        }
+        batch.clear();
+    }
+
+    public ParsedStatement getStatement() {
+        return statement;
+    }
+
+    public boolean isWrongAccount() {
+        return wrongAccount;
+    }
+
+    /**
+     * @return The number of lines that were saved
+     */
+    public int getSaved() {
+        return saved;
+    }
+}
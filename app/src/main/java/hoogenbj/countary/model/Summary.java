@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * @param debits           - Sum of the debits of all transactions that are not yet fully allocated
+ * @param credits          - Sum of the credits of all transactions that are not yet fully allocated
+ * @param funded           - Sum of the actuals of the budgets that have a positive actual
+ * @param unfunded         - Sum of the actuals of the budgets that have a negative actual
+ * @param fundingBalances  - What has been allocated to budgets, over all budgets, by account
+ */
+public record Summary(BigDecimal debits, BigDecimal credits, BigDecimal funded, BigDecimal unfunded,
+                      Map<Account, BigDecimal> fundingBalances) {
+
+    public BigDecimal transactionBalance() {
+        return debits.add(credits);
+    }
+
+    public BigDecimal budgetBalance() {
+        return funded.add(unfunded);
+    }
+}
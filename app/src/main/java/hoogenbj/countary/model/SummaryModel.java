@@ -14,6 +14,7 @@
  *    limitations under the License.
  */
 
+
 package hoogenbj.countary.model;
 
 import hoogenbj.countary.util.ParseUtils;
@@ -23,105 +24,277 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
-public class SummaryModel {
+/**
+ * Keeps the totals of the summary in memory: the debits, credits and funding of each account and the actual of each
+ * budget. They are loaded once and then kept up to date by the {@link DataChange}s the data model reports after each
+ * commit, each of which costs a constant amount of work whatever the size of the database. Only a {@link #refresh()}
+ * that finds the totals disagree with the database, or a {@link DataChange.Reset}, loads them again.
+ * <p>
+ * Changes arrive on whichever thread committed them; the holder is only ever updated through the display executor.
+ * Loading happens on the background executor, since a reset may be committed on the JavaFX application thread.
+ */
+public class SummaryModel implements Consumer<DataChange> {
 
-    private record TransactionSummary(BigDecimal debits, BigDecimal credits, BigDecimal balance) { }
+    // what is still shown as a funding balance, as in the summary query
+    private static final BigDecimal NEGLIGIBLE = new BigDecimal("0.005");
+    private static final System.Logger LOG = System.getLogger(SummaryModel.class.getName());
 
     private final DataModel dataModel;
     private final SummaryHolder holder;
-    private final Map<Long, TransactionSummary> transactionsSummary = new HashMap<>();
+    private final Executor display;
+    private final Executor background;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    // guarded by this
+    private final Map<Long, AccountSummary> accounts = new HashMap<>();
     private final Map<Long, BigDecimal> budgetActuals = new HashMap<>();
-    private final Map<Long, Map<Account, BigDecimal>> budgetBalances = new HashMap<>();
+    private BigDecimal debits = BigDecimal.ZERO;
+    private BigDecimal credits = BigDecimal.ZERO;
+    private BigDecimal funded = BigDecimal.ZERO;
+    private BigDecimal unfunded = BigDecimal.ZERO;
+    private int reloads;
+    private long changes;
+
+    private volatile Map<Account, BigDecimal> fundingBalances = Map.of();
+    private volatile Runnable onChange = () -> {
+    };
 
     public SummaryModel(DataModel dataModel, SummaryHolder holder) {
+        this(dataModel, holder, Runnable::run, Runnable::run);
+    }
+
+    public SummaryModel(DataModel dataModel, SummaryHolder holder, Executor display, Executor background) {
         this.dataModel = dataModel;
         this.holder = holder;
+        this.display = display;
+        this.background = background;
+    }
+
+    /**
+     * Starts listening to the data model and loads the totals, once the model has been fully set up.
+     *
+     * @return This model
+     */
+    public SummaryModel start() {
+        dataModel.addChangeListener(this);
+        requestReload();
+        return this;
+    }
+
+    public Map<Account, BigDecimal> getFundingBalances() {
+        return fundingBalances;
+    }
+
+    /**
+     * @param onChange - Run through the executor after the holder and the funding balances have been updated
+     */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Stops listening to the data model.
+     */
+    public void close() {
+        dataModel.removeChangeListener(this);
+    }
+
+    public synchronized int getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Checks the totals kept in memory against the summary in the database, and loads them again if they differ.
+     *
+     * @return true if they agreed
+     */
+    public boolean refresh() {
+        Summary summary;
         try {
-            dataModel.getAccounts().forEach(this::updateForAccount);
-            refreshForTransactions();
-            dataModel.getBudgets().forEach(this::updateForBudget);
-            refreshForBudgets();
+            summary = dataModel.getSummary();
         } catch (SQLException e) {
-            throw new RuntimeException("Could not retrieve accounts", e);
+            throw new RuntimeException("Could not retrieve the summary", e);
         }
+        synchronized (this) {
+            if (same(summary.debits(), debits) && same(summary.credits(), credits)
+                    && same(summary.funded(), funded) && same(summary.unfunded(), unfunded))
+                return true;
+        }
+        requestReload();
+        return false;
     }
 
-    private void refreshForBudgets() {
-        BigDecimal unfunded = BigDecimal.ZERO;
-        BigDecimal funded = BigDecimal.ZERO;
-        for (Map.Entry<Long, BigDecimal> entry: budgetActuals.entrySet()) {
-            if (entry.getValue().signum() == -1) {
-                unfunded = unfunded.add(entry.getValue());
-            } else {
-                funded = funded.add(entry.getValue());
+    @Override
+    public void accept(DataChange change) {
+        synchronized (this) {
+            changes++;
+            if (change instanceof DataChange.TransactionCreated created) {
+                if (!Boolean.TRUE.equals(created.transaction().allocated())
+                        && !unallocated(List.of(created.transaction()), true))
+                    change = new DataChange.Reset();
+            } else if (change instanceof DataChange.TransactionsInserted inserted) {
+                if (!addToAccount(inserted.account(), inserted.debits(), inserted.credits(), BigDecimal.ZERO))
+                    change = new DataChange.Reset();
+            } else if (change instanceof DataChange.TransactionDeleted deleted) {
+                if (!unallocated(List.of(deleted.transaction()), false))
+                    change = new DataChange.Reset();
+            } else if (change instanceof DataChange.TransactionsAllocated allocated) {
+                if (!unallocated(allocated.transactions(), false))
+                    change = new DataChange.Reset();
+            } else if (change instanceof DataChange.AllocationCreated created) {
+                if (!allocate(created.allocation(), created.allocation().amount()))
+                    change = new DataChange.Reset();
+            } else if (change instanceof DataChange.AllocationDeleted deleted) {
+                Allocation allocation = deleted.allocation();
+                if (!allocate(allocation, allocation.amount().negate())
+                        || deleted.unallocated() && !unallocated(List.of(allocation.transaction()), true))
+                    change = new DataChange.Reset();
             }
         }
-        BigDecimal budgetBalance = funded.add(unfunded);
-        holder.setBudgetBalance(ParseUtils.formatBigDecimal(budgetBalance));
-        holder.setBudgetFunded(ParseUtils.formatBigDecimal(funded));
-        holder.setBudgetUnfunded(ParseUtils.formatBigDecimal(unfunded));
+        if (change instanceof DataChange.Reset)
+            requestReload();
+        else
+            publish();
     }
 
-    public Map<Long, Map<Account, BigDecimal>> getBudgetBalances() {
-        return budgetBalances;
+    /**
+     * Adds the transactions to the debits and credits, or takes those of them away that were still counted there.
+     */
+    private boolean unallocated(List<Transaction> transactions, boolean add) {
+        for (Transaction transaction : transactions) {
+            if (!add && Boolean.TRUE.equals(transaction.allocated()))
+                continue;
+            BigDecimal debit = transaction.amount().min(BigDecimal.ZERO);
+            BigDecimal credit = transaction.amount().max(BigDecimal.ZERO);
+            if (!addToAccount(transaction.account(), add ? debit : debit.negate(), add ? credit : credit.negate(),
+                    BigDecimal.ZERO))
+                return false;
+        }
+        return true;
     }
 
-    private void refreshForTransactions() {
-        BigDecimal debits = BigDecimal.ZERO;
-        BigDecimal credits = BigDecimal.ZERO;
-        BigDecimal balance = BigDecimal.ZERO;
-        for (Map.Entry<Long, TransactionSummary> entry : transactionsSummary.entrySet()) {
-            debits = debits.add(entry.getValue().debits());
-            credits = credits.add(entry.getValue().credits());
-            balance = balance.add(entry.getValue().balance());
-        }
-        holder.setTransactionBalance(ParseUtils.formatBigDecimal(balance));
-        holder.setTransactionCredits(ParseUtils.formatBigDecimal(credits));
-        holder.setTransactionDebits(ParseUtils.formatBigDecimal(debits));
+    private boolean allocate(Allocation allocation, BigDecimal amount) {
+        Transaction transaction = allocation.transaction();
+        BudgetItem budgetItem = allocation.budgetItem();
+        if (transaction == null || budgetItem == null || budgetItem.budget() == null
+                || budgetItem.budget().id() == null)
+            return false;
+        if (!addToAccount(transaction.account(), BigDecimal.ZERO, BigDecimal.ZERO, amount))
+            return false;
+        Long budgetId = budgetItem.budget().id();
+        BigDecimal before = budgetActuals.getOrDefault(budgetId, BigDecimal.ZERO);
+        BigDecimal after = before.add(amount);
+        budgetActuals.put(budgetId, after);
+        funded = funded.subtract(before.max(BigDecimal.ZERO)).add(after.max(BigDecimal.ZERO));
+        unfunded = unfunded.subtract(before.min(BigDecimal.ZERO)).add(after.min(BigDecimal.ZERO));
+        return true;
     }
 
-    private void updateForBudget(Budget budget) {
-        try {
-            Long id = budget.id();
-            BigDecimal actualForBudget = dataModel.getActualForBudget(budget);
-            budgetActuals.put(id, actualForBudget);
-            budgetBalances.put(id, dataModel.calculateBalances(budget));
-        } catch (SQLException e) {
-            throw new RuntimeException(String.format("Could not retrieve actual for budget %s", budget.name()), e);
-        }
+    private boolean addToAccount(Account account, BigDecimal debits, BigDecimal credits, BigDecimal allocated) {
+        if (account == null || account.id() == null)
+            return false;
+        AccountSummary before = accounts.get(account.id());
+        if (before == null)
+            before = new AccountSummary(account, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+        accounts.put(account.id(), new AccountSummary(before.account(), before.debits().add(debits),
+                before.credits().add(credits), before.funded().add(allocated)));
+        this.debits = this.debits.add(debits);
+        this.credits = this.credits.add(credits);
+        return true;
     }
 
-    private void updateForAccount(Account account) {
+    /**
+     * Loads the totals on the background executor, unless that is already waiting to happen.
+     */
+    private void requestReload() {
+        if (!reloadPending.compareAndSet(false, true))
+            return;
+        background.execute(() -> {
+            reloadPending.set(false);
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                LOG.log(System.Logger.Level.ERROR, "Could not reload the summary", e);
+            }
+        });
+    }
+
+    private void reload() {
+        long seen;
+        synchronized (this) {
+            seen = changes;
+        }
+        List<AccountSummary> accountSummaries;
+        Map<Long, BigDecimal> actuals;
+        boolean missed;
         try {
-            List<Transaction> transactions = dataModel.getTransactions(account, false);
-            BigDecimal sumDebits = transactions.stream()
-                    .map(Transaction::amount)
-                    .filter(amount -> amount.signum() == -1)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            BigDecimal sumCredits = transactions.stream()
-                    .map(Transaction::amount)
-                    .filter(amount -> amount.signum() == 1)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            BigDecimal balance = sumDebits.add(sumCredits);
-            transactionsSummary.put(account.id(), new TransactionSummary(sumDebits, sumCredits, balance));
+            accountSummaries = dataModel.getAccountSummaries();
+            actuals = dataModel.getBudgetActuals();
         } catch (SQLException e) {
-            throw new RuntimeException(String.format("Could not retrieve transactions for account %s",
-                    account.name()), e);
+            throw new RuntimeException("Could not retrieve the summary", e);
         }
+        synchronized (this) {
+            reloads++;
+            accounts.clear();
+            debits = BigDecimal.ZERO;
+            credits = BigDecimal.ZERO;
+            accountSummaries.forEach(summary -> {
+                accounts.put(summary.account().id(), summary);
+                debits = debits.add(summary.debits());
+                credits = credits.add(summary.credits());
+            });
+            budgetActuals.clear();
+            budgetActuals.putAll(actuals);
+            funded = BigDecimal.ZERO;
+            unfunded = BigDecimal.ZERO;
+            actuals.values().forEach(actual -> {
+                funded = funded.add(actual.max(BigDecimal.ZERO));
+                unfunded = unfunded.add(actual.min(BigDecimal.ZERO));
+            });
+            // a change that came in while loading may or may not have been read
+            missed = changes != seen;
+        }
+        publish();
+        if (missed)
+            requestReload();
     }
 
-    public void update(Account account, Budget budget) {
-        updateForAccount(account);
-        refreshForTransactions();
-        updateForBudget(budget);
-        refreshForBudgets();
+    private void publish() {
+        Map<Account, BigDecimal> balances = new HashMap<>();
+        String debitsText;
+        String creditsText;
+        String balanceText;
+        String fundedText;
+        String unfundedText;
+        String budgetBalanceText;
+        synchronized (this) {
+            accounts.values().forEach(summary -> {
+                if (summary.funded().abs().compareTo(NEGLIGIBLE) >= 0)
+                    balances.put(summary.account(), summary.funded());
+            });
+            debitsText = ParseUtils.formatBigDecimal(debits);
+            creditsText = ParseUtils.formatBigDecimal(credits);
+            balanceText = ParseUtils.formatBigDecimal(debits.add(credits));
+            fundedText = ParseUtils.formatBigDecimal(funded);
+            unfundedText = ParseUtils.formatBigDecimal(unfunded);
+            budgetBalanceText = ParseUtils.formatBigDecimal(funded.add(unfunded));
+        }
+        display.execute(() -> {
+            fundingBalances = balances;
+            holder.setTransactionBalance(balanceText);
+            holder.setTransactionCredits(creditsText);
+            holder.setTransactionDebits(debitsText);
+            holder.setBudgetBalance(budgetBalanceText);
+            holder.setBudgetFunded(fundedText);
+            holder.setBudgetUnfunded(unfundedText);
+            onChange.run();
+        });
     }
 
-    public void update(Account account) {
-        updateForAccount(account);
-        refreshForTransactions();
+    private static boolean same(BigDecimal value, BigDecimal other) {
+        return value.subtract(other).abs().compareTo(NEGLIGIBLE) < 0;
     }
-
 }
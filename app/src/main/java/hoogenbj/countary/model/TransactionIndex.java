@@ -0,0 +1,570 @@
+/*
+ * Copyright (c) 2022. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * All the transactions of one account in memory, so that they can be searched as the user types without going to
+ * the database. Descriptions are indexed by the trigrams (runs of three characters) in them, and amounts and dates are
+ * kept in sorted arrays, so each criterion of a {@link TransactionQuery} finds its candidates without looking at
+ * every transaction. Unlike the full text index, a word matches anywhere in a description, not only at the start of
+ * a word.
+ * <p>
+ * The index follows the {@link DataChange}s of its account, whichever model makes them. Transactions created one at a time go on a short list
+ * that is searched in full, and are folded into the index once the list gets long. After a statement has been
+ * imported, or a {@link DataChange.Reset}, the index is stale and has to be loaded again.
+ */
+public class TransactionIndex implements Consumer<DataChange> {
+
+    static final int REBUILD_AFTER = 1024;
+    private static final int LOAD_PAGE = 5000;
+    private static final int GRAM = 3;
+    // rough sizes, for keeping to the limit: the transaction itself, its entries in the arrays, and per character of
+    // the description its two copies and its trigram
+    private static final int ROW_BYTES = 400;
+    private static final int CHAR_BYTES = 8;
+
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator
+            .comparing((Transaction transaction) -> transaction.postingDate().getTime())
+            .thenComparing(Transaction::id).reversed();
+
+    private final DataModel dataModel;
+    private final Account account;
+    private final long maxBytes;
+
+    // guarded by this
+    // as they were when the index was built, newest first
+    private Transaction[] rows;
+    private String[] descriptions;
+    private long[] postedOn;
+    // ascending, with the row each one belongs to
+    private long[] amounts;
+    private int[] amountRows;
+    private long[] absoluteAmounts;
+    private int[] absoluteAmountRows;
+    private long[] transactedOn;
+    private int[] transactedOnRows;
+    // the rows whose description contains each trigram, ascending
+    private Map<Long, int[]> grams;
+    private BitSet live;
+    private final Map<Long, Integer> positions = new HashMap<>();
+    // created since the index was built
+    private final List<Transaction> added = new ArrayList<>();
+    private long bytes;
+    private boolean stale;
+
+    private TransactionIndex(DataModel dataModel, Account account, long maxBytes) {
+        this.dataModel = dataModel;
+        this.account = account;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads all the transactions of the account and indexes them.
+     *
+     * @return null if they would take more than maxBytes
+     */
+    public static TransactionIndex load(DataModel dataModel, Account account, long maxBytes) throws SQLException {
+        TransactionIndex index = new TransactionIndex(dataModel, account, maxBytes);
+        // listen before reading, so that no change that comes in meanwhile goes unnoticed
+        dataModel.addChangeListener(index);
+        try {
+            List<Transaction> transactions = new ArrayList<>();
+            long bytes = 0;
+            TransactionPage page;
+            TransactionPage.Cursor from = null;
+            do {
+                page = dataModel.getTransactionPage(account, true, from, true, LOAD_PAGE);
+                for (Transaction transaction : page.transactions())
+                    bytes += estimate(transaction);
+                if (bytes > maxBytes) {
+                    index.close();
+                    return null;
+                }
+                transactions.addAll(page.transactions());
+                from = page.last();
+            } while (page.more());
+            synchronized (index) {
+                index.build(transactions);
+            }
+            return index;
+        } catch (SQLException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+    }
+
+    /**
+     * An index of the given transactions that does not follow any changes, e.g. for measuring it.
+     */
+    static TransactionIndex of(Account account, List<Transaction> transactions) {
+        TransactionIndex index = new TransactionIndex(null, account, Long.MAX_VALUE);
+        synchronized (index) {
+            index.build(transactions);
+        }
+        return index;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public synchronized int size() {
+        return rows == null ? 0 : live.cardinality() + added.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true if the index no longer knows all the transactions of the account, and has to be loaded again
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    public void close() {
+        if (dataModel != null)
+            dataModel.removeChangeListener(this);
+    }
+
+    /**
+     * The same page {@link DataModel#queryTransactionPage} would read, apart from how words are matched.
+     *
+     * @return null if the index is stale
+     */
+    public synchronized TransactionPage page(TransactionQuery query, boolean showCompleted,
+                                             TransactionPage.Cursor from, boolean older, int pageSize) {
+        if (stale || rows == null)
+            return null;
+        String[] words = words(query.description());
+        BitSet candidates = candidates(query, words);
+        List<Transaction> found = new ArrayList<>();
+        if (older) {
+            int start = from == null ? 0 : first(from, false);
+            for (int row = candidates.nextSetBit(start); row >= 0 && found.size() <= pageSize;
+                 row = candidates.nextSetBit(row + 1)) {
+                if (matches(rows[row], descriptions[row], words, showCompleted))
+                    found.add(rows[row]);
+            }
+        } else {
+            int end = from == null ? rows.length : first(from, true);
+            for (int row = candidates.previousSetBit(end - 1); row >= 0 && found.size() <= pageSize;
+                 row = candidates.previousSetBit(row - 1)) {
+                if (matches(rows[row], descriptions[row], words, showCompleted))
+                    found.add(rows[row]);
+            }
+        }
+        for (Transaction transaction : added) {
+            boolean beyond = from == null || (older ? compare(transaction, from) < 0 : compare(transaction, from) > 0);
+            if (beyond && matches(query, transaction)
+                    && matches(transaction, fold(transaction.description()), words, showCompleted))
+                found.add(transaction);
+        }
+        found.sort(older ? NEWEST_FIRST : NEWEST_FIRST.reversed());
+        boolean more = found.size() > pageSize;
+        List<Transaction> transactions = new ArrayList<>(found.subList(0, Math.min(pageSize, found.size())));
+        if (!older)
+            Collections.reverse(transactions);
+        return new TransactionPage(transactions, more);
+    }
+
+    @Override
+    public void accept(DataChange change) {
+        if (change instanceof DataChange.AllocationDeleted deleted) {
+            Transaction transaction = deleted.allocation().transaction();
+            if (transaction.account() != null && !ours(transaction.account()))
+                return;
+            // whether other allocations are left is only known to the database, which is read before taking the lock,
+            // so that searches do not wait on it
+            try {
+                allocationDeleted(transaction.id(), dataModel.getTransaction(transaction.id()));
+            } catch (SQLException e) {
+                markStale();
+            }
+        } else {
+            changed(change);
+        }
+    }
+
+    private synchronized void changed(DataChange change) {
+        if (change instanceof DataChange.Reset) {
+            stale = true;
+        } else if (change instanceof DataChange.TransactionsInserted inserted) {
+            if (ours(inserted.account()))
+                stale = true;
+        } else if (rows == null) {
+            // still loading, so what changed may or may not have been read
+            stale |= affectsUs(change);
+        } else if (change instanceof DataChange.TransactionCreated created) {
+            Transaction transaction = created.transaction();
+            if (ours(transaction.account()))
+                add(transaction);
+        } else if (change instanceof DataChange.TransactionDeleted deleted) {
+            remove(deleted.transaction().id());
+        } else if (change instanceof DataChange.TransactionsAllocated allocated) {
+            allocated.transactions().forEach(transaction -> update(transaction.id(),
+                    old -> copy(old, true, old.canDelete())));
+        } else if (change instanceof DataChange.AllocationCreated created) {
+            update(created.allocation().transaction().id(), old -> copy(old, old.allocated(), false));
+        }
+    }
+
+    /**
+     * @param transaction - As read after the allocation was deleted, or null if it is gone too
+     */
+    private synchronized void allocationDeleted(Long id, Transaction transaction) {
+        if (rows == null)
+            stale = true;
+        else if (transaction != null)
+            update(id, old -> transaction);
+    }
+
+    private synchronized void markStale() {
+        stale = true;
+    }
+
+    private boolean affectsUs(DataChange change) {
+        List<Transaction> transactions;
+        if (change instanceof DataChange.TransactionCreated created)
+            transactions = List.of(created.transaction());
+        else if (change instanceof DataChange.TransactionDeleted deleted)
+            transactions = List.of(deleted.transaction());
+        else if (change instanceof DataChange.TransactionsAllocated allocated)
+            transactions = allocated.transactions();
+        else if (change instanceof DataChange.AllocationCreated created)
+            transactions = List.of(created.allocation().transaction());
+        else if (change instanceof DataChange.AllocationDeleted deleted)
+            transactions = List.of(deleted.allocation().transaction());
+        else
+            return false;
+        return transactions.stream().anyMatch(transaction -> ours(transaction.account()));
+    }
+
+    private boolean ours(Account other) {
+        return other != null && account.id().equals(other.id());
+    }
+
+    private void add(Transaction transaction) {
+        if (positions.containsKey(transaction.id()) || added.contains(transaction))
+            return;
+        added.add(transaction);
+        bytes += estimate(transaction);
+        if (bytes > maxBytes)
+            stale = true;
+        else if (added.size() > REBUILD_AFTER)
+            rebuild();
+    }
+
+    private void remove(Long id) {
+        Integer row = positions.remove(id);
+        if (row != null)
+            live.clear(row);
+        else
+            added.removeIf(transaction -> transaction.id().equals(id));
+    }
+
+    private void update(Long id, UnaryOperator<Transaction> change) {
+        Integer row = positions.get(id);
+        if (row != null) {
+            rows[row] = change.apply(rows[row]);
+            return;
+        }
+        for (int i = 0; i < added.size(); i++) {
+            if (added.get(i).id().equals(id))
+                added.set(i, change.apply(added.get(i)));
+        }
+    }
+
+    private void rebuild() {
+        List<Transaction> transactions = new ArrayList<>(added);
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1))
+            transactions.add(rows[row]);
+        build(transactions);
+    }
+
+    private void build(List<Transaction> transactions) {
+        int size = transactions.size();
+        rows = transactions.toArray(new Transaction[0]);
+        Arrays.sort(rows, NEWEST_FIRST);
+        descriptions = new String[size];
+        postedOn = new long[size];
+        positions.clear();
+        added.clear();
+        bytes = 0;
+        Map<Long, Postings> postings = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            Transaction transaction = rows[row];
+            descriptions[row] = fold(transaction.description());
+            postedOn[row] = transaction.postingDate().getTime();
+            positions.put(transaction.id(), row);
+            bytes += estimate(transaction);
+            String description = descriptions[row];
+            for (int i = 0; i + GRAM <= description.length(); i++)
+                postings.computeIfAbsent(gram(description, i), gram -> new Postings()).add(row);
+        }
+        grams = new HashMap<>(postings.size() * 2);
+        postings.forEach((gram, rowList) -> grams.put(gram, rowList.toArray()));
+        int[] byAmount = sorted(size, row -> cents(rows[row].amount()));
+        amounts = keys(byAmount, row -> cents(rows[row].amount()));
+        amountRows = byAmount;
+        int[] byAbsoluteAmount = sorted(size, row -> Math.abs(cents(rows[row].amount())));
+        absoluteAmounts = keys(byAbsoluteAmount, row -> Math.abs(cents(rows[row].amount())));
+        absoluteAmountRows = byAbsoluteAmount;
+        int[] withDates = IntStream.range(0, size).filter(row -> rows[row].txdate() != null).boxed()
+                .sorted(Comparator.comparingLong(row -> rows[row].txdate().getTime()))
+                .mapToInt(Integer::intValue).toArray();
+        transactedOn = keys(withDates, row -> rows[row].txdate().getTime());
+        transactedOnRows = withDates;
+        live = new BitSet(size);
+        live.set(0, size);
+        if (bytes > maxBytes)
+            stale = true;
+    }
+
+    private BitSet candidates(TransactionQuery query, String[] words) {
+        BitSet candidates = (BitSet) live.clone();
+        if (query.minAmount() != null || query.maxAmount() != null) {
+            long min = query.minAmount() == null ? Long.MIN_VALUE : cents(query.minAmount(), RoundingMode.CEILING);
+            long max = query.maxAmount() == null ? Long.MAX_VALUE : cents(query.maxAmount(), RoundingMode.FLOOR);
+            candidates.and(query.absolute() ? between(absoluteAmounts, absoluteAmountRows, min, max)
+                    : between(amounts, amountRows, min, max));
+        }
+        if (query.from() != null || query.to() != null) {
+            long start = query.fromMillis();
+            long end = query.toMillis();
+            BitSet dates = between(transactedOn, transactedOnRows, start, end - 1);
+            // the rows are newest first, so those posted in the range are next to each other
+            dates.set(firstPostedBefore(end), firstPostedBefore(start));
+            candidates.and(dates);
+        }
+        for (String word : words) {
+            if (word.length() >= GRAM)
+                candidates.and(containing(word));
+        }
+        return candidates;
+    }
+
+    private BitSet between(long[] keys, int[] keyRows, long min, long max) {
+        BitSet result = new BitSet(rows.length);
+        for (int i = lowerBound(keys, min); i < keys.length && keys[i] <= max; i++)
+            result.set(keyRows[i]);
+        return result;
+    }
+
+    /**
+     * @return The rows that contain every trigram of the word, which is more than the rows that contain the word
+     */
+    private BitSet containing(String word) {
+        int[][] lists = new int[word.length() - GRAM + 1][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = grams.get(gram(word, i));
+            if (lists[i] == null)
+                return new BitSet();
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        int[] common = lists[0].clone();
+        int size = common.length;
+        for (int i = 1; i < lists.length && size > 0; i++)
+            size = intersect(common, size, lists[i]);
+        BitSet result = new BitSet(rows.length);
+        for (int i = 0; i < size; i++)
+            result.set(common[i]);
+        return result;
+    }
+
+    /**
+     * Keeps those of the first size rows of list that are also in other, at the start of list.
+     *
+     * @return How many were kept
+     */
+    private static int intersect(int[] list, int size, int[] other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < other.length; i++) {
+            while (j < other.length && other[j] < list[i])
+                j++;
+            if (j < other.length && other[j] == list[i])
+                list[kept++] = list[i];
+        }
+        return kept;
+    }
+
+    private static boolean matches(Transaction transaction, String description, String[] words,
+                                   boolean showCompleted) {
+        if (!showCompleted && Boolean.TRUE.equals(transaction.allocated()))
+            return false;
+        for (String word : words) {
+            if (!description.contains(word))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The amounts and dates of the query, for transactions that are not in the arrays.
+     */
+    private static boolean matches(TransactionQuery query, Transaction transaction) {
+        long amount = cents(transaction.amount());
+        if (query.absolute())
+            amount = Math.abs(amount);
+        if (query.minAmount() != null && amount < cents(query.minAmount(), RoundingMode.CEILING))
+            return false;
+        if (query.maxAmount() != null && amount > cents(query.maxAmount(), RoundingMode.FLOOR))
+            return false;
+        if (query.from() == null && query.to() == null)
+            return true;
+        long posted = transaction.postingDate().getTime();
+        if (posted >= query.fromMillis() && posted < query.toMillis())
+            return true;
+        return transaction.txdate() != null && transaction.txdate().getTime() >= query.fromMillis()
+                && transaction.txdate().getTime() < query.toMillis();
+    }
+
+    /**
+     * @param orEqual - Whether the row at the cursor counts as older
+     * @return The first row older than the cursor
+     */
+    private int first(TransactionPage.Cursor cursor, boolean orEqual) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(rows[middle], cursor);
+            if (comparison < 0 || orEqual && comparison == 0)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    private int firstPostedBefore(long time) {
+        int low = 0;
+        int high = postedOn.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (postedOn[middle] < time)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static int compare(Transaction transaction, TransactionPage.Cursor cursor) {
+        int comparison = Long.compare(transaction.postingDate().getTime(), cursor.postingDate());
+        return comparison != 0 ? comparison : Long.compare(transaction.id(), cursor.id());
+    }
+
+    private interface Key {
+        long of(int row);
+    }
+
+    private static int[] sorted(int size, Key key) {
+        return IntStream.range(0, size).boxed().sorted(Comparator.comparingLong(key::of))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    private static long[] keys(int[] sortedRows, Key key) {
+        long[] keys = new long[sortedRows.length];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = key.of(sortedRows[i]);
+        return keys;
+    }
+
+    private static long gram(String text, int at) {
+        return (long) text.charAt(at) << 32 | (long) text.charAt(at + 1) << 16 | text.charAt(at + 2);
+    }
+
+    private static String[] words(String description) {
+        if (description == null)
+            return new String[0];
+        // what would be full text query syntax means nothing here
+        String plain = fold(description).replace("*", " ").replace("\"", " ").trim();
+        return plain.isEmpty() ? new String[0] : plain.split("\\s+");
+    }
+
+    private static String fold(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long cents(BigDecimal amount) {
+        return cents(amount, RoundingMode.HALF_UP);
+    }
+
+    private static long cents(BigDecimal amount, RoundingMode rounding) {
+        return amount.movePointRight(2).setScale(0, rounding).longValue();
+    }
+
+    private static long estimate(Transaction transaction) {
+        return ROW_BYTES + (long) CHAR_BYTES * (transaction.description() == null ? 0 :
+                transaction.description().length());
+    }
+
+    private static Transaction copy(Transaction transaction, Boolean allocated, Boolean canDelete) {
+        return new Transaction(transaction.id(), transaction.account(), transaction.postingDate(),
+                transaction.txdate(), transaction.amount(), transaction.balance(), transaction.description(),
+                transaction.hash(), allocated, transaction.manual(), canDelete);
+    }
+
+    private static class Postings {
+        private int[] rows = new int[4];
+        private int size;
+
+        private void add(int row) {
+            // a trigram may occur more than once in a description
+            if (size > 0 && rows[size - 1] == row)
+                return;
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, 2 * size);
+            rows[size++] = row;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
@@ -20,16 +20,44 @@ import hoogenbj.countary.app.KeyValue;
 import hoogenbj.countary.app.UserInterface;
 
 import static hoogenbj.countary.util.DbUtils.MAX_TRANSACTION_ROWS;
+import static hoogenbj.countary.util.DbUtils.TRANSACTION_PAGE_SIZE;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 
+/**
+ * Keeps a window of at most maxRows transactions of the current account, newest first, and slides it a page at a
+ * time as the user scrolls. Pages that fall out of the window are dropped and read again when scrolled back to, so
+ * memory use does not grow with the length of the account's history.
+ * <p>
+ * Given room for it, searches are answered from a {@link TransactionIndex} of the current account, which is loaded in
+ * the background. Until it is ready, or if the account does not fit, they go to the database.
+ */
 public class TransactionModel {
+    private static final System.Logger LOG = System.getLogger(TransactionModel.class.getName());
+
     private final Consumer<List<Transaction>> refreshTransactions;
     private final Consumer<Boolean> searchClearable;
+    private final int pageSize;
+    private final int maxRows;
+    private final long indexBytes;
+    private final List<Transaction> window = new ArrayList<>();
+    private boolean moreOlder;
+    private boolean moreNewer;
+
+    /**
+     * What changed when the window moved.
+     *
+     * @param added   - Transactions that came into the window
+     * @param dropped - Transactions that fell out of it at the other end
+     */
+    public record Slide(List<Transaction> added, List<Transaction> dropped) {
+    }
 
     public Account getAccount() {
         return account;
@@ -52,88 +80,191 @@ public class TransactionModel {
     }
 
     private DataModel dataModel;
-    private SearchChoice currentSearch;
-    private String currentCriteria;
+    private TransactionQuery currentQuery;
 
-    private Account account;
+    private volatile Account account;
+    private volatile TransactionIndex index;
 
     private boolean showCompleted;
 
-    public TransactionModel(DataModel dataModel,
-                            Consumer<List<Transaction>> refreshTransactions, Consumer<Boolean> searchClearable) {
+    /**
+     * @param indexBytes - The most memory the search index of an account may take, or 0 to always search the database
+     */
+    public TransactionModel(DataModel dataModel, Consumer<List<Transaction>> refreshTransactions,
+                            Consumer<Boolean> searchClearable, long indexBytes) {
+        this(dataModel, refreshTransactions, searchClearable, TRANSACTION_PAGE_SIZE, MAX_TRANSACTION_ROWS, indexBytes);
+    }
+
+    TransactionModel(DataModel dataModel, Consumer<List<Transaction>> refreshTransactions,
+                     Consumer<Boolean> searchClearable, int pageSize, int maxRows) {
+        this(dataModel, refreshTransactions, searchClearable, pageSize, maxRows, 0);
+    }
+
+    TransactionModel(DataModel dataModel, Consumer<List<Transaction>> refreshTransactions,
+                     Consumer<Boolean> searchClearable, int pageSize, int maxRows, long indexBytes) {
         this.dataModel = dataModel;
         this.refreshTransactions = refreshTransactions;
         this.searchClearable = searchClearable;
+        this.pageSize = pageSize;
+        this.maxRows = maxRows;
+        this.indexBytes = indexBytes;
     }
 
+    /**
+     * See {@link TransactionQuery#amounts(String)}. Text that is not an amount yet, e.g. while it is being typed,
+     * leaves the transactions as they are.
+     */
     public void searchByAmount(String criteria) {
-        currentSearch = SearchChoice.Amount;
-        currentCriteria = String.format("'\"%s\"'", criteria);
-        doSearch();
+        TransactionQuery query = TransactionQuery.amounts(criteria);
+        if (query != null)
+            search(query);
     }
 
-    public void searchByDate(LocalDate postedDate) {
-        currentSearch = SearchChoice.PostedDate;
-        currentCriteria = String.valueOf(postedDate.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
-        doSearch();
+    public void searchByDate(LocalDate date) {
+        search(TransactionQuery.on(date));
     }
 
     public void searchByDescription(String criteria) {
-        currentSearch = SearchChoice.Description;
-        if (!criteria.contains("*"))
-            // Ensures searching for partial word will also work
-            currentCriteria = String.format("\"%s*\"", criteria);
-        else
-            currentCriteria = String.format("\"%s\"", criteria);
+        search(TransactionQuery.description(criteria));
+    }
+
+    public void search(TransactionQuery query) {
+        currentQuery = query == null || query.isAll() ? null : query;
         doSearch();
     }
 
     private void doSearch() {
-        if (currentSearch == null) {
-            try {
-                List<Transaction> transactions = dataModel.getTransactions(account, showCompleted);
-                refreshTransactions.accept(transactions);
-                searchClearable.accept(false);
-            } catch (SQLException e) {
-                throw new RuntimeException("Unable to search transactions", e);
+        try {
+            TransactionPage page = readPage(null, true);
+            window.clear();
+            window.addAll(page.transactions());
+            moreOlder = page.more();
+            moreNewer = false;
+            refreshTransactions.accept(List.copyOf(window));
+            searchClearable.accept(currentQuery != null);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to search transactions", e);
+        }
+    }
+
+    /**
+     * Reads the page after the oldest transaction in the window.
+     *
+     * @return What changed, or null if there is nothing older
+     */
+    public Slide loadOlder() {
+        if (!moreOlder || window.isEmpty())
+            return null;
+        try {
+            TransactionPage page = readPage(TransactionPage.Cursor.of(window.get(window.size() - 1)), true);
+            moreOlder = page.more();
+            window.addAll(page.transactions());
+            List<Transaction> dropped = new ArrayList<>();
+            if (window.size() > maxRows) {
+                List<Transaction> newest = window.subList(0, window.size() - maxRows);
+                dropped.addAll(newest);
+                newest.clear();
+                moreNewer = true;
             }
-        } else {
-            if (currentSearch.equals(SearchChoice.PostedDate)) {
-                List<Transaction> transactions;
-                try {
-                    transactions = dataModel.searchTransactions(account, showCompleted, SearchChoice.PostedDate.getKeyValue().value(), currentCriteria);
-                    transactions.addAll(dataModel.searchTransactions(account, showCompleted, SearchChoice.TransactionDate.getKeyValue().value(), currentCriteria));
-                    refreshTransactions.accept(transactions);
-                    searchClearable.accept(true);
-                } catch (SQLException e) {
-                    throw new RuntimeException("Unable to search transactions", e);
-                }
-            } else {
-                String what = currentSearch.getKeyValue().value();
-                try {
-                    List<Transaction> transactions = dataModel.searchTransactions(account, showCompleted, what, currentCriteria);
-                    refreshTransactions.accept(transactions);
-                    searchClearable.accept(true);
-                } catch (SQLException e) {
-                    throw new RuntimeException("Unable to search transactions", e);
-                }
+            return new Slide(page.transactions(), dropped);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read older transactions", e);
+        }
+    }
+
+    /**
+     * Reads the page before the newest transaction in the window, i.e. one that was dropped earlier.
+     *
+     * @return What changed, or null if there is nothing newer
+     */
+    public Slide loadNewer() {
+        if (!moreNewer || window.isEmpty())
+            return null;
+        try {
+            TransactionPage page = readPage(TransactionPage.Cursor.of(window.get(0)), false);
+            moreNewer = page.more();
+            window.addAll(0, page.transactions());
+            List<Transaction> dropped = new ArrayList<>();
+            if (window.size() > maxRows) {
+                List<Transaction> oldest = window.subList(maxRows, window.size());
+                dropped.addAll(oldest);
+                oldest.clear();
+                moreOlder = true;
             }
+            return new Slide(page.transactions(), dropped);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read newer transactions", e);
         }
     }
 
+    private TransactionPage readPage(TransactionPage.Cursor from, boolean older) throws SQLException {
+        if (currentQuery == null)
+            return dataModel.getTransactionPage(account, showCompleted, from, older, pageSize);
+        TransactionIndex current = index;
+        if (current != null) {
+            TransactionPage page = current.page(currentQuery, showCompleted, from, older, pageSize);
+            if (page != null)
+                return page;
+            // e.g. a statement has been imported since it was loaded
+            loadIndex();
+        }
+        return dataModel.queryTransactionPage(account, showCompleted, currentQuery, from, older, pageSize);
+    }
+
     public void setAccount(Account account) {
         this.account = account;
+        loadIndex();
         doSearch();
     }
 
+    /**
+     * @return The search index of the current account, or null if there is none (yet)
+     */
+    public TransactionIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Drops the index of the account, if any, and starts loading a new one.
+     *
+     * @return Done when the index is ready or turned out not to fit
+     */
+    CompletableFuture<Void> loadIndex() {
+        TransactionIndex old = index;
+        index = null;
+        if (old != null)
+            old.close();
+        Account forAccount = account;
+        if (indexBytes <= 0 || forAccount == null)
+            return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return TransactionIndex.load(dataModel, forAccount, indexBytes);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }).handle((loaded, e) -> {
+            if (e != null)
+                LOG.log(System.Logger.Level.ERROR, "Could not load the search index of " + forAccount.name(),
+                        e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            if (loaded != null) {
+                if (forAccount.equals(account) && index == null)
+                    index = loaded;
+                else
+                    loaded.close();
+            }
+            // without an index the database is searched instead
+            return null;
+        });
+    }
+
     public void setShowCompleted(boolean showCompleted) {
         this.showCompleted = showCompleted;
         doSearch();
     }
 
     public void clearSearch() {
-        currentSearch = null;
-        currentCriteria = null;
+        currentQuery = null;
         doSearch();
     }
 
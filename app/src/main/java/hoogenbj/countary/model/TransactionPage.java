@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.util.List;
+
+/**
+ * One page of an account's transactions, newest first.
+ *
+ * @param transactions - The transactions on this page
+ * @param more         - True if there is at least one more page in the direction this page was read
+ */
+public record TransactionPage(List<Transaction> transactions, boolean more) {
+
+    /**
+     * A position in the list of transactions, ordered by posting date and then id. Pages are read relative to a
+     * cursor instead of an offset, so reading a page deep into the history costs the same as reading the first.
+     */
+    public record Cursor(long postingDate, long id) {
+        public static Cursor of(Transaction transaction) {
+            return new Cursor(transaction.postingDate().getTime(), transaction.id());
+        }
+    }
+
+    public Cursor first() {
+        return transactions.isEmpty() ? null : Cursor.of(transactions.get(0));
+    }
+
+    public Cursor last() {
+        return transactions.isEmpty() ? null : Cursor.of(transactions.get(transactions.size() - 1));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2022. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+
+/**
+ * What to look for in the transactions of an account. All the criteria that are set have to match, and
+ * {@link DataModel#queryTransactionPage} turns them into a single query: the amounts and dates are compared as numbers
+ * on their own indexes, and only the description goes through the full text index.
+ *
+ * @param description - Words the description must contain, the last one possibly only in part
+ * @param minAmount   - The smallest amount, inclusive, or null for no lower bound
+ * @param maxAmount   - The largest amount, inclusive, or null for no upper bound
+ * @param absolute    - Compare the amounts without their sign, so that 500 finds both -500.00 and 500.00
+ * @param from        - The first day on which the transaction was posted or transacted, or null
+ * @param to          - The last day on which the transaction was posted or transacted, or null
+ */
+public record TransactionQuery(String description, BigDecimal minAmount, BigDecimal maxAmount, boolean absolute,
+                               LocalDate from, LocalDate to) {
+
+    public static final TransactionQuery ALL = new TransactionQuery(null, null, null, false, null, null);
+
+    private static final String RANGE = "..";
+
+    public static TransactionQuery description(String words) {
+        return ALL.withDescription(words);
+    }
+
+    public static TransactionQuery on(LocalDate day) {
+        return ALL.withDates(day, day);
+    }
+
+    public static TransactionQuery in(YearMonth month) {
+        return ALL.withDates(month.atDay(1), month.atEndOfMonth());
+    }
+
+    /**
+     * Reads the amounts to look for, e.g. "500" for 500.00 either way, "-500" for a debit of 500.00 only,
+     * "500..600" for anything from 500.00 to 600.00 either way, "..-1000" for debits of 1000.00 or more, and "500.."
+     * for anything of at least 500.00. Amounts are compared without their sign, unless a sign is given.
+     *
+     * @return null if the text is not (yet) a valid amount or range
+     */
+    public static TransactionQuery amounts(String text) {
+        return ALL.withAmounts(text);
+    }
+
+    public TransactionQuery withDescription(String words) {
+        return new TransactionQuery(words == null || words.isBlank() ? null : words.trim(), minAmount, maxAmount,
+                absolute, from, to);
+    }
+
+    /**
+     * @return null if the text is not (yet) a valid amount or range, see {@link #amounts(String)}
+     */
+    public TransactionQuery withAmounts(String text) {
+        String trimmed = text.trim();
+        int range = trimmed.indexOf(RANGE);
+        String lower = range < 0 ? trimmed : trimmed.substring(0, range).trim();
+        String upper = range < 0 ? trimmed : trimmed.substring(range + RANGE.length()).trim();
+        if (lower.isEmpty() && upper.isEmpty())
+            return null;
+        BigDecimal min;
+        BigDecimal max;
+        try {
+            // without the thousands separators of formatted amounts
+            min = lower.isEmpty() ? null : new BigDecimal(lower.replace(",", ""));
+            max = upper.isEmpty() ? null : new BigDecimal(upper.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        boolean signed = signed(lower) || signed(upper);
+        if (min != null && max != null && min.compareTo(max) > 0) {
+            BigDecimal swap = min;
+            min = max;
+            max = swap;
+        }
+        return new TransactionQuery(description, min, max, !signed, from, to);
+    }
+
+    public TransactionQuery withDates(LocalDate from, LocalDate to) {
+        return new TransactionQuery(description, minAmount, maxAmount, absolute, from, to);
+    }
+
+    /**
+     * @return The start of the first day, or the earliest time there is if there is no first day
+     */
+    public long fromMillis() {
+        return from == null ? Long.MIN_VALUE : from.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return The start of the day after the last day, or the latest time there is if there is no last day
+     */
+    public long toMillis() {
+        return to == null ? Long.MAX_VALUE :
+                to.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public boolean isAll() {
+        return equals(ALL);
+    }
+
+    private static boolean signed(String amount) {
+        return amount.startsWith("-") || amount.startsWith("+");
+    }
+}
@@ -23,44 +23,50 @@ import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URI;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-
-import static hoogenbj.countary.util.ParseUtils.stripQuotesAndWhiteSpace;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
 
 public class BankZeroStatementHistoryParser implements StatementParser {
     @Override
-    public ParsedStatement parse(URI uri) throws IOException, StatementParseException {
-        Reader reader = new FileReader(new File(uri));
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    public int sniff(String head) {
+        return head.startsWith("Transaction Id,Date,Day,Time,") ? 100 : 0;
+    }
+
+    @Override
+    public void parse(URI uri, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) throws IOException, StatementParseException {
+        try (Reader reader = new FileReader(new File(uri))) {
+            parse(uri, reader, parsedStatement, sink);
+        }
+    }
+
+    private void parse(URI uri, Reader reader, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) {
         final int[] lineCount = {0};
         final int[] fieldCount = {0};
-        DsvParser<ParsedStatement.Line> parser = new DsvParser<>(reader, fields -> {
+        DsvParser<Void> parser = new DsvParser<>(reader, fields -> {
             // skip header line. Has to be done here also, otherwise parsing will fail
             if (lineCount[0] == 0) {
                 return null;
             }
             ParsedStatement.Line line = new ParsedStatement.Line();
-            Calendar postingDate = Calendar.getInstance();
-            String complete=null;
+            String date = fields[1];
+            String time = fields[3];
+            LocalDateTime postingDate;
             try {
-                String date = fields[1];
-                String time = fields[3];
-                complete = date + " " + time;
-                postingDate.setTime(dateFormat.parse(complete));
-            } catch (ParseException e) {
-                throw new RuntimeException("Unable to parse date from: " + complete, e);
+                postingDate = ParseUtils.parseDate(date, ParseUtils.DASHED_DATE)
+                        .atTime(ParseUtils.parseTime(time, ParseUtils.TIME));
+            } catch (DateTimeException e) {
+                throw new RuntimeException("Unable to parse date from: " + date + " " + time, e);
             }
             String description = fields[4] + "," + fields[5] + "," + fields[6];
-            BigDecimal amount = ParseUtils.parseBigDecimal(stripQuotesAndWhiteSpace(fields[8]));
-            BigDecimal balance = ParseUtils.parseBigDecimal(stripQuotesAndWhiteSpace(fields[9]));
+            BigDecimal amount = ParseUtils.parseAmount(fields[8]);
+            BigDecimal balance = ParseUtils.parseAmount(fields[9]);
             line.setPostedOn(postingDate);
             line.setDescription(description);
             line.setBalance(balance);
             line.setAmount(amount);
-            return line;
+            sink.accept(line);
+            return null;
         });
         parser.setFieldCallback(field -> {
             fieldCount[0]++;
@@ -74,12 +80,10 @@ public class BankZeroStatementHistoryParser implements StatementParser {
             }
             return true;
         });
-        ParsedStatement parsedStatement = new ParsedStatement();
         try {
-            parsedStatement.setLines(parser.readAll());
+            parser.readAll();
         } catch (Exception e) {
             throw new StatementParseException(uri.getPath(), lineCount[0] + 1, fieldCount[0] % 10, e);
         }
-        return parsedStatement;
     }
 }
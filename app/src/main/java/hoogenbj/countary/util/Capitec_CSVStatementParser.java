@@ -24,23 +24,30 @@ import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URI;
-import java.time.LocalDate;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-
-import static hoogenbj.countary.util.ParseUtils.stripQuotesAndWhiteSpace;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
 
 public class Capitec_CSVStatementParser implements StatementParser {
     @Override
-    public ParsedStatement parse(URI uri) throws IOException, StatementParseException {
-        Reader reader = new FileReader(new File(uri));
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    public int sniff(String head) {
+        // Excel's separator hint, followed by the column headings
+        String headings = head.startsWith("sep=") ? head.substring(head.indexOf('\n') + 1) : head;
+        if (headings.startsWith("Sequence Number,Account,Posting Date,Transaction Date,"))
+            return 100;
+        return head.startsWith("sep=,") ? 10 : 0;
+    }
+
+    @Override
+    public void parse(URI uri, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) throws IOException, StatementParseException {
+        try (Reader reader = new FileReader(new File(uri))) {
+            parse(uri, reader, parsedStatement, sink);
+        }
+    }
+
+    private void parse(URI uri, Reader reader, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) {
         final int[] lineCount = {0};
         final int[] fieldCount = {0};
-        final String[] accountNumber = {null};
-        DsvParser<ParsedStatement.Line> parser = new DsvParser<>(reader, fields -> {
+        DsvParser<Void> parser = new DsvParser<>(reader, fields -> {
             // skip first two lines
             if (lineCount[0] <= 1) {
                 return null;
@@ -49,35 +56,36 @@ public class Capitec_CSVStatementParser implements StatementParser {
             fieldCount[0] += 1;
             int sequenceNumber = Integer.parseInt(fields[0]);
             fieldCount[0] += 1;
-            if (accountNumber[0] == null) {
-                accountNumber[0] = fields[1];
+            if (parsedStatement.getAccountNumber() == null) {
+                parsedStatement.setAccountNumber(fields[1]);
             }
             fieldCount[0] += 1;
-            Calendar postingDate = GregorianCalendar.from(dateFormat.parse(fields[2], LocalDate::from).atStartOfDay(ZoneId.systemDefault()));
+            LocalDateTime postingDate = ParseUtils.parseDate(fields[2], ParseUtils.DAY_FIRST_DATE).atStartOfDay();
             fieldCount[0] += 1;
-            Calendar transactionDate = GregorianCalendar.from(dateFormat.parse(fields[3], LocalDate::from).atStartOfDay(ZoneId.systemDefault()));
+            LocalDateTime transactionDate = ParseUtils.parseDate(fields[3], ParseUtils.DAY_FIRST_DATE).atStartOfDay();
             fieldCount[0] += 1;
             String description = fields[4];
             if (description == null || description.isEmpty()) {
                 description = fields[5];
             }
             fieldCount[0] += 4;
-            BigDecimal debitAmount = ParseUtils.parseBigDecimal(stripQuotesAndWhiteSpace(fields[8]));
+            BigDecimal debitAmount = ParseUtils.parseAmount(fields[8]);
             fieldCount[0] += 1;
-            BigDecimal creditAmount = ParseUtils.parseBigDecimal(stripQuotesAndWhiteSpace(fields[9]));
+            BigDecimal creditAmount = ParseUtils.parseAmount(fields[9]);
             BigDecimal amount;
             if (debitAmount != null)
                 amount = debitAmount.negate();
             else
                 amount = creditAmount;
             fieldCount[0] += 1;
-            BigDecimal balance = ParseUtils.parseBigDecimal(stripQuotesAndWhiteSpace(fields[10]));
+            BigDecimal balance = ParseUtils.parseAmount(fields[10]);
             line.setPostedOn(postingDate);
             line.setTransactionDate(transactionDate);
             line.setDescription(description);
             line.setBalance(balance);
             line.setAmount(amount);
-            return line;
+            sink.accept(line);
+            return null;
         });
         parser.setFieldCallback(field -> {
             fieldCount[0]++;
@@ -88,13 +96,10 @@ public class Capitec_CSVStatementParser implements StatementParser {
             // skip first two lines
             return lineCount[0] > 2;
         });
-        ParsedStatement parsedStatement = new ParsedStatement();
         try {
-            parsedStatement.setLines(parser.readAll());
-            parsedStatement.setAccountNumber(accountNumber[0]);
+            parser.readAll();
         } catch (Exception e) {
             throw new StatementParseException(uri.getPath(), lineCount[0] + 1, fieldCount[0] % 11, e);
         }
-        return parsedStatement;
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * The fields of one line of CSV, found in a single pass over the line without copying it. Only the bounds of the
+ * fields are kept; a field becomes a String only when asked for, and an amount not even then. A field in double
+ * quotes may contain commas and doubled double quotes. A quoted field cannot span lines.
+ * <p>
+ * One instance is meant to be reused for every line of a statement, so it is not thread-safe.
+ */
+public class CsvFields {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private CharSequence line;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private int size;
+
+    /**
+     * @param line - Any CharSequence, e.g. a String or a window on a CharBuffer
+     */
+    public CsvFields scan(CharSequence line) {
+        this.line = line;
+        size = 0;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            if (size == starts.length)
+                grow();
+            int quote = i;
+            while (quote < length && line.charAt(quote) == ' ')
+                quote++;
+            if (quote < length && line.charAt(quote) == QUOTE) {
+                // up to the closing quote, where a doubled quote stands for one
+                int start = quote + 1;
+                int end = start;
+                boolean doubled = false;
+                while (end < length) {
+                    if (line.charAt(end) == QUOTE) {
+                        if (end + 1 < length && line.charAt(end + 1) == QUOTE) {
+                            doubled = true;
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                add(start, end, doubled);
+                i = end + 1;
+                while (i < length && line.charAt(i) != SEPARATOR)
+                    i++;
+            } else {
+                int end = i;
+                while (end < length && line.charAt(end) != SEPARATOR)
+                    end++;
+                add(i, end, false);
+                i = end;
+            }
+            if (i >= length)
+                return this;
+            // past the separator
+            i++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The field as it is in the line, without its quotes
+     */
+    public String get(int field) {
+        check(field);
+        String value = line.subSequence(starts[field], ends[field]).toString();
+        return escaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    public String trimmed(int field) {
+        return get(field).trim();
+    }
+
+    /**
+     * Reads the amount straight from the line, see {@link ParseUtils#parseAmount(CharSequence, int, int)}.
+     *
+     * @return null if the field is empty
+     */
+    public BigDecimal decimal(int field) {
+        check(field);
+        return ParseUtils.parseAmount(line, starts[field], ends[field]);
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= size)
+            throw new IndexOutOfBoundsException(String.format("Field %d of a line with %d fields", field, size));
+    }
+
+    private void add(int start, int end, boolean doubled) {
+        starts[size] = start;
+        ends[size] = end;
+        escaped[size] = doubled;
+        size++;
+    }
+
+    private void grow() {
+        starts = Arrays.copyOf(starts, 2 * starts.length);
+        ends = Arrays.copyOf(ends, 2 * ends.length);
+        escaped = Arrays.copyOf(escaped, 2 * escaped.length);
+    }
+}
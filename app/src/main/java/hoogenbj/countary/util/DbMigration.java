@@ -24,21 +24,49 @@ public class DbMigration {
     }
 
     public void migrate(int to) {
-        if (to == 2)
-            migrateTo2();
-        else
-            userInterface.showWarning(String.format("Migration to version %d not supported by this version of the software", to));
+        switch (to) {
+            case 2 -> migrateTo("migrate_to2.sql", false);
+            case 3 -> migrateTo("migrate_to3.sql", true);
+            case 4 -> migrateTo("migrate_to4.sql", true);
+            case 5 -> migrateTo("migrate_to5.sql", true);
+            case 6 -> migrateTo("migrate_to6.sql", model::fingerprintTransactions);
+            case 7 -> migrateTo("migrate_to7.sql", true);
+            case 8 -> migrateTo("migrate_to8.sql", true);
+            default -> userInterface.showWarning(
+                    String.format("Migration to version %d not supported by this version of the software", to));
+        }
+    }
+
+    private interface Step {
+        void run() throws SQLException;
+    }
+
+    private void migrateTo(String script, boolean enforceForeignKeys) {
+        migrate(() -> model.executeStatements(readScript(script), enforceForeignKeys));
     }
 
-    private void migrateTo2() {
+    /**
+     * Runs the script and then what cannot be done in SQL, all in one transaction.
+     */
+    private void migrateTo(String script, Step then) {
+        migrate(() -> model.doInTransaction(connection -> {
+            model.executeStatements(readScript(script));
+            then.run();
+        }));
+    }
+
+    private void migrate(Step step) {
         try {
-            List<String> statements = IOUtils.readLines(Objects
-                    .requireNonNull(DbUtils.class.getResourceAsStream("migrate_to2.sql")), (Charset) null);
-            model.executeStatements(statements, false);
+            step.run();
             stringConsumer.accept("Migration finished.");
             stringConsumer.accept("You can now restart the application.");
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static List<String> readScript(String script) {
+        return IOUtils.readLines(Objects
+                .requireNonNull(DbUtils.class.getResourceAsStream(script)), (Charset) null);
+    }
 }
@@ -33,6 +33,7 @@ import static org.sqlite.SQLiteErrorCode.*;
 public class DbUtils {
 
     public static Integer MAX_TRANSACTION_ROWS = 2000;
+    public static Integer TRANSACTION_PAGE_SIZE = 200;
 
     public static boolean dbFileNotFound(String dbUrl) {
         String[] parts = dbUrl.split(":");
@@ -16,46 +16,54 @@
 
 package hoogenbj.countary.util;
 
-import hoogenbj.countary.util.ofx2.Header;
 import hoogenbj.countary.util.ofx2.Parser;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import hoogenbj.countary.util.ofx2.StatementTransaction;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class OFX2StatementParser implements StatementParser {
+    private static final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+    static {
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public int sniff(String head) {
+        if (head.startsWith("<?OFX"))
+            return 100;
+        return head.startsWith("<?xml") && head.contains("<?OFX") ? 100 : 0;
+    }
+
     @Override
-    public ParsedStatement parse(URI uri) throws IOException, StatementParseException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(uri.toString());
-            NodeList nodes = document.getChildNodes();
-            Header header = null;
-            Node body = null;
-            Node unknown = null;
-            for (int i = 0; i< nodes.getLength(); i++) {
-                if (nodes.item(i).getNodeType() == Node.PROCESSING_INSTRUCTION_NODE)
-                    header = Parser.parseHeader(nodes.item(i), uri.toString());
-                else if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE)
-                    body = nodes.item(i);
-                else
-                    unknown = nodes.item(i);
+    public void parse(URI uri, ParsedStatement statement, Consumer<ParsedStatement.Line> sink) throws IOException, StatementParseException {
+        String path = uri.toString();
+        List<StatementTransaction> transactions = new ArrayList<>();
+        List<ParsedStatement.Line> lines = new ArrayList<>();
+        try (InputStream in = uri.toURL().openStream()) {
+            XMLStreamReader reader = factory.createXMLStreamReader(path, in);
+            try {
+                // The balances run back from the ledger balance, which comes after the transactions, so the lines are
+                // only complete at the end of the statement
+                Parser.parse(reader, statement, path, transactions::add, balance -> {
+                    lines.clear();
+                    lines.addAll(Parser.toLines(transactions, balance, path));
+                    transactions.clear();
+                });
+            } finally {
+                reader.close();
             }
-            if (Parser.validate(header, body, uri.toString()) && unknown == null)
-                return Parser.parseBody(body, uri.toString());
-            else if (unknown != null)
-                throw new StatementParseException("Unexpected content "+unknown, uri.toString());
-            else
-                throw new StatementParseException("Statement does not appear to be valid. Wrong version perhaps", uri.toString());
-        } catch (ParserConfigurationException | SAXException e) {
-            throw new StatementParseException(uri.toString(), e);
+        } catch (XMLStreamException e) {
+            throw new StatementParseException(path, e);
         }
+        lines.forEach(sink);
     }
 }
@@ -16,18 +16,17 @@
 
 package hoogenbj.countary.util;
 
-import hoogenbj.countary.util.ofx.*;
+import hoogenbj.countary.util.ofx.Tokenizer;
 import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,10 +39,11 @@ public class OFXStatementParser implements StatementParser {
     private static final Set<String> ofInterest = Set.of(BANKACCTFROM, BANKTRANLIST, LEDGERBAL);
     public static final String BALAMT = "BALAMT";
     public static final String ACCTID = "ACCTID";
+    public static final String STMTTRN = "STMTTRN";
 
     public static class OFXTransaction {
         public String description;
-        public Calendar postingDate;
+        public LocalDateTime postingDate;
         public BigDecimal amount;
         public BigDecimal balance;
 
@@ -63,128 +63,122 @@ public class OFXStatementParser implements StatementParser {
     }
 
     @Override
-    public ParsedStatement parse(URI uri) throws IOException, StatementParseException {
-        List<String> lines = Files.readAllLines(Path.of(uri));
-        ListIterator<String> iterator = lines.listIterator();
-        // Maybe we'll need headers in future
-        List<Header> headers = new ArrayList<>();
-        Matcher header;
-        do {
-            String line = iterator.next();
-            header = Tags.HEADER_REGEX.matcher(line);
-            if (header.matches())
-                headers.add(new Header(header.group(1), header.group(2)));
-        } while (header.matches());
-        // There are some complex tags (i.e. tags containing tags) we are interested in
-        Map<String, ComplexTag> tags = new HashMap<>();
-        Tag nextTag = new ComplexTag(null, "ROOT");
-        int count = 0;
-        try {
-            while (iterator.hasNext() && nextTag != null) {
-                String line = iterator.next();
-                if (!line.isBlank()) {
-                    nextTag = nextTag.processLine(line);
-                    if (nextTag != null && ofInterest.contains(nextTag.getName()))
-                        tags.put(nextTag.getName(), (ComplexTag) nextTag);
+    public int sniff(String head) {
+        return head.startsWith("OFXHEADER:") ? 100 : 0;
+    }
+
+    @Override
+    public void parse(URI uri, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) throws IOException, StatementParseException {
+        Tokenizer tokenizer = Tokenizer.open(Path.of(uri));
+        // The running balance of the transactions is worked out from the ledger balance, which only comes after them.
+        // So the statement is tokenized twice: first for the account and the ledger balance, skipping the
+        // transactions, then for the transactions only.
+        Set<String> found = new HashSet<>();
+        final BigDecimal[] runningBalance = {null};
+        tokenizer.tokenize(ofInterest, new Tokenizer.Handler() {
+            private String aggregate;
+
+            @Override
+            public boolean start(String name) {
+                if (ofInterest.contains(name)) {
+                    aggregate = name;
+                    found.add(name);
                 }
-                count++;
+                return !name.equals(BANKTRANLIST);
             }
-        } catch (Exception e) {
-            throw new StatementParseException(uri.getPath(), count + 1, e);
-        }
-        if (!tags.containsKey(BANKACCTFROM))
+
+            @Override
+            public void value(String name, String value) {
+                if (aggregate.equals(BANKACCTFROM) && name.equals(ACCTID))
+                    parsedStatement.setAccountNumber(value);
+                else if (aggregate.equals(LEDGERBAL) && name.equals(BALAMT))
+                    runningBalance[0] = ParseUtils.parseBigDecimal(value);
+            }
+
+            @Override
+            public void end(String name) {
+            }
+        });
+        if (!found.contains(BANKACCTFROM))
             throw new RuntimeException(String.format("Statement at %s has no %s tag", uri.getPath(), BANKACCTFROM));
-        if (!tags.containsKey(BANKTRANLIST))
+        if (!found.contains(BANKTRANLIST))
             throw new RuntimeException(String.format("Statement at %s has no %s tag", uri.getPath(), BANKTRANLIST));
-        if (!tags.containsKey(LEDGERBAL))
+        if (!found.contains(LEDGERBAL))
             throw new RuntimeException(String.format("Statement at %s has no %s tag", uri.getPath(), LEDGERBAL));
-        ParsedStatement parsedStatement = new ParsedStatement();
-        List<ParsedStatement.Line> statementLines = new ArrayList<>();
-        parsedStatement.setLines(statementLines);
-        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        DateFormat txDateFormat = new SimpleDateFormat("dd MMM yyyy");
-        tags.get(BANKACCTFROM).getChildren().forEach(tag -> {
-            if (tag instanceof SimpleTag simpleTag) {
-                if (tag.getName().equals(ACCTID)) {
-                    parsedStatement.setAccountNumber(simpleTag.getContent());
-                }
-            }
-        });
         if (parsedStatement.getAccountNumber() == null || parsedStatement.getAccountNumber().isEmpty())
             throw new RuntimeException(String.format("Expected to find account number in tag %s of " +
                     "statement at %s but found nothing", ACCTID, uri.getPath()));
-        final BigDecimal[] runningBalance = {null};
-        tags.get(LEDGERBAL).getChildren().forEach(tag -> {
-            if (tag instanceof SimpleTag simpleTag) {
-                if (tag.getName().equals(BALAMT)) {
-                    runningBalance[0] = ParseUtils.parseBigDecimal(simpleTag.getContent());
-                }
-            }
-        });
         if (runningBalance[0] == null)
             throw new RuntimeException(String.format("Unable to get %s from %s tag in statement at %s", BALAMT,
                     LEDGERBAL, uri.getPath()));
-        final int[] transactionCount = {0};
-        tags.get(BANKTRANLIST).getChildren().forEach(t -> {
-            transactionCount[0] = transactionCount[0] + 1;
-            if (t instanceof ComplexTag complexTag) {
-                OFXTransaction transaction = new OFXTransaction();
-                complexTag.getChildren().forEach(c -> {
-                    if (c instanceof SimpleTag simpleTag) {
-                        switch (c.getName()) {
-                            case "DTPOSTED" -> {
-                                Calendar postingDate = Calendar.getInstance();
-                                try {
-                                    postingDate.setTime(dateFormat.parse(simpleTag.getContent().substring(0, 8)));
-                                    transaction.postingDate = postingDate;
-                                } catch (ParseException e) {
-                                    throw new RuntimeException(String.format("Unable to parse date %s in transaction " +
-                                                    "%d of statement at %s ", simpleTag.getContent(), transactionCount[0],
-                                            uri.getPath()), e);
-                                }
-                            }
-                            case "TRNAMT" -> {
-                                BigDecimal amount = ParseUtils.parseBigDecimal(simpleTag.getContent());
-                                transaction.amount = amount;
-                                transaction.balance = runningBalance[0];
-                                runningBalance[0] = runningBalance[0].subtract(amount);
-                            }
-                            case "MEMO" ->
-                                    transaction.description = StringEscapeUtils.unescapeXml(simpleTag.getContent());
+        tokenizer.tokenize(Set.of(BANKTRANLIST), new Tokenizer.Handler() {
+            private int transactionCount;
+            private OFXTransaction transaction;
+
+            @Override
+            public boolean start(String name) {
+                if (name.equals(STMTTRN)) {
+                    transactionCount++;
+                    transaction = new OFXTransaction();
+                }
+                return true;
+            }
+
+            @Override
+            public void value(String name, String value) {
+                if (transaction == null)
+                    return;
+                switch (name) {
+                    case "DTPOSTED" -> {
+                        try {
+                            transaction.postingDate = ParseUtils.parseDate(value.substring(0, 8),
+                                    ParseUtils.COMPACT_DATE).atStartOfDay();
+                        } catch (DateTimeException | IndexOutOfBoundsException e) {
+                            throw new RuntimeException(String.format("Unable to parse date %s in transaction " +
+                                            "%d of statement at %s ", value, transactionCount, uri.getPath()), e);
                         }
                     }
-                });
-                if (!transaction.isValid())
-                    throw new RuntimeException(String.format("Expected to find MEMO, TRNAMT, DTPOSTED in " +
-                                    "transaction number %d of statement at %s, but instead found %s", transactionCount[0],
-                            uri.getPath(), transaction));
-                ParsedStatement.Line l = new ParsedStatement.Line();
-                l.setDescription(transaction.description);
-                l.setAmount(transaction.amount);
-                l.setBalance(transaction.balance);
-                l.setPostedOn(transaction.postingDate);
-                Matcher matcher = txDatePattern.matcher(transaction.description);
-                if (matcher.find()) {
-                    String dateField = matcher.group(1);
-                    String yearPortion = String.valueOf(transaction.postingDate.get(Calendar.YEAR));
-                    Calendar txDate = Calendar.getInstance();
-                    String completeDate = dateField + " " + yearPortion;
-                    try {
-                        txDate.setTime(txDateFormat.parse(completeDate));
-                    } catch (ParseException e) {
-                        throw new RuntimeException(String.format("Unable to parse date from %s in transaction %d " +
-                                "of statement at %s", completeDate, transactionCount[0], uri.getPath()), e);
-                    }
-                    if (transaction.postingDate.get(Calendar.MONTH) == Calendar.JANUARY &&
-                            txDate.get(Calendar.MONTH) == Calendar.DECEMBER) {
-                        // transaction date is in the previous year
-                        txDate.set(Calendar.YEAR, transaction.postingDate.get(Calendar.YEAR) - 1);
+                    case "TRNAMT" -> {
+                        BigDecimal amount = ParseUtils.parseBigDecimal(value);
+                        transaction.amount = amount;
+                        transaction.balance = runningBalance[0];
+                        runningBalance[0] = runningBalance[0].subtract(amount);
                     }
-                    l.setTransactionDate(txDate);
+                    case "MEMO" -> transaction.description = StringEscapeUtils.unescapeXml(value);
+                }
+            }
+
+            @Override
+            public void end(String name) {
+                if (name.equals(STMTTRN) && transaction != null) {
+                    sink.accept(toLine(transaction, transactionCount, uri));
+                    transaction = null;
                 }
-                statementLines.add(l);
             }
         });
-        return parsedStatement;
+    }
+
+    private static ParsedStatement.Line toLine(OFXTransaction transaction, int transactionCount, URI uri) {
+        if (!transaction.isValid())
+            throw new RuntimeException(String.format("Expected to find MEMO, TRNAMT, DTPOSTED in " +
+                            "transaction number %d of statement at %s, but instead found %s", transactionCount,
+                    uri.getPath(), transaction));
+        ParsedStatement.Line l = new ParsedStatement.Line();
+        l.setDescription(transaction.description);
+        l.setAmount(transaction.amount);
+        l.setBalance(transaction.balance);
+        l.setPostedOn(transaction.postingDate);
+        Matcher matcher = txDatePattern.matcher(transaction.description);
+        if (matcher.find()) {
+            String dateField = matcher.group(1);
+            try {
+                l.setTransactionDate(ParseUtils.parseDayAndMonth(dateField, transaction.postingDate.toLocalDate())
+                        .atStartOfDay());
+            } catch (DateTimeException e) {
+                throw new RuntimeException(String.format("Unable to parse date from %s in transaction %d " +
+                        "of statement at %s", dateField, transactionCount, uri.getPath()), e);
+            }
+        }
+        return l;
     }
 }
@@ -21,6 +21,10 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
 import java.util.Locale;
 
 public class ParseUtils {
@@ -29,6 +33,16 @@ public class ParseUtils {
     public static String SIMPLE_DECIMAL_FORMAT_SYMBOLS = "#########0.00";
     public static final String DATE_FORMAT_SYMBOLS = "yyyy/MM/dd";
 
+    // DateTimeFormatters are immutable and thread-safe, so the parsers share these
+    public static final DateTimeFormatter COMPACT_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    public static final DateTimeFormatter SLASHED_DATE = DateTimeFormatter.ofPattern("yyyy/M/d");
+    public static final DateTimeFormatter DAY_FIRST_DATE = DateTimeFormatter.ofPattern("d/M/yyyy");
+    public static final DateTimeFormatter DASHED_DATE = DateTimeFormatter.ofPattern("yyyy-M-d");
+    public static final DateTimeFormatter DAY_MONTH_NAME_YEAR = new DateTimeFormatterBuilder().parseCaseInsensitive()
+            .appendPattern("d MMM yyyy").toFormatter(Locale.ENGLISH);
+    public static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("H:mm");
+    public static final DateTimeFormatter COMPACT_TIME = DateTimeFormatter.ofPattern("HHmmss");
+
     public static String toRGBCode(Color color) {
         double red = color.getRed() * 255;
         double green = color.getGreen() * 255;
@@ -40,8 +54,59 @@ public class ParseUtils {
     }
 
     public static String stripQuotesAndWhiteSpace(String field) {
-        String[] parts = field.split("'|\"|\\s");
-        return String.join("", parts);
+        StringBuilder stripped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (!isQuoteOrWhiteSpace(c))
+                stripped.append(c);
+        }
+        return stripped.toString();
+    }
+
+    private static boolean isQuoteOrWhiteSpace(char c) {
+        return c == '"' || c == '\'' || Character.isWhitespace(c);
+    }
+
+    public static BigDecimal parseAmount(CharSequence text) {
+        return parseAmount(text, 0, text.length());
+    }
+
+    /**
+     * Reads an amount such as 1,536.00, -534.63 or "63.97" straight from its characters, without substrings, keeping
+     * the scale it was written with. Quotes, white space and grouping commas are skipped. Anything else that is
+     * unusual is left to {@link #parseBigDecimal(String)}.
+     *
+     * @return null if there is no amount between from and to
+     */
+    public static BigDecimal parseAmount(CharSequence text, int from, int to) {
+        long unscaled = 0;
+        int scale = -1;
+        boolean negative = false;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (unscaled > (Long.MAX_VALUE - 9) / 10)
+                    return parseUnusualAmount(text, from, to);
+                unscaled = unscaled * 10 + (c - '0');
+                digits = true;
+                if (scale >= 0)
+                    scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (c == '-' && !negative && !digits && scale < 0) {
+                negative = true;
+            } else if (c != ',' && !isQuoteOrWhiteSpace(c)) {
+                return parseUnusualAmount(text, from, to);
+            }
+        }
+        if (!digits)
+            return negative || scale >= 0 ? parseUnusualAmount(text, from, to) : null;
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    private static BigDecimal parseUnusualAmount(CharSequence text, int from, int to) {
+        return parseBigDecimal(stripQuotesAndWhiteSpace(text.subSequence(from, to).toString()));
     }
 
     public static BigDecimal parseBigDecimal(String val) {
@@ -60,4 +125,83 @@ public class ParseUtils {
         DecimalFormat format = new DecimalFormat(SIMPLE_DECIMAL_FORMAT_SYMBOLS, DecimalFormatSymbols.getInstance(Locale.ENGLISH));
         return format.format(value);
     }
+
+    /**
+     * Reads yyyyMMdd, yyyy/MM/dd, yyyy-MM-dd and dd/MM/yyyy dates straight from their digits. Anything else is left
+     * to the formatter.
+     */
+    public static LocalDate parseDate(String text, DateTimeFormatter formatter) {
+        LocalDate date = parseFixedWidthDate(text);
+        return date != null ? date : formatter.parse(text, LocalDate::from);
+    }
+
+    /**
+     * Reads HH:mm and HHmmss times straight from their digits. Anything else is left to the formatter.
+     */
+    public static LocalTime parseTime(String text, DateTimeFormatter formatter) {
+        if (text.length() == 5 && text.charAt(2) == ':') {
+            int hour = digits(text, 0, 2);
+            int minute = digits(text, 3, 5);
+            if (hour >= 0 && minute >= 0)
+                return LocalTime.of(hour, minute);
+        } else if (text.length() == 6) {
+            int hour = digits(text, 0, 2);
+            int minute = digits(text, 2, 4);
+            int second = digits(text, 4, 6);
+            if (hour >= 0 && minute >= 0 && second >= 0)
+                return LocalTime.of(hour, minute, second);
+        }
+        return formatter.parse(text, LocalTime::from);
+    }
+
+    /**
+     * The date of a transaction on a statement line, as "08 DEC", which is in the year of the posting date unless
+     * it was posted in January and transacted in December.
+     */
+    public static LocalDate parseDayAndMonth(String dayAndMonth, LocalDate postedOn) {
+        LocalDate date = DAY_MONTH_NAME_YEAR.parse(dayAndMonth + " " + postedOn.getYear(), LocalDate::from);
+        if (postedOn.getMonthValue() == 1 && date.getMonthValue() == 12)
+            return date.minusYears(1);
+        return date;
+    }
+
+    private static LocalDate parseFixedWidthDate(String text) {
+        int year, month, day;
+        if (text.length() == 8) {
+            year = digits(text, 0, 4);
+            month = digits(text, 4, 6);
+            day = digits(text, 6, 8);
+        } else if (text.length() == 10 && isSeparator(text.charAt(4)) && text.charAt(7) == text.charAt(4)) {
+            year = digits(text, 0, 4);
+            month = digits(text, 5, 7);
+            day = digits(text, 8, 10);
+        } else if (text.length() == 10 && text.charAt(2) == '/' && text.charAt(5) == '/') {
+            day = digits(text, 0, 2);
+            month = digits(text, 3, 5);
+            year = digits(text, 6, 10);
+        } else {
+            return null;
+        }
+        if (year < 0 || month < 0 || day < 0)
+            return null;
+        return LocalDate.of(year, month, day);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '-';
+    }
+
+    /**
+     * @return -1 if there is anything but digits between from and to
+     */
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
 }
@@ -16,8 +16,8 @@
 package hoogenbj.countary.util;
 
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
 
@@ -30,13 +30,16 @@ public class ParsedStatement {
     }
 
     public static class Line {
-        private Calendar postedOn;
-        private Calendar transactionDate;
+        private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private LocalDateTime postedOn;
+        private LocalDateTime transactionDate;
         private BigDecimal amount;
         private BigDecimal balance;
         private String description;
+        private Long fingerprint;
 
-        public Line(Calendar postedOn, Calendar transactionDate, BigDecimal amount, BigDecimal balance, String description) {
+        public Line(LocalDateTime postedOn, LocalDateTime transactionDate, BigDecimal amount, BigDecimal balance, String description) {
             this.postedOn = postedOn;
             this.transactionDate = transactionDate;
             this.amount = amount;
@@ -47,11 +50,11 @@ public class ParsedStatement {
         public Line() {
         }
 
-        public Calendar getPostedOn() {
+        public LocalDateTime getPostedOn() {
             return postedOn;
         }
 
-        public Calendar getTransactionDate() {
+        public LocalDateTime getTransactionDate() {
             return transactionDate;
         }
 
@@ -63,11 +66,11 @@ public class ParsedStatement {
             return balance;
         }
 
-        public void setPostedOn(Calendar postedOn) {
+        public void setPostedOn(LocalDateTime postedOn) {
             this.postedOn = postedOn;
         }
 
-        public void setTransactionDate(Calendar transactionDate) {
+        public void setTransactionDate(LocalDateTime transactionDate) {
             this.transactionDate = transactionDate;
         }
 
@@ -87,12 +90,22 @@ public class ParsedStatement {
             return description;
         }
 
+        /**
+         * @return Set by the import, see {@link TransactionFingerprint}
+         */
+        public Long getFingerprint() {
+            return fingerprint;
+        }
+
+        public void setFingerprint(Long fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
         @Override
         public String toString() {
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
             return "Line{" +
-                    "postedOn=" + format.format(postedOn.getTime()) +
-                    ", transactionDate=" + (transactionDate != null ? format.format(transactionDate.getTime()) : null) +
+                    "postedOn=" + FORMAT.format(postedOn) +
+                    ", transactionDate=" + (transactionDate != null ? FORMAT.format(transactionDate) : null) +
                     ", amount=" + amount +
                     ", balance=" + balance +
                     ", description='" + description + '\'' +
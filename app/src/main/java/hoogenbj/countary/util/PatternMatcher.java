@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds which of many patterns occur in a text in one pass over the text, however many patterns there are. The
+ * patterns are compiled into an Aho-Corasick automaton: a trie of the patterns in which every node also knows the
+ * longest proper suffix of its path that is in the trie, so that a mismatch never has to go back in the text.
+ * <p>
+ * Matching ignores case. Once built, a matcher does not change and can be used by many threads at once.
+ */
+public class PatternMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // The transitions out of each node, with the characters sorted for a binary search
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] failures;
+    // The longest pattern that ends at each node, its own or one that is a suffix of it
+    private final int[] matches;
+    private final int[] lengths;
+
+    /**
+     * @param patterns - Blank patterns are left out, since they would match everything
+     */
+    public PatternMatcher(List<String> patterns) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(new HashMap<>());
+        ends.add(NONE);
+        lengths = new int[patterns.size()];
+        for (int pattern = 0; pattern < patterns.size(); pattern++) {
+            String text = patterns.get(pattern);
+            if (text == null || text.isBlank())
+                continue;
+            lengths[pattern] = text.length();
+            int node = ROOT;
+            for (int i = 0; i < text.length(); i++) {
+                char c = fold(text.charAt(i));
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    ends.add(NONE);
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            // the first of two patterns that only differ in case
+            if (ends.get(node) == NONE)
+                ends.set(node, pattern);
+        }
+        int size = trie.size();
+        labels = new char[size][];
+        targets = new int[size][];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> edges = trie.get(node);
+            labels[node] = new char[edges.size()];
+            targets[node] = new int[edges.size()];
+            int i = 0;
+            for (Character c : edges.keySet().stream().sorted().toList()) {
+                labels[node][i] = c;
+                targets[node][i++] = edges.get(c);
+            }
+        }
+        failures = new int[size];
+        matches = new int[size];
+        matches[ROOT] = NONE;
+        // breadth first, so that the failure of a node is done before the node
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            failures[child] = ROOT;
+            matches[child] = ends.get(child);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int i = 0; i < labels[node].length; i++) {
+                int child = targets[node][i];
+                int failure = failures[node];
+                int next;
+                while ((next = step(failure, labels[node][i])) == NONE && failure != ROOT)
+                    failure = failures[failure];
+                failures[child] = next == NONE ? ROOT : next;
+                matches[child] = longer(ends.get(child), matches[failures[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return The index of the longest pattern in the text, the first one if there is more than one, or -1 if none of
+     * them is
+     */
+    public int longestMatch(CharSequence text) {
+        int best = NONE;
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            int next;
+            while ((next = step(node, c)) == NONE && node != ROOT)
+                node = failures[node];
+            node = next == NONE ? ROOT : next;
+            best = longer(best, matches[node]);
+        }
+        return best;
+    }
+
+    public int size() {
+        return lengths.length;
+    }
+
+    private int step(int node, char c) {
+        int i = Arrays.binarySearch(labels[node], c);
+        return i < 0 ? NONE : targets[node][i];
+    }
+
+    private int longer(int pattern, int other) {
+        if (pattern == NONE)
+            return other;
+        if (other == NONE)
+            return pattern;
+        if (lengths[pattern] != lengths[other])
+            return lengths[pattern] > lengths[other] ? pattern : other;
+        return Math.min(pattern, other);
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -15,16 +15,14 @@
  */
 package hoogenbj.countary.util;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,31 +30,38 @@ public class RMBPB_CSVStatementParser implements StatementParser {
     private final Pattern txDatePattern = Pattern.compile("(\\d{2} (JAN|FEB|MAR|APR|MAY|JUN|JUL|AUG|SEP|OCT|NOV|DEC))$");
 
     @Override
-    public ParsedStatement parse(URI uri) throws IOException {
-        List<String> lines = Files.readAllLines(Path.of(uri));
-        if (!lines.get(0).equals("ACCOUNT TRANSACTION HISTORY")) {
+    public int sniff(String head) {
+        return head.startsWith("ACCOUNT TRANSACTION HISTORY") ? 100 : 0;
+    }
+
+    @Override
+    public void parse(URI uri, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(uri))) {
+            parse(uri, reader, parsedStatement, sink);
+        }
+    }
+
+    private void parse(URI uri, BufferedReader reader, ParsedStatement parsedStatement, Consumer<ParsedStatement.Line> sink) throws IOException {
+        String line = reader.readLine();
+        if (!"ACCOUNT TRANSACTION HISTORY".equals(line)) {
             throw new RuntimeException("First line of file should read: \"ACCOUNT TRANSACTION HISTORY\". Wrong file?");
         }
-        ParsedStatement parsedStatement = new ParsedStatement();
-        List<ParsedStatement.Line> statementLines = new ArrayList<>();
-        parsedStatement.setLines(statementLines);
-        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
-        DateFormat txDateFormat = new SimpleDateFormat("dd MMM yyyy");
+        CsvFields fields = new CsvFields();
         int lineCount = 0;
         try {
-            for (String line : lines) {
+            for (; line != null; line = reader.readLine()) {
                 switch (lineCount) {
                     case 0:
                     case 1:
                         // ignore first two lines.
                         break;
                     case 2: {
-                        String[] fields = line.split(",");
-                        parsedStatement.setAccountHolder(fields[1].trim()+" "+fields[2].trim());
+                        fields.scan(line);
+                        parsedStatement.setAccountHolder(fields.trimmed(1)+" "+fields.trimmed(2));
                     }
                     case 3: {
-                        String[] fields = line.split(",");
-                        parsedStatement.setAccountNumber(fields[1].trim());
+                        fields.scan(line);
+                        parsedStatement.setAccountNumber(fields.trimmed(1));
                     }
                     case 4:
                     case 5:
@@ -65,26 +70,18 @@ public class RMBPB_CSVStatementParser implements StatementParser {
                         break;
                     default: {
                         ParsedStatement.Line l = new ParsedStatement.Line();
-                        String[] fields = line.split(",");
-                        Calendar postingDate = Calendar.getInstance();
-                        postingDate.setTime(dateFormat.parse(fields[0].trim()));
-                        l.setPostedOn(postingDate);
-                        l.setAmount(new BigDecimal(fields[1].trim()));
-                        l.setBalance(new BigDecimal(fields[2].trim()));
-                        l.setDescription(fields[3].trim());
-                        Matcher matcher = txDatePattern.matcher(fields[3]);
+                        fields.scan(line);
+                        LocalDate postingDate = ParseUtils.parseDate(fields.trimmed(0), ParseUtils.SLASHED_DATE);
+                        l.setPostedOn(postingDate.atStartOfDay());
+                        l.setAmount(Objects.requireNonNull(fields.decimal(1), "No amount"));
+                        l.setBalance(Objects.requireNonNull(fields.decimal(2), "No balance"));
+                        String description = fields.get(3);
+                        l.setDescription(description.trim());
+                        Matcher matcher = txDatePattern.matcher(description);
                         if (matcher.find()) {
-                            String dateField = matcher.group(1);
-                            String yearPortion = String.valueOf(postingDate.get(Calendar.YEAR));
-                            Calendar txDate = Calendar.getInstance();
-                            txDate.setTime(txDateFormat.parse(dateField + " " + yearPortion));
-                            if (postingDate.get(Calendar.MONTH) == Calendar.JANUARY && txDate.get(Calendar.MONTH) == Calendar.DECEMBER) {
-                                // transaction date is in the previous year
-                                txDate.set(Calendar.YEAR, postingDate.get(Calendar.YEAR)-1);
-                            }
-                            l.setTransactionDate(txDate);
+                            l.setTransactionDate(ParseUtils.parseDayAndMonth(matcher.group(1), postingDate).atStartOfDay());
                         }
-                        statementLines.add(l);
+                        sink.accept(l);
                     }
                 }
                 lineCount++;
@@ -92,6 +89,5 @@ public class RMBPB_CSVStatementParser implements StatementParser {
         } catch (Exception e) {
             throw new StatementParseException(uri.getPath(), lineCount + 1, e);
         }
-        return parsedStatement;
     }
 }
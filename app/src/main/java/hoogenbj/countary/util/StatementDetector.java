@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Tells what kind of statement a file is, from its first few kilobytes, by asking every registered
+ * {@link StatementParser} how sure it is that it can read the file. Parsers register as providers of
+ * {@link StatementParser}, in module-info.java, so a new kind of statement needs no changes here.
+ * <p>
+ * One instance of each parser reads all the files, possibly at the same time, so parsers must not keep state between
+ * calls.
+ */
+public class StatementDetector {
+
+    public static final int SNIFF_BYTES = 4096;
+
+    private final List<StatementParser> parsers;
+
+    public StatementDetector() {
+        this(ServiceLoader.load(StatementParser.class).stream().map(ServiceLoader.Provider::get).toList());
+    }
+
+    public StatementDetector(List<StatementParser> parsers) {
+        this.parsers = parsers;
+    }
+
+    /**
+     * @return The parser that is surest it can read the file, or null if none of them recognises it
+     */
+    public StatementParser detect(Path file) throws IOException {
+        String head = head(file);
+        StatementParser best = null;
+        int bestScore = 0;
+        for (StatementParser parser : parsers) {
+            int score = parser.sniff(head);
+            if (score > bestScore) {
+                best = parser;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The start of the file as ISO-8859-1, which maps every byte to a character, without a byte order mark or
+     * leading white space.
+     */
+    static String head(Path file) throws IOException {
+        String head;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), SNIFF_BYTES));
+            head = StandardCharsets.ISO_8859_1.decode(buffer).toString();
+        }
+        // a UTF-8 byte order mark, as read in ISO-8859-1
+        if (head.startsWith("\u00EF\u00BB\u00BF"))
+            head = head.substring(3);
+        return head.stripLeading();
+    }
+}
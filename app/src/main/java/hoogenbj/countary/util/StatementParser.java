@@ -17,9 +17,34 @@ package hoogenbj.countary.util;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatementParser {
 
-    ParsedStatement parse(URI uri) throws IOException, StatementParseException;
+    /**
+     * Reads the statement at uri and hands each line to the sink as soon as it has been parsed, so that a statement
+     * of any size can be imported without holding all of its lines. The account holder and number are set on the
+     * statement before the first line reaches the sink. The lines of the statement itself are left alone.
+     */
+    void parse(URI uri, ParsedStatement statement, Consumer<ParsedStatement.Line> sink) throws IOException, StatementParseException;
 
+    /**
+     * How sure this parser is that it can read a file, judging by the start of the file only: 0 if it cannot, up to
+     * 100 if no other kind of statement starts like this. See {@link StatementDetector}.
+     *
+     * @param head - The first few kilobytes of the file, without a byte order mark or leading white space
+     */
+    default int sniff(String head) {
+        return 0;
+    }
+
+    default ParsedStatement parse(URI uri) throws IOException, StatementParseException {
+        ParsedStatement statement = new ParsedStatement();
+        List<ParsedStatement.Line> lines = new ArrayList<>();
+        parse(uri, statement, lines::add);
+        statement.setLines(lines);
+        return statement;
+    }
 }
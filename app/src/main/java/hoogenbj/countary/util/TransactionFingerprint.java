@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Works out the fingerprints by which the lines of a statement are recognised when they are imported again. A
+ * fingerprint is the first 64 bits of the SHA-256 of the normalised posting date, transaction date, amount, balance
+ * and description, so it does not depend on the JVM, on the scale of the amounts or on how they were read back from
+ * the database.
+ * <p>
+ * A line that occurs more than once in the same statement is a different transaction every time, so each occurrence
+ * is numbered and the number is part of the fingerprint. Use one instance per statement, or per account when
+ * fingerprinting what has been saved, in the order of the lines.
+ */
+public class TransactionFingerprint {
+
+    private static final char SEPARATOR = '\u001f';
+    private static final int AMOUNT_SCALE = 4;
+
+    private final MessageDigest digest;
+    private final Map<Long, Integer> occurrences = new HashMap<>();
+
+    public TransactionFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long next(ParsedStatement.Line line) {
+        return next(line.getPostedOn(), line.getTransactionDate(), line.getAmount(), line.getBalance(),
+                line.getDescription());
+    }
+
+    /**
+     * @param postedOn        - Epoch milliseconds, as saved in the database
+     * @param transactionDate - Epoch milliseconds, or null
+     */
+    public long next(long postedOn, Long transactionDate, BigDecimal amount, BigDecimal balance, String description) {
+        return next(toLocal(postedOn), transactionDate == null ? null : toLocal(transactionDate), amount, balance,
+                description);
+    }
+
+    private long next(LocalDateTime postedOn, LocalDateTime transactionDate, BigDecimal amount, BigDecimal balance,
+                      String description) {
+        String normalised = postedOn.toString() + SEPARATOR +
+                (transactionDate == null ? "" : transactionDate.toString()) + SEPARATOR +
+                normalise(amount) + SEPARATOR + normalise(balance) + SEPARATOR +
+                (description == null ? "" : description.strip());
+        long first = fingerprint(normalised);
+        int occurrence = occurrences.merge(first, 1, Integer::sum) - 1;
+        return occurrence == 0 ? first : fingerprint(normalised + SEPARATOR + occurrence);
+    }
+
+    private long fingerprint(String normalised) {
+        byte[] hash = digest.digest(normalised.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(hash).getLong();
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static String normalise(BigDecimal amount) {
+        if (amount == null)
+            return "";
+        return amount.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+}
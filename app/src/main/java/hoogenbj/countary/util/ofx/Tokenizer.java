@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util.ofx;
+
+import hoogenbj.countary.util.StatementParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the SGML of an OFX 1.x statement in a single pass over its bytes. Tags do not have to be on lines of their
+ * own. Only what is inside the aggregates of interest is decoded and handed on, everything else is skipped.
+ */
+public class Tokenizer {
+
+    public interface Handler {
+        /**
+         * An aggregate starts.
+         *
+         * @return false to skip whatever is inside it
+         */
+        boolean start(String name);
+
+        /**
+         * An element with a value, whether or not it has an end tag.
+         */
+        void value(String name, String value);
+
+        void end(String name);
+    }
+
+    // Smaller statements are read, larger ones are mapped
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private final ByteBuffer buffer;
+    private final String path;
+    private final List<Header> headers = new ArrayList<>();
+    private final Charset charset;
+    private final int body;
+    // Every tag name is only decoded once
+    private final List<String> names = new ArrayList<>();
+    private byte[] scratch = new byte[256];
+
+    public static Tokenizer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer;
+            if (size >= MAP_THRESHOLD) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+                buffer.flip();
+            }
+            return new Tokenizer(buffer, file.toString());
+        }
+    }
+
+    public Tokenizer(ByteBuffer buffer, String path) {
+        this.buffer = buffer;
+        this.path = path;
+        body = indexOf('<', 0);
+        // The header is KEY:VALUE lines in plain ASCII before the first tag
+        String header = StandardCharsets.US_ASCII.decode(buffer.slice(0, body)).toString();
+        for (String line : header.split("\\R")) {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                headers.add(new Header(line.substring(0, colon).trim(), line.substring(colon + 1).trim()));
+        }
+        charset = charset(headers);
+    }
+
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Hands on the aggregates with the given names, along with everything inside them.
+     */
+    public void tokenize(Set<String> aggregates, Handler handler) {
+        int limit = buffer.limit();
+        String inside = null;
+        // an aggregate whose content is being skipped, inside the aggregate of interest or being it
+        String skipping = null;
+        int i = body;
+        while (i < limit) {
+            int nameStart = i + 1;
+            boolean endTag = nameStart < limit && buffer.get(nameStart) == '/';
+            if (endTag)
+                nameStart++;
+            int nameEnd = indexOf('>', nameStart);
+            if (nameEnd == limit)
+                throw error(i, "Unterminated tag");
+            int contentStart = nameEnd + 1;
+            int next = indexOf('<', contentStart);
+            if (inside == null) {
+                if (!endTag) {
+                    for (String aggregate : aggregates) {
+                        if (nameEquals(aggregate, nameStart, nameEnd)) {
+                            inside = aggregate;
+                            if (!handler.start(aggregate))
+                                skipping = aggregate;
+                            break;
+                        }
+                    }
+                }
+            } else if (skipping != null) {
+                if (endTag && nameEquals(skipping, nameStart, nameEnd)) {
+                    handler.end(skipping);
+                    if (skipping.equals(inside))
+                        inside = null;
+                    skipping = null;
+                }
+            } else if (endTag) {
+                String name = name(nameStart, nameEnd);
+                handler.end(name);
+                if (name.equals(inside))
+                    inside = null;
+            } else {
+                String name = name(nameStart, nameEnd);
+                int afterEndTag = afterEndTag(next, nameStart, nameEnd);
+                if (afterEndTag >= 0) {
+                    handler.value(name, decode(contentStart, next));
+                    next = indexOf('<', afterEndTag);
+                } else if (!isBlank(contentStart, next)) {
+                    handler.value(name, decode(contentStart, next));
+                } else if (!handler.start(name)) {
+                    skipping = name;
+                }
+            }
+            i = next;
+        }
+        if (inside != null)
+            throw error(limit, String.format("Expected %s to end", inside));
+    }
+
+    private static Charset charset(List<Header> headers) {
+        String encoding = null;
+        String characterSet = null;
+        for (Header header : headers) {
+            if (header.key().equals("ENCODING"))
+                encoding = header.value();
+            else if (header.key().equals("CHARSET"))
+                characterSet = header.value();
+        }
+        if ("UTF-8".equals(encoding))
+            return StandardCharsets.UTF_8;
+        if ("1252".equals(characterSet))
+            return Charset.forName("windows-1252");
+        if ("ISO-8859-1".equals(characterSet))
+            return StandardCharsets.ISO_8859_1;
+        return StandardCharsets.UTF_8;
+    }
+
+    private int indexOf(char c, int from) {
+        int limit = buffer.limit();
+        while (from < limit && buffer.get(from) != c)
+            from++;
+        return from;
+    }
+
+    /**
+     * @return Where the end tag of the element ends, if there is one at the given position
+     */
+    private int afterEndTag(int at, int nameStart, int nameEnd) {
+        int length = nameEnd - nameStart;
+        if (at + length + 3 > buffer.limit() || buffer.get(at + 1) != '/' || buffer.get(at + length + 2) != '>')
+            return -1;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(at + 2 + i) != buffer.get(nameStart + i))
+                return -1;
+        }
+        return at + length + 3;
+    }
+
+    private boolean nameEquals(String name, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != buffer.get(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private String name(int start, int end) {
+        for (String name : names) {
+            if (nameEquals(name, start, end))
+                return name;
+        }
+        String name = decode(start, end);
+        names.add(name);
+        return name;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if ((buffer.get(i) & 0xff) > ' ')
+                return false;
+        }
+        return true;
+    }
+
+    private String decode(int start, int end) {
+        while (start < end && buffer.get(start) <= ' ' && buffer.get(start) >= 0)
+            start++;
+        while (end > start && buffer.get(end - 1) <= ' ' && buffer.get(end - 1) >= 0)
+            end--;
+        int length = end - start;
+        if (length > scratch.length)
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+
+    private StatementParseException error(int position, String message) {
+        int line = 1;
+        for (int i = 0; i < position && i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n')
+                line++;
+        }
+        return new StatementParseException(path, line, new RuntimeException(message));
+    }
+}
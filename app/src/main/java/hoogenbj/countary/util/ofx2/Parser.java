@@ -20,21 +20,24 @@ import hoogenbj.countary.util.ParseUtils;
 import hoogenbj.countary.util.ParsedStatement;
 import hoogenbj.countary.util.StatementParseException;
 import org.apache.commons.text.StringEscapeUtils;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.math.BigDecimal;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Parser {
-    public static Header parseHeader(Node node, String path) {
-        String trimmed = node.getNodeValue().trim();
+    private static final Pattern PSEUDO_ATTRIBUTE = Pattern.compile("([A-Z]+)=\\\"(\\d+|[A-Z]+)\\\"");
+
+    public static Header parseHeader(String data, String path) {
+        String trimmed = data.trim();
         if (trimmed.isEmpty())
             throw new StatementParseException("Expected statement to contain a OFX processing instruction, but found nothing", path);
         String[] keyValues = trimmed.split("\\s+");
@@ -60,84 +63,146 @@ public class Parser {
 
     private static Map<String, String> getPseudoAttributes(String trimmed) {
         Map<String, String> map = new HashMap<>();
-        Pattern pattern = Pattern.compile("([A-Z]+)=\\\"(\\d+|[A-Z]+)\\\"");
-        Matcher matcher = pattern.matcher(trimmed);
+        Matcher matcher = PSEUDO_ATTRIBUTE.matcher(trimmed);
         while (matcher.find()) {
             map.put(matcher.group(1), matcher.group(2));
         }
         return map;
     }
 
-    public static boolean validate(Header header, Node body, String path) {
+    public static boolean validate(Header header, String root, String path) {
+        if (header == null)
+            throw new StatementParseException("Expected statement to contain a OFX processing instruction, but found nothing", path);
         if (header.ofxHeader() != 200)
             throw new StatementParseException(String.format("Expected OFXHEADER to have value 200 but found %d", header.ofxHeader()), path);
         if (header.version() < 200)
             throw new StatementParseException(String.format("Expected VERSION to have a value greater or equal to 200 but found %d", header.version()), path);
-        if (!body.getNodeName().equals("OFX"))
-            throw new StatementParseException(String.format("Expected statement to contain an OFX xml element as root but found %s", body.getLocalName()), path);
+        if (!root.equals("OFX"))
+            throw new StatementParseException(String.format("Expected statement to contain an OFX xml element as root but found %s", root), path);
         return true;
     }
 
-    public static ParsedStatement parseBody(Node body, String path) {
-        NodeList nodes = body.getChildNodes();
-        ParsedStatement statement = new ParsedStatement();
-        for (int i = 0; i < nodes.getLength(); i++) {
-            if (nodes.item(i).getNodeName().equals("BANKMSGSRSV1")) {
-                NodeList msgNodes = nodes.item(i).getChildNodes();
-                for (int j=0; j<msgNodes.getLength(); j++) {
-                    if (msgNodes.item(j).getNodeName().equals("STMTTRNRS")) {
-                        parseStatement(msgNodes.item(j), statement, path);
+    /**
+     * Reads a statement with a pull parser instead of building a DOM. The header is validated when the root element
+     * starts, each transaction is handed to onTransaction as soon as its STMTTRN ends and the ledger balance is handed
+     * to onStatement at the end of each STMTTRNRS.
+     */
+    public static void parse(XMLStreamReader reader, ParsedStatement statement, String path,
+                             Consumer<StatementTransaction> onTransaction, Consumer<BigDecimal> onStatement) throws XMLStreamException {
+        Header header = null;
+        List<String> elements = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        Map<String, String> fields = new HashMap<>();
+        boolean accountFound = false;
+        BigDecimal balance = null;
+        boolean balanceFound = false;
+        int transactionCount = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                    if (elements.isEmpty())
+                        header = parseHeader(reader.getPIData(), path);
+                }
+                case XMLStreamConstants.COMMENT, XMLStreamConstants.DTD -> {
+                    if (elements.isEmpty())
+                        throw new StatementParseException("Unexpected content " + reader.getText(), path);
+                }
+                case XMLStreamConstants.START_ELEMENT -> {
+                    String name = reader.getLocalName();
+                    if (elements.isEmpty())
+                        validate(header, name, path);
+                    if (elements.equals(STMTRS) && name.equals("BANKTRANLIST"))
+                        transactionCount = 0;
+                    else if (elements.equals(BANKTRANLIST) && name.equals("STMTTRN")) {
+                        transactionCount++;
+                        fields.clear();
                     }
+                    elements.add(name);
+                    text.setLength(0);
                 }
-            }
-        }
-        return statement;
-    }
-
-    private static void parseStatement(Node item, ParsedStatement statement, String path) {
-        BigDecimal balance = null;
-        List<StatementTransaction> transactionList = null;
-        for (int i=0; i<item.getChildNodes().getLength(); i++) {
-            if (item.getChildNodes().item(i).getNodeName().equals("STMTRS")) {
-                NodeList stmtrs = item.getChildNodes().item(i).getChildNodes();
-                for (int j=0; j<stmtrs.getLength(); j++) {
-                    if (stmtrs.item(j).getNodeName().equals("BANKACCTFROM")) {
-                        if (!parseBankAccount(stmtrs.item(j), statement))
-                            throw new StatementParseException("Could not find bank account number", path);
-                    } else if (stmtrs.item(j).getNodeName().equals("BANKTRANLIST")) {
-                        transactionList = parseTransactions(stmtrs.item(j), path);
-                    } else if (stmtrs.item(j).getNodeName().equals("LEDGERBAL")) {
-                        balance = parseBalance(stmtrs.item(j), statement);
-                        if (balance == null)
-                            throw new StatementParseException("Could not find balance", path);
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                case XMLStreamConstants.END_ELEMENT -> {
+                    String name = elements.remove(elements.size() - 1);
+                    if (elements.equals(STMTTRN)) {
+                        if (fieldNames.contains(name))
+                            fields.put(name, text.toString());
+                    } else if (elements.equals(BANKTRANLIST)) {
+                        if (name.equals("STMTTRN")) {
+                            if (validTransaction(fields)) {
+                                onTransaction.accept(new StatementTransaction(fields.get("TRNTYPE"), fields.get("DTPOSTED"),
+                                        fields.get("DTUSER"), fields.get("TRNAMT"), fields.get("FITID"), fields.get("MEMO")));
+                            } else
+                                throw new StatementParseException(String.format("Transaction number %d is invalid", transactionCount), path);
+                        }
+                    } else if (elements.equals(BANKACCTFROM)) {
+                        if (name.equals("ACCTID")) {
+                            statement.setAccountNumber(text.toString());
+                            accountFound = !statement.getAccountNumber().isEmpty();
+                        }
+                    } else if (elements.equals(LEDGERBAL)) {
+                        if (name.equals("BALAMT") && !balanceFound) {
+                            balance = ParseUtils.parseBigDecimal(text.toString());
+                            balanceFound = true;
+                        }
+                    } else if (elements.equals(STMTRS)) {
+                        if (name.equals("BANKACCTFROM")) {
+                            if (!accountFound)
+                                throw new StatementParseException("Could not find bank account number", path);
+                            accountFound = false;
+                        } else if (name.equals("LEDGERBAL")) {
+                            if (balance == null)
+                                throw new StatementParseException("Could not find balance", path);
+                            balanceFound = false;
+                        }
+                    } else if (elements.equals(BANKMSGSRSV1) && name.equals("STMTTRNRS")) {
+                        onStatement.accept(balance);
+                        balance = null;
                     }
+                    text.setLength(0);
                 }
             }
         }
-        if (transactionList == null || transactionList.isEmpty())
+    }
+
+    // The paths of the elements of interest, from the root down
+    private static final List<String> BANKMSGSRSV1 = List.of("OFX", "BANKMSGSRSV1");
+    private static final List<String> STMTRS = List.of("OFX", "BANKMSGSRSV1", "STMTTRNRS", "STMTRS");
+    private static final List<String> BANKACCTFROM = List.of("OFX", "BANKMSGSRSV1", "STMTTRNRS", "STMTRS", "BANKACCTFROM");
+    private static final List<String> LEDGERBAL = List.of("OFX", "BANKMSGSRSV1", "STMTTRNRS", "STMTRS", "LEDGERBAL");
+    private static final List<String> BANKTRANLIST = List.of("OFX", "BANKMSGSRSV1", "STMTTRNRS", "STMTRS", "BANKTRANLIST");
+    private static final List<String> STMTTRN = List.of("OFX", "BANKMSGSRSV1", "STMTTRNRS", "STMTRS", "BANKTRANLIST", "STMTTRN");
+
+    /**
+     * Turns the transactions of a statement into lines. The balances run back from the ledger balance in order of
+     * transaction date, so this needs all the transactions of the statement.
+     */
+    public static List<ParsedStatement.Line> toLines(List<StatementTransaction> transactionList, BigDecimal balance, String path) {
+        if (transactionList.isEmpty())
             throw new StatementParseException("No transactions found in statement", path);
         final BigDecimal[] runningBalance = {balance};
-        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
-        DateFormat dateTimeFormat = new SimpleDateFormat("yyyyMMddhhmmss");
         List<ParsedStatement.Line> transactions = new ArrayList<>();
         AtomicInteger transactionCount = new AtomicInteger();
         transactionList.forEach(trn -> {
             transactionCount.getAndIncrement();
             ParsedStatement.Line transaction = new ParsedStatement.Line();
-            Calendar postingDate = Calendar.getInstance();
             try {
-                postingDate.setTime(dateFormat.parse(trn.dtposted().substring(0, 8)));
-                transaction.setPostedOn(postingDate);
-            } catch (ParseException e) {
+                transaction.setPostedOn(ParseUtils.parseDate(trn.dtposted().substring(0, 8), ParseUtils.COMPACT_DATE)
+                        .atStartOfDay());
+            } catch (DateTimeException | IndexOutOfBoundsException e) {
                 throw new RuntimeException(String.format("Unable to parse date %s in transaction " +
                                 "%d of statement at %s ", trn.dtposted(), transactionCount.get(),
                         path), e);
             }
-            Calendar transactionDate = Calendar.getInstance();
             try {
-                transactionDate.setTime(dateTimeFormat.parse(trn.dtuser().substring(0, 14)));
-                transaction.setTransactionDate(transactionDate);
-            } catch (ParseException e) {
+                String dtuser = trn.dtuser();
+                LocalTime time = ParseUtils.parseTime(dtuser.substring(8, 14), ParseUtils.COMPACT_TIME);
+                // Always read as "hh", which makes 12 into 00. The fingerprints of the lines already saved depend on it.
+                if (time.getHour() == 12)
+                    time = time.withHour(0);
+                transaction.setTransactionDate(ParseUtils.parseDate(dtuser.substring(0, 8), ParseUtils.COMPACT_DATE)
+                        .atTime(time));
+            } catch (DateTimeException | IndexOutOfBoundsException e) {
                 throw new RuntimeException(String.format("Unable to parse date-time %s in transaction " +
                                 "%d of statement at %s ", trn.dtposted(), transactionCount.get(),
                         path), e);
@@ -152,65 +217,12 @@ public class Parser {
                     transaction.setBalance(runningBalance[0]);
                     runningBalance[0] = runningBalance[0].subtract(transaction.getAmount());
                 });
-        statement.setLines(transactions);
-    }
-
-    private static BigDecimal parseBalance(Node item, ParsedStatement statement) {
-        BigDecimal balance = null;
-        for (int i=0; i<item.getChildNodes().getLength(); i++) {
-            if (item.getChildNodes().item(i).getNodeName().equals("BALAMT")) {
-                Node balamt = item.getChildNodes().item(i);
-                return ParseUtils.parseBigDecimal(balamt.getTextContent());
-            }
-        }
-        return balance;
-    }
-
-    private static List<StatementTransaction> parseTransactions(Node item, String path) {
-        List<StatementTransaction> transactionList = new ArrayList<>();
-        int transactionCount = 0;
-        for (int i=0; i<item.getChildNodes().getLength(); i++) {
-            if (item.getChildNodes().item(i).getNodeName().equals("STMTTRN")) {
-                transactionCount++;
-                Map<String, String> fields = getTransactionFields(item.getChildNodes().item(i));
-                if (validTransaction(fields)) {
-                    transactionList.add(new StatementTransaction(fields.get("TRNTYPE"), fields.get("DTPOSTED"),
-                            fields.get("DTUSER"), fields.get("TRNAMT"), fields.get("FITID"), fields.get("MEMO")));
-                } else
-                    throw new StatementParseException(String.format("Transaction number %d is invalid", transactionCount), path);
-            }
-        }
-        return transactionList;
-    }
-
-    private static void pluck(String key, Node node, Map<String, String> fields) {
-        if (node.getNodeName().equals(key))
-            fields.put(key, node.getTextContent());
+        return transactions;
     }
 
     private static final Set<String> fieldNames = Set.of("TRNTYPE", "DTPOSTED", "DTUSER", "TRNAMT", "FITID", "MEMO");
-    private static Map<String, String> getTransactionFields(Node item) {
-        Map<String, String> fields = new HashMap<>();
-        for (int i=0; i<item.getChildNodes().getLength(); i++) {
-            Node node = item.getChildNodes().item(i);
-            fieldNames.forEach(name -> {if (node.getNodeName().equals(name)) fields.put(name, node.getTextContent());});
-        }
-        return fields;
-    }
 
     private static boolean validTransaction(Map<String, String> fields) {
         return fields.keySet().containsAll(fieldNames);
     }
-
-    private static boolean parseBankAccount(Node item, ParsedStatement statement) {
-        boolean found = false;
-        for (int i=0; i<item.getChildNodes().getLength(); i++) {
-            if (item.getChildNodes().item(i).getNodeName().equals("ACCTID")) {
-                Node acctid = item.getChildNodes().item(i);
-                statement.setAccountNumber(acctid.getTextContent());
-                found = statement.getAccountNumber() != null && statement.getAccountNumber().length() > 0;
-            }
-        }
-        return found;
-    }
 }
@@ -31,4 +31,14 @@ module hoogenbj.countary {
     opens hoogenbj.countary.di to com.google.guice;
     exports hoogenbj.countary.model;
     opens hoogenbj.countary.model to com.google.guice, javafx.fxml, jmock.junit5;
+    exports hoogenbj.countary.util;
+
+    uses hoogenbj.countary.util.StatementParser;
+    provides hoogenbj.countary.util.StatementParser with
+            hoogenbj.countary.util.RMBPB_CSVStatementParser,
+            hoogenbj.countary.util.BankZeroStatementParser,
+            hoogenbj.countary.util.BankZeroStatementHistoryParser,
+            hoogenbj.countary.util.Capitec_CSVStatementParser,
+            hoogenbj.countary.util.OFXStatementParser,
+            hoogenbj.countary.util.OFX2StatementParser;
 }
@@ -36,3 +36,4 @@ create virtual table budget_idx using fts5 ( id, name, kind, copyBudgetId, conte
 create virtual table item_idx using fts5 ( id, name, kind, categoryId, content=item, content_rowid=id, prefix='1 2 3' ); 
 create virtual table tag_idx using fts5 ( id, name, content=tag, content_rowid=id, prefix='1 2 3' ); 
 create virtual table transactions_idx using fts5 ( id, accountId, txdate, amount, balance, description, posting_date, allocated, manual, content=transactions, content_rowid=id, prefix='1 2 3' ); 
+create index transactions_account_posting_index on transactions (accountId, posting_date, id);
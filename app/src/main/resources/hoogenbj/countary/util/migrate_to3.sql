@@ -0,0 +1,2 @@
+create index if not exists transactions_account_posting_index on transactions (accountId, posting_date, id);
+update db_version set version = 3 where id = 1;
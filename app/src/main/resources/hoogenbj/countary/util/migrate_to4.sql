@@ -0,0 +1,10 @@
+alter table transactions add column allocations integer not null default 0;
+update transactions set allocations = (select count(*) from allocation a where a.transactionId = transactions.id);
+CREATE TRIGGER allocation_count_ai AFTER INSERT ON allocation BEGIN UPDATE transactions SET allocations = allocations + 1 WHERE id = new.transactionId; END;
+CREATE TRIGGER allocation_count_ad AFTER DELETE ON allocation BEGIN UPDATE transactions SET allocations = allocations - 1 WHERE id = old.transactionId; END;
+CREATE TRIGGER allocation_count_au AFTER UPDATE OF transactionId ON allocation BEGIN UPDATE transactions SET allocations = allocations - 1 WHERE id = old.transactionId; UPDATE transactions SET allocations = allocations + 1 WHERE id = new.transactionId; END;
+drop trigger transactions_au;
+CREATE TRIGGER transactions_au AFTER UPDATE OF accountId, txdate, amount, balance, description, posting_date, allocated, manual ON transactions BEGIN INSERT INTO transactions_idx(transactions_idx, rowid, accountId, txdate, amount, balance, description, posting_date, allocated, manual) VALUES('delete', old.id, old.accountId, old.txdate, old.amount, old.balance, old.description, old.posting_date, old.allocated, old.manual); INSERT INTO transactions_idx(rowid, accountId, txdate, amount, balance, description, posting_date, allocated, manual) VALUES (new.id, new.accountId, new.txdate, new.amount, new.balance, new.description, new.posting_date, new.allocated, new.manual); END;
+create index transactions_account_allocated_posting_index on transactions (accountId, allocated, posting_date, id);
+create index allocation_budgetItemId_amount_index on allocation (budgetItemId, amount);
+update db_version set version = 4 where id = 1;
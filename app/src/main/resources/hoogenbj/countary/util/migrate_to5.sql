@@ -0,0 +1,22 @@
+create table budget_item_actual ( budgetItemId INTEGER primary key references budget_item on delete cascade, actual NUMERIC not null default 0 );
+create table budget_actual ( budgetId INTEGER primary key references budget on delete cascade, actual NUMERIC not null default 0 );
+create table budget_account_actual ( budgetId INTEGER not null references budget on delete cascade, accountId INTEGER not null references account on delete cascade, actual NUMERIC not null default 0, primary key (budgetId, accountId) );
+create table account_summary ( accountId INTEGER primary key references account on delete cascade, debits NUMERIC not null default 0, credits NUMERIC not null default 0, funded NUMERIC not null default 0 );
+create table summary_totals ( id INTEGER primary key check (id = 1), funded NUMERIC not null default 0, unfunded NUMERIC not null default 0 );
+insert into budget_item_actual(budgetItemId, actual) select budgetItemId, sum(amount) from allocation group by budgetItemId;
+insert into budget_actual(budgetId, actual) select bi.budgetId, sum(a.amount) from allocation a join budget_item bi on bi.id = a.budgetItemId group by bi.budgetId;
+insert into budget_account_actual(budgetId, accountId, actual) select bi.budgetId, t.accountId, sum(a.amount) from allocation a join budget_item bi on bi.id = a.budgetItemId join transactions t on t.id = a.transactionId group by bi.budgetId, t.accountId;
+insert into account_summary(accountId, debits, credits) select accountId, sum(min(amount, 0)), sum(max(amount, 0)) from transactions where allocated = 0 and accountId is not null group by accountId;
+insert into account_summary(accountId, funded) select t.accountId, sum(a.amount) from allocation a join transactions t on t.id = a.transactionId where t.accountId is not null group by t.accountId on conflict(accountId) do update set funded = excluded.funded;
+insert into summary_totals(id, funded, unfunded) select 1, coalesce(sum(max(actual, 0)), 0), coalesce(sum(min(actual, 0)), 0) from budget_actual;
+CREATE TRIGGER allocation_actual_ai AFTER INSERT ON allocation BEGIN INSERT INTO budget_item_actual(budgetItemId, actual) VALUES (new.budgetItemId, new.amount) ON CONFLICT(budgetItemId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO budget_actual(budgetId, actual) SELECT budgetId, new.amount FROM budget_item WHERE id = new.budgetItemId ON CONFLICT(budgetId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO budget_account_actual(budgetId, accountId, actual) SELECT bi.budgetId, t.accountId, new.amount FROM budget_item bi, transactions t WHERE bi.id = new.budgetItemId AND t.id = new.transactionId ON CONFLICT(budgetId, accountId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO account_summary(accountId, funded) SELECT accountId, new.amount FROM transactions WHERE id = new.transactionId ON CONFLICT(accountId) DO UPDATE SET funded = funded + excluded.funded; END;
+CREATE TRIGGER allocation_actual_ad AFTER DELETE ON allocation BEGIN UPDATE budget_item_actual SET actual = actual - old.amount WHERE budgetItemId = old.budgetItemId; UPDATE budget_actual SET actual = actual - old.amount WHERE budgetId = (SELECT budgetId FROM budget_item WHERE id = old.budgetItemId); UPDATE budget_account_actual SET actual = actual - old.amount WHERE budgetId = (SELECT budgetId FROM budget_item WHERE id = old.budgetItemId) AND accountId = (SELECT accountId FROM transactions WHERE id = old.transactionId); UPDATE account_summary SET funded = funded - old.amount WHERE accountId = (SELECT accountId FROM transactions WHERE id = old.transactionId); END;
+CREATE TRIGGER allocation_actual_au AFTER UPDATE OF transactionId, budgetItemId, amount ON allocation BEGIN UPDATE budget_item_actual SET actual = actual - old.amount WHERE budgetItemId = old.budgetItemId; UPDATE budget_actual SET actual = actual - old.amount WHERE budgetId = (SELECT budgetId FROM budget_item WHERE id = old.budgetItemId); UPDATE budget_account_actual SET actual = actual - old.amount WHERE budgetId = (SELECT budgetId FROM budget_item WHERE id = old.budgetItemId) AND accountId = (SELECT accountId FROM transactions WHERE id = old.transactionId); UPDATE account_summary SET funded = funded - old.amount WHERE accountId = (SELECT accountId FROM transactions WHERE id = old.transactionId); INSERT INTO budget_item_actual(budgetItemId, actual) VALUES (new.budgetItemId, new.amount) ON CONFLICT(budgetItemId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO budget_actual(budgetId, actual) SELECT budgetId, new.amount FROM budget_item WHERE id = new.budgetItemId ON CONFLICT(budgetId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO budget_account_actual(budgetId, accountId, actual) SELECT bi.budgetId, t.accountId, new.amount FROM budget_item bi, transactions t WHERE bi.id = new.budgetItemId AND t.id = new.transactionId ON CONFLICT(budgetId, accountId) DO UPDATE SET actual = actual + excluded.actual; INSERT INTO account_summary(accountId, funded) SELECT accountId, new.amount FROM transactions WHERE id = new.transactionId ON CONFLICT(accountId) DO UPDATE SET funded = funded + excluded.funded; END;
+CREATE TRIGGER budget_actual_ai AFTER INSERT ON budget_actual BEGIN UPDATE summary_totals SET funded = funded + max(new.actual, 0), unfunded = unfunded + min(new.actual, 0) WHERE id = 1; END;
+CREATE TRIGGER budget_actual_ad AFTER DELETE ON budget_actual BEGIN UPDATE summary_totals SET funded = funded - max(old.actual, 0), unfunded = unfunded - min(old.actual, 0) WHERE id = 1; END;
+CREATE TRIGGER budget_actual_au AFTER UPDATE OF actual ON budget_actual BEGIN UPDATE summary_totals SET funded = funded - max(old.actual, 0) + max(new.actual, 0), unfunded = unfunded - min(old.actual, 0) + min(new.actual, 0) WHERE id = 1; END;
+CREATE TRIGGER transactions_summary_ai AFTER INSERT ON transactions WHEN new.allocated = 0 BEGIN INSERT INTO account_summary(accountId, debits, credits) VALUES (new.accountId, min(new.amount, 0), max(new.amount, 0)) ON CONFLICT(accountId) DO UPDATE SET debits = debits + excluded.debits, credits = credits + excluded.credits; END;
+CREATE TRIGGER transactions_summary_ad AFTER DELETE ON transactions WHEN old.allocated = 0 BEGIN UPDATE account_summary SET debits = debits - min(old.amount, 0), credits = credits - max(old.amount, 0) WHERE accountId = old.accountId; END;
+CREATE TRIGGER transactions_summary_au AFTER UPDATE OF accountId, amount, allocated ON transactions BEGIN UPDATE account_summary SET debits = debits - min(old.amount, 0), credits = credits - max(old.amount, 0) WHERE accountId = old.accountId AND old.allocated = 0; INSERT INTO account_summary(accountId, debits, credits) SELECT new.accountId, min(new.amount, 0), max(new.amount, 0) WHERE new.allocated = 0 ON CONFLICT(accountId) DO UPDATE SET debits = debits + excluded.debits, credits = credits + excluded.credits; END;
+CREATE TRIGGER transactions_summary_move AFTER UPDATE OF accountId ON transactions WHEN old.accountId IS NOT new.accountId BEGIN UPDATE account_summary SET funded = funded - (SELECT coalesce(sum(amount), 0) FROM allocation WHERE transactionId = new.id) WHERE accountId = old.accountId; INSERT INTO account_summary(accountId, funded) SELECT new.accountId, sum(amount) FROM allocation WHERE transactionId = new.id HAVING count(*) > 0 ON CONFLICT(accountId) DO UPDATE SET funded = funded + excluded.funded; UPDATE budget_account_actual SET actual = actual - (SELECT coalesce(sum(a.amount), 0) FROM allocation a JOIN budget_item bi ON bi.id = a.budgetItemId WHERE a.transactionId = new.id AND bi.budgetId = budget_account_actual.budgetId) WHERE accountId = old.accountId; INSERT INTO budget_account_actual(budgetId, accountId, actual) SELECT bi.budgetId, new.accountId, sum(a.amount) FROM allocation a JOIN budget_item bi ON bi.id = a.budgetItemId WHERE a.transactionId = new.id GROUP BY bi.budgetId ON CONFLICT(budgetId, accountId) DO UPDATE SET actual = actual + excluded.actual; END;
+update db_version set version = 5 where id = 1;
@@ -0,0 +1,3 @@
+alter table transactions add column fingerprint integer;
+create unique index transactions_account_fingerprint_index on transactions (accountId, fingerprint);
+update db_version set version = 6 where id = 1;
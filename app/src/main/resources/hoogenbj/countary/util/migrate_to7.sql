@@ -0,0 +1,3 @@
+create table allocation_rule ( id INTEGER primary key, pattern TEXT not null, itemId INTEGER not null references item on delete cascade );
+create unique index allocation_rule_pattern_uindex on allocation_rule (pattern collate nocase);
+update db_version set version = 7 where id = 1;
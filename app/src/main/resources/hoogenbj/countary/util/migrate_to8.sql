@@ -0,0 +1,4 @@
+create index transactions_account_amount_index on transactions (accountId, amount);
+create index transactions_account_abs_amount_index on transactions (accountId, abs(amount));
+create index transactions_account_txdate_index on transactions (accountId, txdate);
+update db_version set version = 8 where id = 1;
@@ -65,6 +65,7 @@ public class StatementControllerTest {
             }
         });
         TransactionController controller = new TransactionController(settings, userInterface, dataModel,
+                injector.getInstance(AsyncDataModel.class),
                 (a, b) -> {
                 }, (c) -> {
         }, (d) -> {
@@ -118,12 +119,15 @@ public class StatementControllerTest {
                 will(returnValue(account));
                 allowing(settings).getCurrentAccount();
                 will(returnValue(null));
+                allowing(settings).getSearchIndexMegabytes();
+                will(returnValue(0));
                 allowing(userInterface).chooseDB();
                 will(returnValue("Nothing"));
                 allowing(userInterface).showWarning(with("Unfortunately it is not possible to continue without a database"));
             }
         });
         TransactionController controller = new TransactionController(settings, userInterface, dataModel,
+                injector.getInstance(AsyncDataModel.class),
                 (a, b) -> {
                 }, (c) -> {
         }, (d) -> {
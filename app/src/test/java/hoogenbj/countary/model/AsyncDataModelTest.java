@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncDataModelTest {
+
+    @RegisterExtension
+    JUnit5Mockery context = new JUnit5Mockery() {{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    // stands in for the JavaFX application thread
+    private ExecutorService application;
+    private AsyncDataModel asyncModel;
+
+    @BeforeEach
+    void before() {
+        application = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "application"));
+        asyncModel = new AsyncDataModel(context.mock(DataModel.class), 2, application);
+    }
+
+    @AfterEach
+    void after() throws InterruptedException {
+        asyncModel.shutdown();
+        application.shutdown();
+    }
+
+    @Test
+    public void testWritesRunOneAtATimeInOrder() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            futures.add(asyncModel.write(model -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep();
+                order.add(n);
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, mostRunning.get());
+        Assertions.assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+    }
+
+    @Test
+    public void testReadsAreBounded() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(asyncModel.read(model -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(mostRunning.get() <= 2, "at most 2 readers expected, got " + mostRunning.get());
+    }
+
+    @Test
+    public void testResultsAndFailuresArriveOnTheApplicationThread() throws Exception {
+        String[] threads = new String[3];
+        // hold the calls back until the callbacks are attached, as they would be on the application thread
+        CountDownLatch attached = new CountDownLatch(1);
+        CompletableFuture<String> read = asyncModel.read(model -> {
+            threads[0] = Thread.currentThread().getName();
+            await(attached);
+            return "done";
+        });
+        CompletableFuture<String> readResult = read.thenApply(value -> {
+            threads[1] = Thread.currentThread().getName();
+            return value;
+        });
+        SQLException failure = new SQLException("constraint");
+        CompletableFuture<Void> write = asyncModel.write(model -> {
+            await(attached);
+            throw failure;
+        });
+        CompletableFuture<Void> writeResult = write.whenComplete((value, thrown) ->
+                threads[2] = Thread.currentThread().getName());
+        attached.countDown();
+
+        Assertions.assertEquals("done", readResult.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(threads[0].startsWith("countary-read-"), threads[0]);
+        Assertions.assertEquals("application", threads[1]);
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> writeResult.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(failure, e.getCause());
+        Assertions.assertEquals("application", threads[2]);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class BudgetModelTest {
+
+    @Test
+    public void testTagsOfTheSameItemsEndUpTogether() {
+        Tag food = new Tag(1L, "Food");
+        Tag home = new Tag(2L, "Home");
+        Tag car = new Tag(3L, "Car");
+        Tag fuel = new Tag(4L, "Fuel");
+        Tag garden = new Tag(5L, "Garden");
+        List<BudgetItemTag> itemTags = List.of(
+                new BudgetItemTag(1L, food, new BigDecimal("100"), new BigDecimal("-80"), 3),
+                new BudgetItemTag(1L, home, new BigDecimal("100"), new BigDecimal("-80"), 2),
+                new BudgetItemTag(2L, car, new BigDecimal("50"), null, 2),
+                new BudgetItemTag(2L, fuel, new BigDecimal("50"), null, 1),
+                new BudgetItemTag(3L, garden, new BigDecimal("20"), new BigDecimal("-5"), 1),
+                new BudgetItemTag(3L, home, new BigDecimal("20"), new BigDecimal("-5"), 2),
+                new BudgetItemTag(4L, food, null, new BigDecimal("-10"), 3));
+        List<List<BudgetTagProfile>> profile = BudgetModel.profile(itemTags);
+        Assertions.assertEquals(List.of(List.of("Food", "Home", "Garden"), List.of("Car", "Fuel")), profile.stream()
+                .map(group -> group.stream().map(BudgetTagProfile::getTagName).toList()).toList());
+        Map<String, BudgetTagProfile> byName = profile.stream().flatMap(Collection::stream)
+                .collect(Collectors.toMap(BudgetTagProfile::getTagName, p -> p));
+        Assertions.assertEquals("100.00", byName.get("Food").getTotalPlanned());
+        Assertions.assertEquals("-90.00", byName.get("Food").getTotalActual());
+        Assertions.assertEquals("120.00", byName.get("Home").getTotalPlanned());
+        Assertions.assertEquals("-85.00", byName.get("Home").getTotalActual());
+        Assertions.assertEquals("0.00", byName.get("Fuel").getTotalActual());
+    }
+
+    @Test
+    public void testGroupsAreTheConnectedTagSets() {
+        Random random = new Random(3);
+        for (int round = 0; round < 20; round++) {
+            List<BudgetItemTag> itemTags = new ArrayList<>();
+            Map<Long, Set<Long>> tagsByItem = new HashMap<>();
+            for (long item = 0; item < 60; item++) {
+                int count = 1 + random.nextInt(3);
+                for (int i = 0; i < count; i++) {
+                    long tag = random.nextInt(80);
+                    if (tagsByItem.computeIfAbsent(item, k -> new HashSet<>()).add(tag))
+                        itemTags.add(new BudgetItemTag(item, new Tag(tag, "Tag" + tag), BigDecimal.ONE,
+                                BigDecimal.ZERO, 1));
+                }
+            }
+            Set<Set<Long>> expected = connected(tagsByItem.values());
+            Set<Set<Long>> groups = BudgetModel.profile(itemTags).stream()
+                    .map(group -> group.stream().map(BudgetTagProfile::getTagId).collect(Collectors.toSet()))
+                    .collect(Collectors.toSet());
+            Assertions.assertEquals(expected, groups);
+        }
+    }
+
+    /**
+     * Merges any two overlapping sets until no two overlap.
+     */
+    private static Set<Set<Long>> connected(Collection<Set<Long>> sets) {
+        List<Set<Long>> merged = new ArrayList<>();
+        for (Set<Long> set : sets) {
+            Set<Long> group = new HashSet<>(set);
+            for (Iterator<Set<Long>> iterator = merged.iterator(); iterator.hasNext(); ) {
+                Set<Long> other = iterator.next();
+                if (!Collections.disjoint(other, group)) {
+                    group.addAll(other);
+                    iterator.remove();
+                }
+            }
+            merged.add(group);
+        }
+        return new HashSet<>(merged);
+    }
+}
@@ -111,6 +111,41 @@ public class CategoryModelTest {
         });
     }
 
+    @Test
+    public void testActualAddsUpTheTree() {
+        Category expenses = new Category(id++, "expenses", "", Kind.Monthly, null);
+        Category bills = new Category(id++, "bills", "", Kind.Monthly, expenses);
+        Category eatingOut = new Category(id++, "eatingOut", "", Kind.Monthly, expenses);
+        BudgetItemHolder insurance = makeBudgetItemHolder("Insurance", "2000.00", bills);
+        BudgetItemHolder chinese = makeBudgetItemHolder("Chinese", "200.00", eatingOut);
+        insurance.setActual(new BigDecimal("-2000.00"));
+        Map<Category, Set<BudgetItemHolder>> categoryItems = new HashMap<>();
+        categoryItems.put(bills, Set.of(insurance));
+        categoryItems.put(eatingOut, Set.of(chinese));
+        BudgetHolder budgetHolder = new BudgetHolder(budget, null);
+        CategoryModel model = new CategoryModel(budgetHolder, new HashSet<>(), categoryItems);
+        Assertions.assertEquals(0, new BigDecimal("-2000").compareTo(budgetHolder.getBalance()));
+        Assertions.assertEquals("0.00", model.getCategoryLookup().get(eatingOut).getActual());
+
+        chinese.setActual(new BigDecimal("-180.50"));
+        model.updateActual(chinese);
+        Assertions.assertEquals("-180.50", model.getCategoryLookup().get(eatingOut).getActual());
+        Assertions.assertEquals("-2,180.50", model.getCategoryLookup().get(expenses).getActual());
+        Assertions.assertEquals(0, new BigDecimal("-2180.50").compareTo(budgetHolder.getBalance()));
+        chinese.setActual(new BigDecimal("-100.00"));
+        model.updateActual(chinese);
+        Assertions.assertEquals(0, new BigDecimal("-2100").compareTo(model.getActual(expenses)));
+        Assertions.assertEquals(0, new BigDecimal("-2100").compareTo(budgetHolder.getBalance()));
+
+        // moving an item to another category moves its totals along
+        chinese.setCategory(bills);
+        model.updatePlanned(chinese);
+        Assertions.assertEquals("0.00", model.getCategoryLookup().get(eatingOut).getPlanned());
+        Assertions.assertEquals("2,200.00", model.getCategoryLookup().get(bills).getPlanned());
+        Assertions.assertEquals("2,200.00", model.getCategoryLookup().get(expenses).getPlanned());
+        Assertions.assertEquals(0, new BigDecimal("-2100").compareTo(budgetHolder.getBalance()));
+    }
+
     private BudgetItemHolder makeBudgetItemHolder(String itemName, String planned, Category category) {
         Item item = new Item(id++, itemName, Kind.Monthly, category);
         BudgetItem budgetItem = new BudgetItem(id++, budget, item, "", planned, Collections.emptySet(), true);
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.app.Settings;
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConnectionPoolTest {
+
+    @RegisterExtension
+    JUnit5Mockery context = new JUnit5Mockery() {{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    @TempDir
+    Path tempDir;
+
+    private final String[] databaseUrl = new String[1];
+    private final JournalMode[] journalMode = {JournalMode.Rollback};
+    private final CheckpointMode[] checkpointMode = {CheckpointMode.Automatic};
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void before() {
+        Settings settings = context.mock(Settings.class);
+        context.checking(new Expectations() {
+            {
+                allowing(settings).getDatabaseUrl();
+                will(new CustomAction("current database url") {
+                    @Override
+                    public Object invoke(Invocation invocation) {
+                        return databaseUrl[0];
+                    }
+                });
+                allowing(settings).getJournalMode();
+                will(new CustomAction("current journal mode") {
+                    @Override
+                    public Object invoke(Invocation invocation) {
+                        return journalMode[0];
+                    }
+                });
+                allowing(settings).getCheckpointMode();
+                will(new CustomAction("current checkpoint mode") {
+                    @Override
+                    public Object invoke(Invocation invocation) {
+                        return checkpointMode[0];
+                    }
+                });
+            }
+        });
+        databaseUrl[0] = urlFor("first.db");
+        pool = new ConnectionPool(settings, 2, 50, 8);
+    }
+
+    @Test
+    public void testReadersAreReused() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            try (Connection connection = pool.getReadConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("select 1");
+            }
+        }
+        ConnectionStatistics statistics = pool.getStatistics();
+        Assertions.assertEquals(5, statistics.checkouts());
+        Assertions.assertEquals(1, statistics.misses());
+        Assertions.assertEquals(4, statistics.hits());
+    }
+
+    @Test
+    public void testNestedReadJoinsWriter() throws Exception {
+        execute("create table t (id integer primary key)");
+        try (Connection writer = pool.getWriteConnection()) {
+            writer.setAutoCommit(false);
+            try (Statement statement = writer.createStatement()) {
+                statement.executeUpdate("insert into t(id) values (1)");
+            }
+            try (Connection reader = pool.getReadConnection()) {
+                // a nested handle may not end the transaction it joined
+                reader.setAutoCommit(true);
+                Assertions.assertEquals(1, count(reader));
+            }
+            writer.rollback();
+            writer.setAutoCommit(true);
+        }
+        try (Connection reader = pool.getReadConnection()) {
+            Assertions.assertEquals(0, count(reader));
+        }
+    }
+
+    @Test
+    public void testUncommittedWorkIsRolledBackOnClose() throws Exception {
+        execute("create table t (id integer primary key)");
+        try (Connection writer = pool.getWriteConnection()) {
+            writer.setAutoCommit(false);
+            try (Statement statement = writer.createStatement()) {
+                statement.executeUpdate("insert into t(id) values (1)");
+            }
+        }
+        try (Connection writer = pool.getWriteConnection()) {
+            Assertions.assertTrue(writer.getAutoCommit());
+            Assertions.assertEquals(0, count(writer));
+        }
+    }
+
+    @Test
+    public void testAfterCommitOnlyRunsForCommittedWork() throws Exception {
+        List<String> done = new ArrayList<>();
+        pool.afterCommit(() -> done.add("no writer"));
+        Assertions.assertEquals(List.of("no writer"), done);
+        try (Connection writer = pool.getWriteConnection()) {
+            writer.setAutoCommit(false);
+            pool.afterCommit(() -> done.add("rolled back"));
+            writer.rollback();
+            pool.afterCommit(() -> done.add("committed"));
+            try (Connection nested = pool.getWriteConnection()) {
+                pool.afterCommit(() -> done.add("nested"));
+                // does not end the transaction of the outer handle
+                nested.commit();
+            }
+            writer.setAutoCommit(true);
+            pool.afterCommit(() -> done.add("auto-commit"));
+            writer.setAutoCommit(false);
+            pool.afterCommit(() -> done.add("never committed"));
+            Assertions.assertEquals(List.of("no writer"), done);
+        }
+        Assertions.assertEquals(List.of("no writer", "committed", "nested", "auto-commit"), done);
+    }
+
+    @Test
+    public void testAfterCommitActionThatFailsDoesNotStopTheOthers() throws Exception {
+        List<String> done = new ArrayList<>();
+        Connection writer = pool.getWriteConnection();
+        pool.afterCommit(() -> {
+            throw new IllegalStateException("Listener failed");
+        });
+        pool.afterCommit(() -> done.add("after the failure"));
+        writer.close();
+        Assertions.assertEquals(List.of("after the failure"), done);
+    }
+
+    @Test
+    public void testSwitchingDatabaseResetsPool() throws Exception {
+        execute("create table t (id integer primary key)");
+        execute("insert into t(id) values (1)");
+        databaseUrl[0] = urlFor("second.db");
+        execute("create table t (id integer primary key)");
+        try (Connection reader = pool.getReadConnection()) {
+            Assertions.assertEquals(0, count(reader));
+        }
+        databaseUrl[0] = urlFor("first.db");
+        try (Connection reader = pool.getReadConnection()) {
+            Assertions.assertEquals(1, count(reader));
+        }
+    }
+
+    @Test
+    public void testWalReadersSeeSnapshotWhileWriting() throws Exception {
+        journalMode[0] = JournalMode.WriteAheadLog;
+        execute("create table t (id integer primary key)");
+        try (Connection writer = pool.getWriteConnection()) {
+            writer.setAutoCommit(false);
+            try (Statement statement = writer.createStatement()) {
+                statement.executeUpdate("insert into t(id) values (1)");
+            }
+            // Another thread is not blocked by the open write transaction and does not see it
+            int[] seen = {-1};
+            Thread reader = new Thread(() -> {
+                try (Connection connection = pool.getReadConnection()) {
+                    seen[0] = count(connection);
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            reader.start();
+            reader.join(5000);
+            Assertions.assertEquals(0, seen[0]);
+            writer.commit();
+            writer.setAutoCommit(true);
+        }
+        try (Connection reader = pool.getReadConnection()) {
+            Assertions.assertEquals(1, count(reader));
+            execute("insert into t(id) values (2)");
+            // still reading the snapshot taken by the first query
+            Assertions.assertEquals(1, count(reader));
+        }
+        try (Connection reader = pool.getReadConnection();
+             Statement statement = reader.createStatement();
+             ResultSet rs = statement.executeQuery("pragma journal_mode")) {
+            rs.next();
+            Assertions.assertEquals("wal", rs.getString(1));
+            Assertions.assertEquals(2, count(reader));
+        }
+    }
+
+    @Test
+    public void testCheckpointWhenIdle() throws Exception {
+        journalMode[0] = JournalMode.WriteAheadLog;
+        checkpointMode[0] = CheckpointMode.OnIdle;
+        execute("create table t (id integer primary key)");
+        execute("insert into t(id) values (1)");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStatistics().checkpoints() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+        Assertions.assertTrue(pool.getStatistics().checkpoints() > 0);
+    }
+
+    @Test
+    public void testPreparedStatementsAreCached() throws Exception {
+        execute("create table t (id integer primary key)");
+        for (int i = 0; i < 3; i++) {
+            try (Connection writer = pool.getWriteConnection();
+                 PreparedStatement statement = writer.prepareStatement("insert into t(id) values (?)")) {
+                statement.setInt(1, i);
+                statement.executeUpdate();
+                Assertions.assertSame(writer, statement.getConnection());
+            }
+        }
+        try (Connection reader = pool.getReadConnection()) {
+            Assertions.assertEquals(3, count(reader));
+        }
+        ConnectionStatistics statistics = pool.getStatistics();
+        Assertions.assertEquals(1, statistics.statementMisses());
+        Assertions.assertEquals(2, statistics.statementHits());
+    }
+
+    @Test
+    public void testClosedHandleCannotBeUsed() throws Exception {
+        Connection connection = pool.getReadConnection();
+        connection.close();
+        Assertions.assertTrue(connection.isClosed());
+        Assertions.assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    private String urlFor(String name) {
+        return String.format("jdbc:sqlite:%s", tempDir.resolve(name));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = pool.getWriteConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private static int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from t")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
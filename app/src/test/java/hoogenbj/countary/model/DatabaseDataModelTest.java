@@ -0,0 +1,842 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import hoogenbj.countary.app.CountaryApp;
+import hoogenbj.countary.app.Settings;
+import hoogenbj.countary.util.DbMigration;
+import hoogenbj.countary.util.DbUtils;
+import hoogenbj.countary.util.ParseUtils;
+import hoogenbj.countary.util.ParsedStatement;
+import hoogenbj.countary.util.StatementDetector;
+import hoogenbj.countary.util.StatementParser;
+import hoogenbj.countary.util.TransactionFingerprint;
+import org.apache.commons.io.IOUtils;
+import org.jmock.Expectations;
+import org.jmock.junit5.JUnit5Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the model against a demo database in a temporary file.
+ */
+public class DatabaseDataModelTest {
+
+    @RegisterExtension
+    JUnit5Mockery context = new JUnit5Mockery() {{
+        setThreadingPolicy(new Synchroniser());
+    }};
+
+    @TempDir
+    Path tempDir;
+
+    private ConnectionPool pool;
+    private DataChanges dataChanges;
+    private DatabaseDataModel model;
+
+    @BeforeEach
+    void before() throws IOException, SQLException {
+        Settings settings = context.mock(Settings.class);
+        String url = String.format("jdbc:sqlite:%s", tempDir.resolve("demo.db"));
+        context.checking(new Expectations() {
+            {
+                allowing(settings).getDatabaseUrl();
+                will(returnValue(url));
+                allowing(settings).getJournalMode();
+                will(returnValue(JournalMode.WriteAheadLog));
+                allowing(settings).getCheckpointMode();
+                will(returnValue(CheckpointMode.Automatic));
+            }
+        });
+        pool = new ConnectionPool(settings, 2, ConnectionPool.DEFAULT_CHECKPOINT_IDLE_MILLIS,
+                ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+        dataChanges = new DataChanges();
+        model = new DatabaseDataModel(pool, dataChanges);
+        model.clearCache();
+        model.createDemoDatabase(readLines("database.sql"), readLines("demo.sql"));
+        // bring it up to date the way the application does
+        DbMigration migration = new DbMigration(model, null, line -> {
+        });
+        for (int version = 2; version <= CountaryApp.DBVERSION; version++)
+            migration.migrate(version);
+    }
+
+    @Test
+    public void testBudgetItemHoldersCarryTheirTags() throws Exception {
+        Budget budget = model.getBudget(1L);
+        List<Item> items = model.getBudgetItems(budget).stream().map(BudgetItem::item)
+                .sorted((a, b) -> Long.compare(a.id(), b.id())).toList();
+        List<Long> itemIds = items.stream().map(Item::id).toList();
+        Tag food = model.createTag("Food");
+        Tag home = model.createTag("Home");
+        model.createItemTag(items.get(0), food);
+        model.createItemTag(items.get(0), home);
+        model.createItemTag(items.get(1), home);
+
+        Set<BudgetItemHolder> holders = model.getBudgetItemHolders(budget);
+        Assertions.assertEquals(itemIds.size(), holders.size());
+        Map<Long, Set<Tag>> tagsByItem = holders.stream().map(BudgetItemHolder::getBudgetItem)
+                .collect(Collectors.toMap(b -> b.item().id(), BudgetItem::tags));
+        for (BudgetItem budgetItem : model.getBudgetItems(budget)) {
+            Assertions.assertEquals(model.getTagsForItem(budgetItem.item()), tagsByItem.get(budgetItem.item().id()));
+            Assertions.assertEquals(budgetItem.tags(), tagsByItem.get(budgetItem.item().id()));
+        }
+        Assertions.assertEquals(Set.of(food, home), tagsByItem.get(itemIds.get(0)));
+        Assertions.assertEquals(Set.of(home), tagsByItem.get(itemIds.get(1)));
+        Assertions.assertEquals(Set.of(), tagsByItem.get(itemIds.get(2)));
+    }
+
+    @Test
+    public void testBudgetTagProfileAddsUpPerTag() throws Exception {
+        Budget budget = model.getBudget(1L);
+        List<Item> items = model.getBudgetItems(budget).stream().map(BudgetItem::item)
+                .sorted(Comparator.comparing(Item::id)).toList();
+        Tag food = model.createTag("Food");
+        Tag home = model.createTag("Home");
+        Tag car = model.createTag("Car");
+        model.createItemTag(items.get(0), food);
+        model.createItemTag(items.get(1), food);
+        model.createItemTag(items.get(1), home);
+        model.createItemTag(items.get(2), car);
+
+        List<List<BudgetTagProfile>> profile = new BudgetModel(model).getBudgetTagProfile(budget);
+        Assertions.assertEquals(Set.of(Set.of(food.id(), home.id()), Set.of(car.id())), profile.stream()
+                .map(group -> group.stream().map(BudgetTagProfile::getTagId).collect(Collectors.toSet()))
+                .collect(Collectors.toSet()));
+        Assertions.assertEquals(food.id(), profile.stream().filter(group -> group.size() == 2).findFirst()
+                .orElseThrow().get(0).getTagId());
+        for (BudgetTagProfile tagProfile : profile.stream().flatMap(List::stream).toList()) {
+            Tag tag = new Tag(tagProfile.getTagId(), tagProfile.getTagName());
+            Assertions.assertEquals(ParseUtils.formatBigDecimal(model.getPlannedByBudgetAndTag(budget, tag)),
+                    tagProfile.getTotalPlanned());
+            Assertions.assertEquals(ParseUtils.formatBigDecimal(
+                    Objects.requireNonNullElse(model.getActualByBudgetAndTag(budget, tag), BigDecimal.ZERO)),
+                    tagProfile.getTotalActual());
+        }
+    }
+
+    @Test
+    public void testCategoryTreeFollowsEdits() throws Exception {
+        Budget budget = model.getBudget(1L);
+        Set<Category> categories = model.getBudgetCategories(budget);
+        for (BudgetItem budgetItem : model.getBudgetItems(budget)) {
+            for (Category c = budgetItem.item().category(); c != null; c = c.parent())
+                Assertions.assertTrue(categories.contains(c), c.name());
+        }
+        BudgetItem groceries = model.getBudgetItems(budget).stream()
+                .filter(b -> b.item().name().equals("Groceries")).findFirst().orElseThrow();
+        Category regular = groceries.item().category();
+        Category expenses = regular.parent();
+        Assertions.assertEquals("Expenses", expenses.name());
+
+        model.renameCategory(expenses, "Outgoing");
+        model.updateCategoryBgColor(regular, "#123456");
+        Category food = model.addCategoryChild(model.getBudgetItem(groceries.id()).item().category(), "Food");
+        model.updateItemCategory(groceries.item(), food);
+
+        Category category = model.getBudgetItem(groceries.id()).item().category();
+        Assertions.assertEquals("Food", category.name());
+        Assertions.assertEquals("#123456", category.parent().bgColor());
+        Assertions.assertEquals("Outgoing", category.parent().parent().name());
+        Assertions.assertTrue(model.getBudgetCategories(budget).contains(food));
+
+        model.updateItemCategory(groceries.item(), regular);
+        model.deleteCategory(food);
+        Assertions.assertFalse(model.getBudgetCategories(budget).contains(food));
+
+        Assertions.assertThrows(SQLException.class, () -> model.doInTransaction(
+                (DatabaseOperation<Connection>) connection -> {
+                    model.renameCategory(regular, "Rolled back");
+                    model.updateCategoryBgColor(regular, "#654321");
+                    throw new SQLException("Not this time");
+                }));
+        category = model.getBudgetItem(groceries.id()).item().category();
+        Assertions.assertEquals(regular.name(), category.name());
+        Assertions.assertEquals("#123456", category.bgColor());
+    }
+
+    @Test
+    public void testCloneCopiesActualToPlanned() throws Exception {
+        Budget budget = model.getBudget(1L);
+        Set<BudgetItem> original = model.getBudgetItems(budget);
+        ClonedBudget cloned = model.cloneBudget(budget, "Copy", true, false, null);
+        Assertions.assertEquals(original.size(), cloned.items());
+        Map<Long, BudgetItem> copies = model.getBudgetItems(cloned.budget()).stream()
+                .collect(Collectors.toMap(b -> b.item().id(), b -> b));
+        Assertions.assertEquals(original.size(), copies.size());
+        for (BudgetItem budgetItem : original) {
+            BigDecimal actual = model.getActualForBudgetItem(budgetItem);
+            double expected = actual == null ? 0 : actual.doubleValue();
+            Assertions.assertEquals(expected, copies.get(budgetItem.item().id()).planned().doubleValue(), 0.005,
+                    budgetItem.item().name());
+        }
+    }
+
+    @Test
+    public void testCloneTransfersBalance() throws Exception {
+        Budget budget = model.getBudget(1L);
+        Map<Account, BigDecimal> balances = model.calculateBalances(budget);
+        BudgetItem salary = model.getBudgetItems(budget).stream()
+                .filter(b -> b.item().name().equals("Salary")).findFirst().orElseThrow();
+        ClonedBudget cloned = model.cloneBudget(budget, "Next", false, true, salary);
+        Map<Account, BigDecimal> transferred = model.calculateBalances(cloned.budget());
+        Assertions.assertEquals(balances.keySet(), transferred.keySet());
+        balances.forEach((account, balance) -> {
+            Assertions.assertEquals(balance.doubleValue(), transferred.get(account).doubleValue(), 0.005);
+        });
+        model.calculateBalances(budget).values()
+                .forEach(balance -> Assertions.assertEquals(0, balance.doubleValue(), 0.005));
+    }
+
+    @Test
+    public void testCloneTransfersNothingForAnAccountWithoutBalance() throws Exception {
+        Budget budget = model.getBudget(1L);
+        Account spare = model.createAccount(new Account(null, "Spare", "999999999", "250655", "FNB", null));
+        Transaction coffee = createTransaction(spare, LocalDate.now(), "-10.00", "Coffee");
+        BudgetItem salary = model.getBudgetItems(budget).stream()
+                .filter(b -> b.item().name().equals("Salary")).findFirst().orElseThrow();
+        Allocation allocation;
+        try (Connection connection = pool.getWriteConnection()) {
+            allocation = model.createAllocation(connection, coffee, salary, coffee.amount(), "");
+        }
+        model.deleteAllocation(allocation);
+        Assertions.assertFalse(model.calculateBalances(budget).containsKey(spare));
+        ClonedBudget cloned = model.cloneBudget(budget, "Next", false, true, salary);
+        Assertions.assertFalse(model.calculateBalances(cloned.budget()).containsKey(spare));
+        Assertions.assertEquals(ids(coffee), ids(model.getTransactions(spare, true)));
+    }
+
+    @Test
+    public void testFailedCloneLeavesNothingBehind() throws Exception {
+        Budget budget = model.getBudget(1L);
+        int budgets = model.getBudgets().size();
+        BudgetItem elsewhere = model.getBudgetItems(model.getBudget(2L)).iterator().next();
+        Assertions.assertThrows(RuntimeException.class,
+                () -> model.cloneBudget(budget, "Broken", true, true, elsewhere));
+        Assertions.assertEquals(budgets, model.getBudgets().size());
+    }
+
+    @Test
+    public void testTransactionPagesCoverTheWholeHistory() throws Exception {
+        Account account = model.getAccount(1L);
+        List<Transaction> expected = model.getTransactions(account, true).stream()
+                .sorted(Comparator.comparing(Transaction::postingDate).thenComparing(Transaction::id).reversed())
+                .toList();
+        Assertions.assertTrue(expected.size() > 10);
+
+        List<Transaction> older = new ArrayList<>();
+        TransactionPage page = model.getTransactionPage(account, true, null, true, 4);
+        older.addAll(page.transactions());
+        while (page.more()) {
+            page = model.getTransactionPage(account, true, page.last(), true, 4);
+            older.addAll(page.transactions());
+        }
+        Assertions.assertEquals(expected, older);
+
+        // and back again from the oldest one
+        List<Transaction> newer = new ArrayList<>();
+        TransactionPage.Cursor from = TransactionPage.Cursor.of(expected.get(expected.size() - 1));
+        do {
+            page = model.getTransactionPage(account, true, from, false, 4);
+            newer.addAll(0, page.transactions());
+            from = page.first();
+        } while (page.more());
+        Assertions.assertEquals(expected.subList(0, expected.size() - 1), newer);
+    }
+
+    @Test
+    public void testTransactionWindowSlides() throws Exception {
+        Account account = model.getAccount(1L);
+        List<Transaction> all = new ArrayList<>();
+        TransactionModel transactionModel = new TransactionModel(model, all::addAll, clearable -> {}, 3, 6);
+        transactionModel.setAccount(account);
+        all.clear();
+        transactionModel.setShowCompleted(true);
+        Assertions.assertEquals(3, all.size());
+        List<Transaction> window = new ArrayList<>(all);
+        TransactionModel.Slide slide;
+        while ((slide = transactionModel.loadOlder()) != null) {
+            window.addAll(slide.added());
+            window.removeAll(slide.dropped());
+            all.addAll(slide.added());
+            Assertions.assertTrue(window.size() <= 6);
+        }
+        Assertions.assertEquals(model.getTransactionPage(account, true, null, true, 1000).transactions(), all);
+        while ((slide = transactionModel.loadNewer()) != null) {
+            window.addAll(0, slide.added());
+            window.removeAll(slide.dropped());
+            Assertions.assertTrue(window.size() <= 6);
+        }
+        Assertions.assertEquals(all.subList(0, window.size()), window);
+    }
+
+    @Test
+    public void testSearchByDateIsPaged() throws Exception {
+        Account account = model.getAccount(1L);
+        Transaction transaction = model.getTransactions(account, true).get(0);
+        LocalDate day = transaction.postingDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        TransactionPage page = model.queryTransactionPage(account, true, TransactionQuery.on(day), null, true, 100);
+        Assertions.assertTrue(page.transactions().contains(transaction));
+        Assertions.assertFalse(page.more());
+        page.transactions().forEach(t -> Assertions.assertTrue(day.equals(localDate(t.postingDate()))
+                || t.txdate() != null && day.equals(localDate(t.txdate()))));
+    }
+
+    @Test
+    public void testQueryByAmountsAndDates() throws Exception {
+        Account account = model.getAccount(1L);
+        Transaction rent = createTransaction(account, LocalDate.of(2031, 3, 1), "-520.00", "Rent March");
+        Transaction salary = createTransaction(account, LocalDate.of(2031, 3, 25), "550.00", "Salary March");
+        Transaction car = createTransaction(account, LocalDate.of(2031, 3, 31), "-700.00", "Car payment");
+        Transaction april = createTransaction(account, LocalDate.of(2031, 4, 1), "-520.00", "Rent April");
+        Assertions.assertEquals(ids(car, salary, rent), query(account, TransactionQuery.in(YearMonth.of(2031, 3))));
+        TransactionQuery march = TransactionQuery.in(YearMonth.of(2031, 3));
+        Assertions.assertEquals(ids(salary, rent), query(account, march.withAmounts("500..600")));
+        Assertions.assertEquals(ids(salary, rent), query(account, march.withAmounts(" 600 .. 500 ")));
+        Assertions.assertEquals(ids(april, rent), query(account, TransactionQuery.amounts("520")));
+        Assertions.assertEquals(ids(rent), query(account, march.withAmounts("-520")));
+        Assertions.assertEquals(ids(car, rent), query(account, march.withAmounts("..-500")));
+        Assertions.assertEquals(ids(car, salary, rent), query(account, march.withAmounts("500..")));
+        Assertions.assertEquals(ids(april), query(account, TransactionQuery.amounts("520").withDescription("rent apr")));
+        // what looks like full text query syntax is only ever taken as words
+        Transaction eleven = createTransaction(account, LocalDate.of(2031, 5, 2), "-35.00", "7-Eleven \"Sandton\"");
+        Assertions.assertEquals(ids(eleven), query(account, TransactionQuery.description("7-eleven*")));
+        Assertions.assertEquals(ids(eleven), query(account, TransactionQuery.description("7-ele* \"sand")));
+        Assertions.assertEquals(ids(eleven), query(account, TransactionQuery.description("\"sandton\" 7-eleven")));
+        Assertions.assertEquals(ids(), query(account, TransactionQuery.description("eleven OR rent")));
+        Assertions.assertEquals(query(account, TransactionQuery.ALL),
+                query(account, TransactionQuery.description("* \"")));
+        Assertions.assertEquals(0, new BigDecimal("1000").compareTo(TransactionQuery.amounts("1,000.00").minAmount()));
+        Assertions.assertNull(TransactionQuery.amounts("5x"));
+        Assertions.assertNull(TransactionQuery.amounts(".."));
+
+        TransactionPage page = model.queryTransactionPage(account, true, march, null, true, 2);
+        Assertions.assertEquals(ids(car, salary), ids(page.transactions()));
+        Assertions.assertTrue(page.more());
+        page = model.queryTransactionPage(account, true, march, page.last(), true, 2);
+        Assertions.assertEquals(ids(rent), ids(page.transactions()));
+        Assertions.assertFalse(page.more());
+    }
+
+    @Test
+    public void testTransactionIndexAgreesWithTheDatabase() throws Exception {
+        Account account = model.getAccount(1L);
+        Random random = new Random(7);
+        List<String> words = List.of("Groceries", "Rent", "Fuel", "Pharmacy", "Coffee", "Salary", "Transfer");
+        List<Transaction> created = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            created.add(createTransaction(account, LocalDate.of(2032, 1, 1).plusDays(random.nextInt(365)),
+                    String.format("%d.%02d", random.nextInt(2000) - 1500, random.nextInt(100)),
+                    String.format("%s %s %d", words.get(random.nextInt(words.size())),
+                            words.get(random.nextInt(words.size())), i)));
+        TransactionIndex index = TransactionIndex.load(model, account, 64 * 1024 * 1024);
+        Assertions.assertNotNull(index);
+        Assertions.assertNull(TransactionIndex.load(model, account, 1024));
+        List<TransactionQuery> queries = List.of(TransactionQuery.description("groc"),
+                TransactionQuery.description("rent fu"), TransactionQuery.amounts("100..300"),
+                TransactionQuery.amounts("-50..-10"), TransactionQuery.amounts("1000.."),
+                TransactionQuery.in(YearMonth.of(2032, 3)), TransactionQuery.on(localDate(created.get(2).postingDate())),
+                TransactionQuery.description("coffee").withAmounts("..-100"),
+                TransactionQuery.in(YearMonth.of(2032, 5)).withAmounts("200..900").withDescription("sal"));
+        assertIndexAgrees(account, index, queries);
+
+        BudgetItem budgetItem = model.getBudgetItems(model.getBudget(1L)).iterator().next();
+        Transaction allocated = created.get(0);
+        List<Allocation> allocations = new ArrayList<>();
+        model.doInTransaction(connection -> {
+            allocations.add(model.createAllocation(connection, allocated, budgetItem, allocated.amount(), ""));
+            model.setAllocated(connection, allocated);
+        });
+        model.deleteTransaction(created.get(1));
+        for (int i = 0; i < TransactionIndex.REBUILD_AFTER + 10; i++)
+            createTransaction(account, LocalDate.of(2032, 3, 1 + i % 28), String.valueOf(150 + i % 100),
+                    "Groceries later " + i);
+        model.deleteAllocation(allocations.get(0));
+        Assertions.assertFalse(index.isStale());
+        assertIndexAgrees(account, index, queries);
+
+        // written through another model, as the AsyncDataModel does
+        DatabaseDataModel other = new DatabaseDataModel(pool, dataChanges);
+        Transaction byHand = other.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-12.00"), BigDecimal.ZERO, "Written elsewhere", 1L, false, true, true));
+        TransactionQuery elsewhere = TransactionQuery.description("written elsew");
+        Assertions.assertEquals(List.of(byHand.id()), ids(index.page(elsewhere, true, null, true, 10).transactions()));
+        other.deleteTransaction(byHand);
+        Assertions.assertEquals(List.of(), index.page(elsewhere, true, null, true, 10).transactions());
+        Assertions.assertFalse(index.isStale());
+
+        model.saveTransactions(account, List.of(statementLine(5)));
+        Assertions.assertTrue(index.isStale());
+        Assertions.assertNull(index.page(queries.get(0), true, null, true, 10));
+        index.close();
+    }
+
+    private void assertIndexAgrees(Account account, TransactionIndex index, List<TransactionQuery> queries)
+            throws SQLException {
+        for (TransactionQuery query : queries) {
+            for (boolean showCompleted : List.of(true, false)) {
+                List<Transaction> expected = new ArrayList<>();
+                TransactionPage.Cursor from = null;
+                TransactionPage page;
+                do {
+                    page = model.queryTransactionPage(account, showCompleted, query, from, true, 7);
+                    TransactionPage fromIndex = index.page(query, showCompleted, from, true, 7);
+                    Assertions.assertEquals(page, fromIndex, query.toString());
+                    expected.addAll(page.transactions());
+                    from = page.last();
+                } while (page.more());
+                Assertions.assertFalse(expected.isEmpty(), query.toString());
+                // and back again from the oldest
+                TransactionPage.Cursor oldest = TransactionPage.Cursor.of(expected.get(expected.size() - 1));
+                Assertions.assertEquals(model.queryTransactionPage(account, showCompleted, query, oldest, false, 5),
+                        index.page(query, showCompleted, oldest, false, 5), query.toString());
+            }
+        }
+        // the same transactions, allocated or not
+        Map<Long, Boolean> expected = new HashMap<>();
+        model.getTransactionPage(account, true, null, true, 100000).transactions()
+                .forEach(transaction -> expected.put(transaction.id(), transaction.allocated()));
+        Map<Long, Boolean> actual = new HashMap<>();
+        index.page(TransactionQuery.amounts("0.."), true, null, true, 100000).transactions()
+                .forEach(transaction -> actual.put(transaction.id(), transaction.allocated()));
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private Transaction createTransaction(Account account, LocalDate day, String amount, String description)
+            throws SQLException {
+        Date postedOn = Date.from(day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant());
+        return model.createTransaction(new Transaction(null, account, postedOn, null, new BigDecimal(amount),
+                BigDecimal.ZERO, description, 1L, false, true, true));
+    }
+
+    private List<Long> query(Account account, TransactionQuery query) throws SQLException {
+        return ids(model.queryTransactionPage(account, true, query, null, true, 100).transactions());
+    }
+
+    private static List<Long> ids(Transaction... transactions) {
+        return ids(List.of(transactions));
+    }
+
+    private static List<Long> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::id).toList();
+    }
+
+    private static LocalDate localDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    @Test
+    public void testAllocationCountFollowsAllocations() throws Exception {
+        Account account = model.getAccount(1L);
+        Transaction transaction = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-10.00"), BigDecimal.ZERO, "Coffee", 1L, false, true, true));
+        Assertions.assertTrue(model.getTransaction(transaction.id()).canDelete());
+        BudgetItem budgetItem = model.getBudgetItems(model.getBudget(1L)).iterator().next();
+        Allocation allocation;
+        try (Connection connection = pool.getWriteConnection()) {
+            allocation = model.createAllocation(connection, transaction, budgetItem, new BigDecimal("-10.00"), "");
+        }
+        Assertions.assertFalse(model.getTransaction(transaction.id()).canDelete());
+        Assertions.assertFalse(model.getTransactionPage(account, true, null, true, 1000).transactions().stream()
+                .filter(t -> t.id().equals(transaction.id())).findFirst().orElseThrow().canDelete());
+        model.deleteAllocation(allocation);
+        Assertions.assertTrue(model.getTransaction(transaction.id()).canDelete());
+    }
+
+    @Test
+    public void testSummaryFollowsAllocations() throws Exception {
+        assertSummaryMatchesTransactionsAndAllocations();
+        Account account = model.getAccount(1L);
+        Transaction transaction = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-25.50"), BigDecimal.ZERO, "Parking", 1L, false, true, true));
+        assertSummaryMatchesTransactionsAndAllocations();
+        Budget budget = model.getBudget(1L);
+        BudgetItem budgetItem = model.getBudgetItems(budget).iterator().next();
+        BigDecimal before = model.getActualForBudget(budget);
+        Allocation allocation;
+        try (Connection connection = pool.getWriteConnection()) {
+            allocation = model.createAllocation(connection, transaction, budgetItem, new BigDecimal("-25.50"), "");
+            model.setAllocated(connection, transaction);
+        }
+        assertSummaryMatchesTransactionsAndAllocations();
+        Assertions.assertEquals(before.doubleValue() - 25.50, model.getActualForBudget(budget).doubleValue(), 0.005);
+        model.deleteAllocation(allocation);
+        assertSummaryMatchesTransactionsAndAllocations();
+        Assertions.assertEquals(before.doubleValue(), model.getActualForBudget(budget).doubleValue(), 0.005);
+    }
+
+    @Test
+    public void testSummaryModelFollowsCommittedChanges() throws Exception {
+        SummaryModel summary = new SummaryModel(model, new SummaryHolder()).start();
+        Account account = model.getAccount(1L);
+        List<BudgetItem> budgetItems = model.getBudgetItems(model.getBudget(1L)).stream()
+                .sorted(Comparator.comparing(BudgetItem::id)).toList();
+        BudgetItem budgetItem = budgetItems.get(0);
+        Transaction transaction = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-42.00"), BigDecimal.ZERO, "Groceries", 1L, false, true, true));
+        Assertions.assertTrue(summary.refresh());
+        model.saveTransactions(account, List.of(statementLine(1), statementLine(2)));
+        Assertions.assertTrue(summary.refresh());
+        List<Allocation> allocations = new ArrayList<>();
+        model.doInTransaction(connection -> {
+            allocations.add(model.createAllocation(connection, transaction, budgetItem, new BigDecimal("-42.00"), ""));
+            model.setAllocated(connection, transaction);
+        });
+        Assertions.assertTrue(summary.refresh());
+        Assertions.assertEquals(0, model.getSummary().fundingBalances().get(account)
+                .compareTo(summary.getFundingBalances().get(account)));
+        // work that is rolled back is never heard of
+        Assertions.assertThrows(RuntimeException.class, () -> model.doInTransaction(connection -> {
+            model.createAllocation(connection, transaction, budgetItems.get(1), new BigDecimal("-1000.00"), "");
+            throw new RuntimeException("Changed my mind");
+        }));
+        Assertions.assertTrue(summary.refresh());
+        model.deleteAllocation(allocations.get(0));
+        Assertions.assertTrue(summary.refresh());
+        model.deleteTransaction(transaction);
+        Assertions.assertTrue(summary.refresh());
+        Assertions.assertEquals(1, summary.getReloads());
+
+        // a change behind the model's back is found by the next check
+        model.executeStatements(List.of("update transactions set amount = amount - 1 where allocated = 0"));
+        Assertions.assertEquals(2, summary.getReloads());
+        summary.close();
+        model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-1.00"), BigDecimal.ZERO, "Not heard of", 1L, false, true, true));
+        Assertions.assertFalse(summary.refresh());
+        Assertions.assertTrue(summary.refresh());
+        Assertions.assertEquals(3, summary.getReloads());
+    }
+
+    @Test
+    public void testListenersHearOfChangesMadeThroughAnotherModel() throws Exception {
+        // as the AsyncDataModel has a model of its own
+        DatabaseDataModel other = new DatabaseDataModel(pool, dataChanges);
+        SummaryModel summary = new SummaryModel(model, new SummaryHolder()).start();
+        List<DataChange> heard = new ArrayList<>();
+        model.addChangeListener(heard::add);
+        Transaction transaction = other.createTransaction(new Transaction(null, model.getAccount(1L), new Date(), null,
+                new BigDecimal("-42.00"), BigDecimal.ZERO, "Added by hand", 1L, false, true, true));
+        Assertions.assertEquals(List.of(new DataChange.TransactionCreated(transaction)), heard);
+        Assertions.assertTrue(summary.refresh());
+        Assertions.assertEquals(1, summary.getReloads());
+        summary.close();
+    }
+
+    @Test
+    public void testChangeListenerThatFailsDoesNotFailTheWriteOrStopTheOthers() throws Exception {
+        model.addChangeListener(change -> {
+            throw new IllegalStateException("Listener failed");
+        });
+        List<Runnable> loading = new ArrayList<>();
+        SummaryModel summary = new SummaryModel(model, new SummaryHolder(), Runnable::run, loading::add).start();
+        Assertions.assertEquals(0, summary.getReloads());
+        loading.remove(0).run();
+        Assertions.assertEquals(1, summary.getReloads());
+        model.saveTransactions(model.getAccount(1L), List.of(statementLine(1)));
+        Assertions.assertTrue(summary.refresh());
+        // a reset is loaded in the background, not on the thread that made it
+        model.clearCache();
+        Assertions.assertEquals(1, summary.getReloads());
+        loading.remove(0).run();
+        Assertions.assertEquals(2, summary.getReloads());
+        Assertions.assertTrue(loading.isEmpty());
+        summary.close();
+    }
+
+    @Test
+    public void testAutoAllocatorAllocatesByTheLongestRule() throws Exception {
+        Account account = model.getAccount(1L);
+        Budget budget = model.getBudget(1L);
+        List<BudgetItem> budgetItems = model.getBudgetItems(budget).stream()
+                .sorted(Comparator.comparing(BudgetItem::id)).toList();
+        BudgetItem rides = budgetItems.get(0);
+        BudgetItem takeaways = budgetItems.get(1);
+        model.createAllocationRule("uber", rides.item());
+        model.createAllocationRule(" Uber Eats ", takeaways.item());
+        Transaction trip = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-80.00"), BigDecimal.ZERO, "POS Purchase UBER TRIP 1234", 1L, false, true, true));
+        Transaction meal = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-120.00"), BigDecimal.ZERO, "POS Purchase UBER EATS 1234", 1L, false, true, true));
+        model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-5.00"), BigDecimal.ZERO, "Bank charges", 1L, false, true, true));
+
+        AutoAllocator allocator = new AutoAllocator(model);
+        AutoAllocator.Proposals proposals = allocator.propose(budget, account);
+        Map<Long, BudgetItem> proposed = proposals.proposals().stream().collect(Collectors.toMap(
+                proposal -> proposal.transaction().id(), AutoAllocator.Proposal::budgetItem));
+        Assertions.assertEquals(Map.of(trip.id(), rides, meal.id(), takeaways), proposed);
+
+        // allocated by hand while the proposals waited to be confirmed
+        BudgetItem other = budgetItems.get(2);
+        model.doInTransaction(connection -> {
+            model.createAllocation(connection, trip, other, trip.amount(), "By hand");
+            model.setAllocated(connection, trip);
+        });
+        AutoAllocator.Applied applied = allocator.apply(proposals.proposals());
+        Assertions.assertEquals(1, applied.skipped());
+        Assertions.assertEquals(List.of(meal.id()), applied.allocated().stream()
+                .map(holder -> holder.getTransaction().id()).toList());
+        Assertions.assertEquals(List.of(other.id()), model.getAllocations(trip.id()).stream()
+                .map(allocation -> allocation.budgetItem().id()).toList());
+        List<Allocation> allocations = model.getAllocations(meal.id());
+        Assertions.assertEquals(1, allocations.size());
+        Assertions.assertEquals(0, meal.amount().compareTo(allocations.get(0).amount()));
+        assertSummaryMatchesTransactionsAndAllocations();
+        Assertions.assertTrue(allocator.propose(budget, account).proposals().isEmpty());
+
+        Transaction another = model.createTransaction(new Transaction(null, account, new Date(), null,
+                new BigDecimal("-90.00"), BigDecimal.ZERO, "POS Purchase UBER EATS 5678", 1L, false, true, true));
+        for (AllocationRule rule : model.getAllocationRules()) {
+            if (rule.item().equals(takeaways.item()))
+                model.deleteAllocationRule(rule);
+        }
+        Assertions.assertEquals(Map.of(another.id(), rides), allocator.propose(budget, account).proposals().stream()
+                .collect(Collectors.toMap(proposal -> proposal.transaction().id(), AutoAllocator.Proposal::budgetItem)));
+    }
+
+    @Test
+    public void testStatementImportSavesNewLinesInBatches() throws Exception {
+        Account account = model.getAccount(1L);
+        int before = model.getTransactions(account, true).size();
+        List<ParsedStatement.Line> lines = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            lines.add(statementLine(i));
+        // a line that occurs twice in one statement is saved twice
+        lines.add(statementLine(3));
+        StatementParser parser = (uri, statement, sink) -> {
+            statement.setAccountNumber(account.number());
+            lines.forEach(sink);
+        };
+        URI uri = tempDir.resolve("statement.csv").toUri();
+        StatementImporter importer = new StatementImporter(model, account, 3);
+        importer.importStatement(parser, uri);
+        Assertions.assertEquals(8, importer.getSaved());
+        Assertions.assertEquals(before + 8, model.getTransactions(account, true).size());
+
+        StatementImporter again = new StatementImporter(model, account, 3);
+        again.importStatement(parser, uri);
+        Assertions.assertEquals(0, again.getSaved());
+
+        StatementImporter wrongAccount = new StatementImporter(model, account, 3);
+        wrongAccount.importStatement((u, statement, sink) -> {
+            statement.setAccountNumber("not " + account.number());
+            sink.accept(statementLine(100));
+        }, uri);
+        Assertions.assertTrue(wrongAccount.isWrongAccount());
+        Assertions.assertEquals(0, wrongAccount.getSaved());
+        Assertions.assertEquals(before + 8, model.getTransactions(account, true).size());
+    }
+
+    @Test
+    public void testFingerprintsOfSavedTransactionsMatchThoseOfTheirLines() throws Exception {
+        Account account = model.getAccount(1L);
+        List<ParsedStatement.Line> lines = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            LocalDateTime postedOn = LocalDateTime.of(2031, 3, 1 + i, 9, 30);
+            lines.add(new ParsedStatement.Line(postedOn, postedOn, new BigDecimal("-12.50"), new BigDecimal("1000.10"),
+                    " Fingerprinted "));
+        }
+        StatementParser parser = (uri, statement, sink) -> lines.forEach(sink);
+        URI uri = tempDir.resolve("statement.csv").toUri();
+        new StatementImporter(model, account).importStatement(parser, uri);
+        // as the migration does, from what was saved
+        try (Connection connection = pool.getWriteConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("update transactions set fingerprint = null");
+        }
+        model.fingerprintTransactions();
+        try (Connection connection = pool.getReadConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from transactions " +
+                     "where fingerprint is null and coalesce(manual, 0) = 0")) {
+            rs.next();
+            Assertions.assertEquals(0, rs.getInt(1));
+        }
+        StatementImporter again = new StatementImporter(model, account);
+        again.importStatement(parser, uri);
+        Assertions.assertEquals(0, again.getSaved());
+    }
+
+    @Test
+    public void testFingerprintFiltersOnlyLetThroughWhatMightHaveBeenSaved() throws Exception {
+        Account account = model.getAccount(1L);
+        List<ParsedStatement.Line> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            lines.add(statementLine(i));
+        StatementParser parser = (uri, statement, sink) -> lines.forEach(sink);
+        new StatementImporter(model, account).importStatement(parser, tempDir.resolve("statement.csv").toUri());
+        List<Long> saved = lines.stream().map(ParsedStatement.Line::getFingerprint).toList();
+        Random random = new Random(15);
+        List<Long> unsaved = random.longs(10_000).boxed().toList();
+
+        FingerprintFilters filters = new FingerprintFilters();
+        try (Connection connection = pool.getReadConnection()) {
+            Assertions.assertEquals(saved, filters.candidates(connection, account, saved));
+            int falsePositives = filters.candidates(connection, account, unsaved).size();
+            Assertions.assertTrue(falsePositives < 200, "Too many false positives: " + falsePositives);
+            long added = random.nextLong();
+            filters.added(account, added);
+            Assertions.assertEquals(List.of(added), filters.candidates(connection, account, List.of(added)));
+        }
+    }
+
+    @Test
+    public void testFingerprintFiltersForgetWhatTheyKnewAfterARestoreOrAScript() throws Exception {
+        Account account = model.getAccount(1L);
+        URI uri = tempDir.resolve("statement.csv").toUri();
+        ParsedStatement.Line restored = statementLine(0);
+        new StatementImporter(model, account).importStatement((u, statement, sink) -> sink.accept(restored), uri);
+        String backup = tempDir.resolve("backup.db").toString();
+        model.backup(backup);
+        try (Connection connection = pool.getWriteConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from transactions where fingerprint = " + restored.getFingerprint());
+        }
+        model.clearCache();
+        // so the filter gets read without the line that the backup holds
+        new StatementImporter(model, account).importStatement((u, statement, sink) -> sink.accept(statementLine(1)),
+                uri);
+        model.restore(backup);
+        StatementImporter again = new StatementImporter(model, account);
+        again.importStatement((u, statement, sink) -> sink.accept(statementLine(0)), uri);
+        Assertions.assertEquals(0, again.getSaved());
+
+        // as if a script had put in a line that the filter, read by the import above, never saw
+        long scripted = new TransactionFingerprint().next(statementLine(2));
+        model.executeStatements(List.of(String.format("insert into transactions(accountId, posting_date, amount, " +
+                "balance, description, fingerprint) values (%d, 0, -2, 998, 'Imported 2', %d)", account.id(), scripted)));
+        StatementImporter afterScript = new StatementImporter(model, account);
+        afterScript.importStatement((u, statement, sink) -> sink.accept(statementLine(2)), uri);
+        Assertions.assertEquals(0, afterScript.getSaved());
+    }
+
+    @Test
+    public void testImportPipelineSavesEachStatementToItsAccount() throws Exception {
+        Account fallback = model.getAccount(1L);
+        Account rmbpb = model.createAccount(new Account(null, "RMB", "123412341234", "250655", "RMB", null));
+        Account capitec = model.createAccount(new Account(null, "Capitec", "1234567890", "470010", "Capitec", null));
+        Path unknown = tempDir.resolve("unknown.txt");
+        Files.writeString(unknown, "Not a statement");
+        List<Path> files = List.of(resource("rmbpb_account.csv"), resource("CapitecBankTransactionHistory_OFX1.ofx"),
+                resource("bankzero_account.csv"), unknown);
+        List<Account> accounts = List.of(fallback, rmbpb, capitec);
+        AsyncDataModel asyncModel = new AsyncDataModel(model, 2, Runnable::run);
+        try {
+            ImportPipeline pipeline = new ImportPipeline(asyncModel, new StatementDetector(), 2, Runnable::run);
+            List<ImportPipeline.Progress> progress = Collections.synchronizedList(new ArrayList<>());
+            List<ImportPipeline.Result> results = pipeline.importFiles(files, accounts, fallback, progress::add)
+                    .get(30, TimeUnit.SECONDS);
+            Assertions.assertEquals(files, results.stream().map(ImportPipeline.Result::file).toList());
+            Assertions.assertEquals(List.of(rmbpb, capitec, fallback),
+                    results.subList(0, 3).stream().map(ImportPipeline.Result::account).toList());
+            Assertions.assertEquals(17, results.get(0).saved());
+            Assertions.assertEquals(36, results.get(1).saved());
+            Assertions.assertTrue(results.get(2).saved() > 0);
+            Assertions.assertNull(results.get(2).failure());
+            Assertions.assertNotNull(results.get(3).failure());
+            Assertions.assertEquals(17, model.getTransactions(rmbpb, true).size());
+            Assertions.assertEquals(36, model.getTransactions(capitec, true).size());
+            ImportPipeline.Progress last = progress.stream().max(Comparator.comparingInt(ImportPipeline.Progress::done))
+                    .orElseThrow();
+            Assertions.assertEquals(4, last.done());
+            Assertions.assertEquals(3, last.parsed());
+
+            List<ImportPipeline.Result> again = pipeline.importFiles(files.subList(0, 3), accounts, fallback, p -> {
+            }).get(30, TimeUnit.SECONDS);
+            again.forEach(result -> Assertions.assertEquals(0, result.saved()));
+        } finally {
+            asyncModel.shutdown();
+        }
+    }
+
+    private Path resource(String name) throws URISyntaxException {
+        return Path.of(Objects.requireNonNull(getClass().getResource("/hoogenbj/countary/util/" + name)).toURI());
+    }
+
+    private static ParsedStatement.Line statementLine(int day) {
+        LocalDateTime postedOn = LocalDate.of(2030, 1, 1).plusDays(day).atStartOfDay();
+        return new ParsedStatement.Line(postedOn, null, new BigDecimal(day).negate(), new BigDecimal(1000 - day),
+                "Imported " + day);
+    }
+
+    private void assertSummaryMatchesTransactionsAndAllocations() throws SQLException {
+        Summary summary = model.getSummary();
+        try (Connection connection = pool.getReadConnection();
+             Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("select coalesce(sum(min(amount, 0)), 0), " +
+                    "coalesce(sum(max(amount, 0)), 0) from transactions where allocated = 0")) {
+                rs.next();
+                Assertions.assertEquals(rs.getDouble(1), summary.debits().doubleValue(), 0.005);
+                Assertions.assertEquals(rs.getDouble(2), summary.credits().doubleValue(), 0.005);
+            }
+            try (ResultSet rs = statement.executeQuery("select coalesce(sum(max(actual, 0)), 0), " +
+                    "coalesce(sum(min(actual, 0)), 0) from (select sum(a.amount) actual from allocation a " +
+                    "join budget_item bi on bi.id = a.budgetItemId group by bi.budgetId)")) {
+                rs.next();
+                Assertions.assertEquals(rs.getDouble(1), summary.funded().doubleValue(), 0.005);
+                Assertions.assertEquals(rs.getDouble(2), summary.unfunded().doubleValue(), 0.005);
+            }
+            Map<Long, Double> expected = new HashMap<>();
+            try (ResultSet rs = statement.executeQuery("select t.accountId, sum(a.amount) from allocation a " +
+                    "join transactions t on t.id = a.transactionId group by t.accountId")) {
+                while (rs.next())
+                    expected.put(rs.getLong(1), rs.getDouble(2));
+            }
+            Assertions.assertEquals(expected.keySet(), summary.fundingBalances().keySet().stream()
+                    .map(Account::id).collect(Collectors.toSet()));
+            summary.fundingBalances().forEach((account, balance) ->
+                    Assertions.assertEquals(expected.get(account.id()), balance.doubleValue(), 0.005));
+        }
+    }
+
+    static List<String> readLines(String resource) throws IOException {
+        return IOUtils.readLines(Objects.requireNonNull(DbUtils.class.getResourceAsStream(resource)),
+                StandardCharsets.UTF_8);
+    }
+}
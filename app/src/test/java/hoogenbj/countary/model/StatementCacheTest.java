@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatementCacheTest {
+
+    private final List<String> events = new ArrayList<>();
+    private Connection connection;
+    private StatementCache cache;
+
+    @BeforeEach
+    void before() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create table t (id integer primary key)");
+            statement.executeUpdate("insert into t(id) values (1), (2), (3)");
+        }
+        cache = new StatementCache(connection, 2, new StatementCache.Listener() {
+            @Override
+            public void hit(String sql) {
+                events.add("hit " + sql);
+            }
+
+            @Override
+            public void miss(String sql) {
+                events.add("miss " + sql);
+            }
+
+            @Override
+            public void evicted(String sql) {
+                events.add("evicted " + sql);
+            }
+        });
+    }
+
+    @AfterEach
+    void after() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        query("select 1");
+        query("select 2");
+        query("select 1");
+        query("select 3");
+        Assertions.assertEquals(List.of("miss select 1", "miss select 2", "hit select 1", "miss select 3",
+                "evicted select 2"), events);
+        Assertions.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testParametersAreClearedOnClose() throws Exception {
+        String sql = "select count(*) from t where id >= ?";
+        try (PreparedStatement statement = cache.prepare(connection, sql, Statement.NO_GENERATED_KEYS)) {
+            statement.setInt(1, 2);
+            Assertions.assertEquals(2, single(statement));
+        }
+        try (PreparedStatement statement = cache.prepare(connection, sql, Statement.NO_GENERATED_KEYS)) {
+            // an unbound parameter is null, so nothing matches
+            Assertions.assertEquals(0, single(statement));
+        }
+    }
+
+    @Test
+    public void testStatementInUseIsNotShared() throws Exception {
+        String sql = "select id from t where id > ? order by id";
+        try (PreparedStatement outer = cache.prepare(connection, sql, Statement.NO_GENERATED_KEYS)) {
+            outer.setInt(1, 0);
+            try (ResultSet rs = outer.executeQuery()) {
+                List<Integer> ids = new ArrayList<>();
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                    try (PreparedStatement inner = cache.prepare(connection, sql, Statement.NO_GENERATED_KEYS)) {
+                        Assertions.assertNotSame(outer, inner);
+                        inner.setInt(1, 2);
+                        inner.executeQuery().close();
+                    }
+                }
+                Assertions.assertEquals(List.of(1, 2, 3), ids);
+            }
+        }
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testClosedStatementCannotBeUsed() throws Exception {
+        PreparedStatement statement = cache.prepare(connection, "select 1", Statement.NO_GENERATED_KEYS);
+        statement.close();
+        Assertions.assertTrue(statement.isClosed());
+        Assertions.assertThrows(SQLException.class, statement::executeQuery);
+    }
+
+    private void query(String sql) throws SQLException {
+        try (PreparedStatement statement = cache.prepare(connection, sql, Statement.NO_GENERATED_KEYS)) {
+            single(statement);
+        }
+    }
+
+    private static int single(PreparedStatement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvFieldsTest {
+
+    @Test
+    public void scanTest() {
+        CsvFields fields = new CsvFields().scan("2021/12/11,-534.63, \"8,081.49\",\"Pharmacy, \"\"Rosebank\"\"  08 DEC\",");
+        assertEquals(5, fields.size());
+        assertEquals("2021/12/11", fields.get(0));
+        assertEquals(new BigDecimal("-534.63"), fields.decimal(1));
+        assertEquals(new BigDecimal("8081.49"), fields.decimal(2));
+        assertEquals("Pharmacy, \"Rosebank\"  08 DEC", fields.get(3));
+        assertEquals("", fields.get(4));
+        assertNull(fields.decimal(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> fields.get(5));
+        // the same instance serves the next line
+        fields.scan("a,b");
+        assertEquals(2, fields.size());
+        assertEquals("b", fields.get(1));
+    }
+
+    @Test
+    public void parseAmountTest() {
+        assertEquals(new BigDecimal("1536.00"), ParseUtils.parseAmount("1,536.00"));
+        assertEquals(new BigDecimal("-1189.00"), ParseUtils.parseAmount(" '-1,189.00' "));
+        assertEquals(new BigDecimal("600"), ParseUtils.parseAmount("600"));
+        assertEquals(new BigDecimal("0.5"), ParseUtils.parseAmount(".5"));
+        assertNull(ParseUtils.parseAmount(""));
+        assertNull(ParseUtils.parseAmount("  "));
+        // too long for a long, so it is left to DecimalFormat
+        assertEquals(new BigDecimal("12345678901234567890.12"), ParseUtils.parseAmount("12345678901234567890.12"));
+        assertEquals(ParseUtils.parseBigDecimal("12abc"), ParseUtils.parseAmount("12abc"));
+    }
+}
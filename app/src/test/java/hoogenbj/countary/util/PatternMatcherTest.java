@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class PatternMatcherTest {
+
+    @Test
+    public void longestMatchTest() {
+        PatternMatcher matcher = new PatternMatcher(List.of("he", "she", "his", "hers", "", "UBER", "Uber Eats"));
+        Assertions.assertEquals(3, matcher.longestMatch("ushers"));
+        Assertions.assertEquals(1, matcher.longestMatch("ushe"));
+        Assertions.assertEquals(2, matcher.longestMatch("this"));
+        Assertions.assertEquals(5, matcher.longestMatch("POS Purchase uber trip 1234"));
+        Assertions.assertEquals(6, matcher.longestMatch("POS Purchase UBER EATS 1234"));
+        Assertions.assertEquals(-1, matcher.longestMatch("Nothing to see"));
+        Assertions.assertEquals(-1, new PatternMatcher(List.of()).longestMatch("anything"));
+    }
+
+    @Test
+    public void agreesWithSearchingForEachPatternTest() {
+        Random random = new Random(7);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            patterns.add(randomText(random, 1 + random.nextInt(5)));
+        PatternMatcher matcher = new PatternMatcher(patterns);
+        for (int i = 0; i < 2000; i++) {
+            String text = randomText(random, random.nextInt(30));
+            int expected = -1;
+            for (int p = 0; p < patterns.size(); p++) {
+                String pattern = patterns.get(p);
+                if (!pattern.isBlank() && text.toLowerCase(Locale.ROOT).contains(pattern.toLowerCase(Locale.ROOT))
+                        && (expected < 0 || pattern.length() > patterns.get(expected).length()))
+                    expected = p;
+            }
+            Assertions.assertEquals(expected, matcher.longestMatch(text), text);
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            text.append("abcABC d".charAt(random.nextInt(8)));
+        return text.toString();
+    }
+}
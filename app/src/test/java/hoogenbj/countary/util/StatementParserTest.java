@@ -16,12 +16,15 @@
 package hoogenbj.countary.util;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.math.BigDecimal;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -35,17 +38,14 @@ public class StatementParserTest {
         ParsedStatement parsedStatement = new Capitec_CSVStatementParser()
                 .parse(this.getClass().getResource("CapitecBankTransactionHistory_123-123.csv").toURI());
         assertEquals("1234567890", parsedStatement.getAccountNumber());
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        Calendar expectedDate = GregorianCalendar.from(dateFormat.parse("18/04/2023", LocalDate::from)
-                .atStartOfDay(ZoneId.systemDefault()));
+        LocalDateTime expectedDate = LocalDate.of(2023, 4, 18).atStartOfDay();
         int checked = 0;
         assertEquals(32, parsedStatement.getLines().size());
         for (ParsedStatement.Line line :
                 parsedStatement.getLines()) {
-            if (expectedDate.getTime().equals(line.getPostedOn().getTime())) {
+            if (expectedDate.equals(line.getPostedOn())) {
                 assertEquals("Total Johannesburg (Card 1234)", line.getDescription());
-                assertEquals(GregorianCalendar.from(dateFormat.parse("14/04/2023", LocalDate::from)
-                        .atStartOfDay(ZoneId.systemDefault())).getTime(), line.getTransactionDate().getTime());
+                assertEquals(LocalDate.of(2023, 4, 14).atStartOfDay(), line.getTransactionDate());
                 assertEquals(new BigDecimal("-65.90"), line.getAmount());
                 assertEquals(new BigDecimal("17144.59"), line.getBalance());
                 checked++;
@@ -59,15 +59,13 @@ public class StatementParserTest {
         ParsedStatement parsedStatement = new Capitec_CSVStatementParser()
                 .parse(this.getClass().getResource("CapitecBankTransactionHistory_123-123.csv").toURI());
         List<ParsedStatement.Line> lines = parsedStatement.getLines();
-        lines.sort(Comparator.comparing(item -> item.getPostedOn().getTime()));
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        Calendar expectedDate = GregorianCalendar.from(dateFormat.parse("01/05/2023", LocalDate::from)
-                .atStartOfDay(ZoneId.systemDefault()));
-        System.out.println(lines.get(27).getPostedOn().getTime());
-        assertEquals(expectedDate.getTime(), lines.get(27).getPostedOn().getTime());
-        assertEquals(expectedDate.getTime(), lines.get(28).getPostedOn().getTime());
-        assertEquals(expectedDate.getTime(), lines.get(29).getPostedOn().getTime());
-        assertEquals(expectedDate.getTime(), lines.get(30).getPostedOn().getTime());
+        lines.sort(Comparator.comparing(ParsedStatement.Line::getPostedOn));
+        LocalDateTime expectedDate = LocalDate.of(2023, 5, 1).atStartOfDay();
+        System.out.println(lines.get(27).getPostedOn());
+        assertEquals(expectedDate, lines.get(27).getPostedOn());
+        assertEquals(expectedDate, lines.get(28).getPostedOn());
+        assertEquals(expectedDate, lines.get(29).getPostedOn());
+        assertEquals(expectedDate, lines.get(30).getPostedOn());
     }
 
     @Test
@@ -88,11 +86,9 @@ public class StatementParserTest {
         ParsedStatement.Line line = new ParsedStatement.Line();
         fieldCount[0] += 2;
         fieldCount[0] += 1;
-        Calendar postingDate = GregorianCalendar.from(dateFormat.parse(fields[2], LocalDate::from)
-                .atStartOfDay(ZoneId.systemDefault()));
+        LocalDateTime postingDate = dateFormat.parse(fields[2], LocalDate::from).atStartOfDay();
         fieldCount[0] += 1;
-        Calendar transactionDate = GregorianCalendar.from(dateFormat.parse(fields[3], LocalDate::from)
-                .atStartOfDay(ZoneId.systemDefault()));
+        LocalDateTime transactionDate = dateFormat.parse(fields[3], LocalDate::from).atStartOfDay();
         fieldCount[0] += 1;
         String description = fields[4];
         fieldCount[0] += 4;
@@ -121,13 +117,11 @@ public class StatementParserTest {
         assertEquals("Joe Soap", parsedStatement.getAccountHolder());
         assertEquals("123412341234", parsedStatement.getAccountNumber());
         assertEquals(17, parsedStatement.getLines().size());
-        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
-        DateFormat txDateFormat = new SimpleDateFormat("dd MMM yyyy");
         int checked = 0;
         for (ParsedStatement.Line line : parsedStatement.getLines()) {
-            if (dateFormat.parse("2021/12/11").equals(line.getPostedOn().getTime())) {
+            if (LocalDate.of(2021, 12, 11).atStartOfDay().equals(line.getPostedOn())) {
                 assertEquals("Pharmacy 470720*1112  08 DEC", line.getDescription());
-                assertEquals(txDateFormat.parse("08 DEC 2021"), line.getTransactionDate().getTime());
+                assertEquals(LocalDate.of(2021, 12, 8).atStartOfDay(), line.getTransactionDate());
                 assertEquals(new BigDecimal("-534.63"), line.getAmount());
                 assertEquals(new BigDecimal("8081.49"), line.getBalance());
                 checked++;
@@ -140,18 +134,18 @@ public class StatementParserTest {
     public void parseBankZeroTest() throws Exception {
         ParsedStatement parsedStatement = new BankZeroStatementParser().parse(this.getClass()
                 .getResource("bankzero_account.csv").toURI());
-        DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         for (ParsedStatement.Line line : parsedStatement.getLines()) {
-            if (dateFormat.parse("04/12/2021 11:55").equals(line.getPostedOn().getTime())) {
+            if (LocalDateTime.parse("04/12/2021 11:55", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Pay in,Capitec bank limited,CAPITEC  JANE", line.getDescription());
                 assertEquals(new BigDecimal("600.00"), line.getAmount());
                 assertEquals(new BigDecimal("1536.00"), line.getBalance());
-            } else if (dateFormat.parse("27/12/2021 11:44").equals(line.getPostedOn().getTime())) {
+            } else if (LocalDateTime.parse("27/12/2021 11:44", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Card purchase,Exclusive Books Sandton,Sandton Dip Transaction",
                         line.getDescription());
                 assertEquals(new BigDecimal("-206.00"), line.getAmount());
                 assertEquals(ParseUtils.parseBigDecimal("1,330.00"), line.getBalance());
-            } else if (dateFormat.parse("31/12/2021 18:38").equals(line.getPostedOn().getTime())) {
+            } else if (LocalDateTime.parse("31/12/2021 18:38", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Card purchase,Loot Online,Johannesburg Online Transaction",
                         line.getDescription());
                 assertEquals(ParseUtils.parseBigDecimal("-1,189.00"), line.getAmount());
@@ -166,19 +160,19 @@ public class StatementParserTest {
     public void parseBankZeroHistoryTest() throws Exception {
         ParsedStatement parsedStatement = new BankZeroStatementHistoryParser().parse(this.getClass()
                 .getResource("bankzero_account_history.csv").toURI());
-        DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         for (ParsedStatement.Line line : parsedStatement.getLines()) {
             System.out.println(line);
-            if (dateFormat.parse("09/10/2023 18:17").equals(line.getPostedOn().getTime())) {
+            if (LocalDateTime.parse("09/10/2023 18:17", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Payment In,Firstrand bank,SINGLE FACILITY", line.getDescription());
                 assertEquals(new BigDecimal("1848.55"), line.getAmount());
                 assertEquals(new BigDecimal("6054.97"), line.getBalance());
-            } else if (dateFormat.parse("01/10/2023 14:03").equals(line.getPostedOn().getTime())) {
+            } else if (LocalDateTime.parse("01/10/2023 14:03", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Card Purchase,Apple.com/bill, Ireland,44.99 ZAR (@ rate R1.00), Online transaction",
                         line.getDescription());
                 assertEquals(new BigDecimal("-44.99"), line.getAmount());
                 assertEquals(ParseUtils.parseBigDecimal("3108.42"), line.getBalance());
-            } else if (dateFormat.parse("01/10/2023 03:51").equals(line.getPostedOn().getTime())) {
+            } else if (LocalDateTime.parse("01/10/2023 03:51", dateFormat).equals(line.getPostedOn())) {
                 assertEquals("Card Purchase,Netflix.com, Netherlands,159.00 ZAR (@ rate R1.00), Online transaction",
                         line.getDescription());
                 assertEquals(ParseUtils.parseBigDecimal("-159.00"), line.getAmount());
@@ -189,6 +183,20 @@ public class StatementParserTest {
         }
     }
 
+    @Test
+    public void parseDateTest() {
+        LocalDate expected = LocalDate.of(2023, 4, 18);
+        assertEquals(expected, ParseUtils.parseDate("20230418", ParseUtils.COMPACT_DATE));
+        assertEquals(expected, ParseUtils.parseDate("2023/04/18", ParseUtils.SLASHED_DATE));
+        assertEquals(expected, ParseUtils.parseDate("2023-04-18", ParseUtils.DASHED_DATE));
+        assertEquals(expected, ParseUtils.parseDate("18/04/2023", ParseUtils.DAY_FIRST_DATE));
+        // not fixed width, so left to the formatter
+        assertEquals(expected, ParseUtils.parseDate("2023/4/18", ParseUtils.SLASHED_DATE));
+        assertEquals(LocalTime.of(9, 5), ParseUtils.parseTime("9:05", ParseUtils.TIME));
+        assertEquals(LocalTime.of(13, 25, 1), ParseUtils.parseTime("132501", ParseUtils.COMPACT_TIME));
+        assertEquals(LocalDate.of(2022, 12, 28), ParseUtils.parseDayAndMonth("28 DEC", LocalDate.of(2023, 1, 3)));
+    }
+
     @Test
     public void testParseBigDecimal() throws Exception {
         assertEquals(new BigDecimal("1536.00"), ParseUtils.parseBigDecimal("1,536.00"));
@@ -200,13 +208,11 @@ public class StatementParserTest {
                 .getResource("rmbpb_account.ofx").toURI());
         assertEquals("62012345678", parsedStatement.getAccountNumber());
         assertEquals(35, parsedStatement.getLines().size());
-        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
-        DateFormat txDateFormat = new SimpleDateFormat("dd MMM yyyy");
         int checked = 0;
         for (ParsedStatement.Line line : parsedStatement.getLines()) {
-            if (dateFormat.parse("2022/11/03").getTime() == line.getPostedOn().getTime().getTime()) {
+            if (LocalDate.of(2022, 11, 3).atStartOfDay().equals(line.getPostedOn())) {
                 assertEquals("TOTAL FAERIEGLEN 470720*5678  01 NOV", line.getDescription());
-                assertEquals(txDateFormat.parse("01 NOV 2022"), line.getTransactionDate().getTime());
+                assertEquals(LocalDate.of(2022, 11, 1).atStartOfDay(), line.getTransactionDate());
                 assertEquals(new BigDecimal("-532.60"), line.getAmount());
                 assertEquals(new BigDecimal("70216.72"), line.getBalance());
                 checked++;
@@ -227,16 +233,25 @@ public class StatementParserTest {
                 parsedStatement.getLines().get(parsedStatement.getLines().size()-1).getBalance());
     }
 
+    @Test
+    public void parseOFX2KeepsReadingNoonAsMidnight(@TempDir Path tempDir) throws Exception {
+        String statement = Files.readString(resource("CapitecBankTransactionHistory_OFX2.ofx"))
+                .replace("<DTUSER>20250106132501", "<DTUSER>20250106122501");
+        Path file = Files.writeString(tempDir.resolve("statement.ofx"), statement);
+        ParsedStatement parsedStatement = new OFX2StatementParser().parse(file.toUri());
+        assertTrue(parsedStatement.getLines().stream().anyMatch(line ->
+                LocalDateTime.of(2025, 1, 6, 0, 25, 1).equals(line.getTransactionDate())));
+    }
+
     @Test
     public void parseOFX1Test() throws Exception {
         ParsedStatement parsedStatement = new OFXStatementParser().parse(this.getClass()
                 .getResource("CapitecBankTransactionHistory_OFX1.ofx").toURI());
         assertEquals("1234567890", parsedStatement.getAccountNumber());
         assertEquals(36, parsedStatement.getLines().size());
-        DateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
         int checked = 0;
         for (ParsedStatement.Line line : parsedStatement.getLines()) {
-            if (dateFormat.parse("20230401").getTime() == line.getPostedOn().getTime().getTime()) {
+            if (LocalDate.of(2023, 4, 1).atStartOfDay().equals(line.getPostedOn())) {
                 assertEquals("Superspar Johannesburg (Card 1234)", line.getDescription());
                 assertEquals(new BigDecimal("-112.88"), line.getAmount());
                 assertEquals(new BigDecimal("13316.75"), line.getBalance());
@@ -246,6 +261,62 @@ public class StatementParserTest {
         assertEquals(1, checked);
     }
 
+    @Test
+    public void parseOFX1OnOneLineTest(@TempDir Path tempDir) throws Exception {
+        URI uri = this.getClass().getResource("rmbpb_account.ofx").toURI();
+        String content = Files.readString(Path.of(uri));
+        int body = content.indexOf('<');
+        // all the tags on one line, and some values closed by end tags
+        String oneLine = content.substring(0, body) + content.substring(body).replaceAll("\\R", "")
+                .replaceAll("<MEMO>([^<]*)", "<MEMO>$1</MEMO>");
+        Path file = tempDir.resolve("one_line.ofx");
+        Files.writeString(file, oneLine);
+        ParsedStatement expected = new OFXStatementParser().parse(uri);
+        ParsedStatement parsedStatement = new OFXStatementParser().parse(file.toUri());
+        assertEquals(expected.getAccountNumber(), parsedStatement.getAccountNumber());
+        assertEquals(expected.getLines().size(), parsedStatement.getLines().size());
+        for (int i = 0; i < expected.getLines().size(); i++) {
+            assertEquals(expected.getLines().get(i).getDescription(), parsedStatement.getLines().get(i).getDescription());
+            assertEquals(expected.getLines().get(i).getBalance(), parsedStatement.getLines().get(i).getBalance());
+            assertEquals(expected.getLines().get(i).hashCode(), parsedStatement.getLines().get(i).hashCode());
+        }
+    }
+
+    @Test
+    public void detectStatementTypeTest() throws Exception {
+        StatementDetector detector = new StatementDetector();
+        assertInstanceOf(RMBPB_CSVStatementParser.class, detector.detect(resource("rmbpb_account.csv")));
+        assertInstanceOf(BankZeroStatementParser.class, detector.detect(resource("bankzero_account.csv")));
+        assertInstanceOf(BankZeroStatementHistoryParser.class, detector.detect(resource("bankzero_account_history.csv")));
+        assertInstanceOf(OFXStatementParser.class, detector.detect(resource("rmbpb_account.ofx")));
+        assertInstanceOf(OFXStatementParser.class, detector.detect(resource("CapitecBankTransactionHistory_OFX1.ofx")));
+        assertInstanceOf(OFX2StatementParser.class, detector.detect(resource("CapitecBankTransactionHistory_OFX2.ofx")));
+        assertInstanceOf(Capitec_CSVStatementParser.class, detector.detect(resource("CapitecBankTransactionHistory_123-123.csv")));
+    }
+
+    @Test
+    public void detectUnknownStatementTest(@TempDir Path tempDir) throws Exception {
+        Path empty = Files.createFile(tempDir.resolve("empty.csv"));
+        Path other = Files.writeString(tempDir.resolve("other.xml"), "<?xml version=\"1.0\"?><rss/>");
+        StatementDetector detector = new StatementDetector();
+        assertNull(detector.detect(empty));
+        assertNull(detector.detect(other));
+        // the surest parser wins
+        StatementParser unsure = new Capitec_CSVStatementParser() {
+            @Override
+            public int sniff(String head) {
+                return 50;
+            }
+        };
+        StatementDetector withUnsure = new StatementDetector(List.of(unsure, new OFXStatementParser()));
+        assertInstanceOf(OFXStatementParser.class, withUnsure.detect(resource("rmbpb_account.ofx")));
+        assertSame(unsure, withUnsure.detect(other));
+    }
+
+    private Path resource(String name) throws Exception {
+        return Path.of(Objects.requireNonNull(this.getClass().getResource(name)).toURI());
+    }
+
     @Test
     public void detectDuplicatesTest() throws Exception {
         String linea1 = "Netflix.com, Netherlands";
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2025. Johan Hoogenboezem
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package hoogenbj.countary.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+public class TransactionFingerprintTest {
+
+    private static final long POSTED_ON = 1_900_000_000_000L;
+
+    @Test
+    public void fingerprintTest() {
+        long first = new TransactionFingerprint().next(POSTED_ON, null, new BigDecimal("-12.50"),
+                new BigDecimal("100"), "Groceries");
+        // the scale of the amounts and surrounding blanks make no difference
+        TransactionFingerprint fingerprints = new TransactionFingerprint();
+        Assertions.assertEquals(first, fingerprints.next(POSTED_ON, null, new BigDecimal("-12.5"),
+                new BigDecimal("100.00"), " Groceries "));
+        // the same line again is another transaction
+        long second = fingerprints.next(POSTED_ON, null, new BigDecimal("-12.5"), new BigDecimal("100"), "Groceries");
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertNotEquals(first, new TransactionFingerprint().next(POSTED_ON, POSTED_ON,
+                new BigDecimal("-12.50"), new BigDecimal("100"), "Groceries"));
+        Assertions.assertNotEquals(first, new TransactionFingerprint().next(POSTED_ON, null,
+                new BigDecimal("-12.51"), new BigDecimal("100"), "Groceries"));
+    }
+}